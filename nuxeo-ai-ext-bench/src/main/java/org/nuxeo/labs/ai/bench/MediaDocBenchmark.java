@@ -0,0 +1,161 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.bench;
+
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ai.sdk.objects.PropertyType;
+import org.nuxeo.common.utils.Path;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.SimpleManagedBlob;
+import org.nuxeo.ecm.platform.picture.api.PictureView;
+import org.nuxeo.ecm.platform.picture.api.PictureViewImpl;
+import org.nuxeo.ecm.platform.picture.api.adapters.MultiviewPicture;
+import org.nuxeo.ecm.platform.video.TranscodedVideo;
+import org.nuxeo.ecm.platform.video.VideoDocument;
+import org.nuxeo.ecm.platform.video.VideoInfo;
+import org.nuxeo.labs.ai.pipes.MediaDocEvent2Stream;
+import org.nuxeo.lib.stream.computation.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.nuxeo.ai.pipes.services.JacksonUtil.toRecord;
+
+/**
+ * Document to stream records, as done by {@code MediaConversion2Stream}, for documents with many picture and video
+ * renditions selected in the pipeline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MediaDocBenchmark {
+
+    @Param({ "2", "8", "32" })
+    public int renditions;
+
+    protected MediaDocEvent2Stream func;
+
+    protected MediaDocument doc;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<PropertyType> blobProperties = new ArrayList<>();
+        Map<String, PictureView> views = new HashMap<>();
+        Map<String, TranscodedVideo> videos = new HashMap<>();
+        for (int i = 0; i < renditions; i++) {
+            String pictureName = "Picture" + i;
+            PictureViewImpl view = new PictureViewImpl();
+            view.setTitle(pictureName);
+            view.setBlob(managedBlob(pictureName + ".jpg", "image/jpeg"));
+            views.put(pictureName, view);
+            blobProperties.add(new PropertyType(pictureName, "img"));
+
+            String videoName = "Video" + i;
+            videos.put(videoName, TranscodedVideo.fromBlobAndInfo(videoName, managedBlob(videoName + ".mp4",
+                    "video/mp4"), VideoInfo.EMPTY_INFO));
+            blobProperties.add(new PropertyType(videoName, "video"));
+        }
+        func = new MediaDocEvent2Stream(blobProperties, List.of(), List.of());
+        doc = new MediaDocument(views, videos);
+    }
+
+    @Benchmark
+    public Collection<BlobTextFromDocument> docSerialize() {
+        return func.docSerialize(doc);
+    }
+
+    @Benchmark
+    public List<Record> docSerializeToRecords() {
+        return func.docSerialize(doc).stream().map(i -> toRecord(i.getKey(), i)).collect(Collectors.toList());
+    }
+
+    protected static SimpleManagedBlob managedBlob(String filename, String mimeType) {
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = UUID.randomUUID().toString();
+        blobInfo.digest = blobInfo.key;
+        blobInfo.filename = filename;
+        blobInfo.mimeType = mimeType;
+        blobInfo.length = 1024L * 1024;
+        return new SimpleManagedBlob("default", blobInfo);
+    }
+
+    /**
+     * Detached document answering the picture and video adapters without a repository.
+     */
+    protected static class MediaDocument extends DocumentModelImpl {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final transient MultiviewPicture picture;
+
+        protected final transient VideoDocument video;
+
+        public MediaDocument(Map<String, PictureView> views, Map<String, TranscodedVideo> videos) {
+            super(null, "Video", UUID.randomUUID().toString(), new Path("/bench/video"),
+                    new IdRef(UUID.randomUUID().toString()), new IdRef(UUID.randomUUID().toString()),
+                    new String[] { "dublincore", "file", "picture", "video" }, Set.of("Picture", "Video"), null,
+                    "default", false);
+            picture = (MultiviewPicture) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { MultiviewPicture.class },
+                    (proxy, method, args) -> "getView".equals(method.getName()) ? views.get((String) args[0]) : null);
+            video = (VideoDocument) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { VideoDocument.class },
+                    (proxy, method, args) -> "getTranscodedVideo".equals(method.getName())
+                            ? videos.get((String) args[0]) : null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getAdapter(Class<T> itf, boolean refreshCache) {
+            if (itf == MultiviewPicture.class) {
+                return (T) picture;
+            }
+            if (itf == VideoDocument.class) {
+                return (T) video;
+            }
+            return super.getAdapter(itf, refreshCache);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.bench;
+
+import org.nuxeo.ai.metadata.Caption;
+import org.nuxeo.ai.services.CaptionServiceImpl;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.labs.ai.simulator.SyntheticTranscripts;
+import org.nuxeo.labs.ai.transcribe.Transcript;
+import org.nuxeo.labs.ai.transcribe.TranscriptParser;
+import org.nuxeo.labs.ai.translate.ExtendedDocumentTranscribed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transcript to closed captions: JSON parsing, caption building and VTT writing, for media of 1 minute to 3 hours.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TranscriptBenchmark {
+
+    @Param({ "1", "10", "60", "180" })
+    public int minutes;
+
+    protected byte[] json;
+
+    protected Transcript transcript;
+
+    protected List<Caption> captions;
+
+    protected CaptionBuilder captionBuilder;
+
+    protected CaptionServiceImpl captionService;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        json = SyntheticTranscripts.generate(minutes, 42);
+        transcript = TranscriptParser.parse(new ByteArrayInputStream(json));
+        captionBuilder = new CaptionBuilder();
+        captions = captionBuilder.captions(transcript);
+        captionService = new CaptionServiceImpl();
+    }
+
+    @Benchmark
+    public Transcript parseTranscript() throws IOException {
+        return TranscriptParser.parse(new ByteArrayInputStream(json));
+    }
+
+    @Benchmark
+    public List<Caption> buildCaptions() {
+        return captionBuilder.captions(transcript);
+    }
+
+    @Benchmark
+    public Blob writeVtt() {
+        return captionService.write(captions);
+    }
+
+    /**
+     * Exposes the caption building of the listener, the way it runs once the transcript is parsed.
+     */
+    protected static class CaptionBuilder extends ExtendedDocumentTranscribed {
+
+        public List<Caption> captions(Transcript transcript) {
+            return buildCaptions(toElements(transcript));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.audio;
+
+import io.dropwizard.metrics5.Timer;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CloseableFile;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.platform.commandline.executor.api.CmdParameters;
+import org.nuxeo.ecm.platform.commandline.executor.api.CommandLineExecutorService;
+import org.nuxeo.ecm.platform.commandline.executor.api.ExecResult;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Extracts a compact mono audio track from a video with ffmpeg, for transcription.
+ * <p>
+ * The audio is stored in a blob provider and its key is kept in the key/value store for the digest of the video, so
+ * that a video is converted once whatever the number of documents and events referencing it. As no document references
+ * the audio, it is stored in the transient {@value #DEFAULT_BLOB_PROVIDER} provider by default, out of the reach of the
+ * orphan blob GC, and its existence is checked before it is reused.
+ */
+public class AudioExtractor {
+
+    private static final Logger log = LogManager.getLogger(AudioExtractor.class);
+
+    public static final String CODEC_OPTION = "audioCodec";
+
+    public static final String SAMPLE_RATE_OPTION = "audioSampleRate";
+
+    public static final String CACHE_TTL_OPTION = "audioCacheTTL";
+
+    public static final String BLOB_PROVIDER_OPTION = "audioBlobProvider";
+
+    public static final String KV_STORE_NAME = "aiTranscribeExt";
+
+    public static final String KEY_PREFIX = "audio:";
+
+    public static final long DEFAULT_TTL = 60 * 60 * 24 * 30; // 30 days, in seconds
+
+    public static final String DEFAULT_BLOB_PROVIDER = "aiAudio";
+
+    protected final Codec codec;
+
+    protected final int sampleRate;
+
+    protected final long ttl;
+
+    protected final String blobProviderId;
+
+    /**
+     * Speech codecs supported by Transcribe.
+     */
+    public enum Codec {
+        FLAC("ai-ext-audio-flac", "flac", "audio/flac"), OPUS("ai-ext-audio-opus", "ogg", "audio/ogg");
+
+        protected final String command;
+
+        protected final String extension;
+
+        protected final String mimeType;
+
+        Codec(String command, String extension, String mimeType) {
+            this.command = command;
+            this.extension = extension;
+            this.mimeType = mimeType;
+        }
+    }
+
+    public AudioExtractor(Codec codec, int sampleRate, long ttl, String blobProviderId) {
+        this.codec = codec;
+        this.sampleRate = sampleRate;
+        this.ttl = ttl;
+        this.blobProviderId = blobProviderId;
+    }
+
+    public static AudioExtractor fromOptions(Map<String, String> options) {
+        return new AudioExtractor(Codec.valueOf(options.getOrDefault(CODEC_OPTION, "flac").toUpperCase()),
+                Integer.parseInt(options.getOrDefault(SAMPLE_RATE_OPTION, "16000")),
+                Long.parseLong(options.getOrDefault(CACHE_TTL_OPTION, String.valueOf(DEFAULT_TTL))),
+                options.getOrDefault(BLOB_PROVIDER_OPTION, DEFAULT_BLOB_PROVIDER));
+    }
+
+    /**
+     * @return the audio track of the given video, or {@code null} if it could not be extracted
+     */
+    public ManagedBlob extract(Blob video) {
+        String key = getKey(video);
+        if (key != null) {
+            String audioKey = getStore().getString(key);
+            if (audioKey != null) {
+                ManagedBlob audio = readBlob(audioKey, video);
+                if (audio != null && exists(audio)) {
+                    return audio;
+                }
+                log.debug("Audio {} of {} is gone, extracting it again", audioKey, video.getFilename());
+                getStore().put(key, (String) null);
+            }
+        }
+
+        Blob audio;
+        try (Timer.Context ignored = AIExtMetrics.AUDIO_EXTRACT.time()) {
+            audio = convert(video);
+        }
+        if (audio == null) {
+            return null;
+        }
+        try {
+            String audioKey = getBlobProvider().writeBlob(audio);
+            if (key != null) {
+                getStore().put(key, audioKey, ttl);
+            }
+            log.debug("Extracted audio of {}: {} bytes instead of {}", video.getFilename(), audio.getLength(),
+                    video.getLength());
+            return readBlob(audioKey, video);
+        } catch (IOException e) {
+            log.warn("Could not store the audio of {}", video.getFilename(), e);
+            return null;
+        }
+    }
+
+    protected Blob convert(Blob video) {
+        CommandLineExecutorService cles = Framework.getService(CommandLineExecutorService.class);
+        if (!cles.getCommandAvailability(codec.command).isAvailable()) {
+            log.warn("Command {} is not available, audio cannot be extracted", codec.command);
+            return null;
+        }
+        try (CloseableFile source = video.getCloseableFile()) {
+            Blob audio = Blobs.createBlobWithExtension("." + codec.extension);
+            CmdParameters params = cles.getDefaultCmdParameters();
+            params.addNamedParameter("inFilePath", source.getFile().getAbsolutePath());
+            params.addNamedParameter("outFilePath", audio.getFile().getAbsolutePath());
+            params.addNamedParameter("sampleRate", String.valueOf(sampleRate));
+            ExecResult result = cles.execCommand(codec.command, params);
+            if (!result.isSuccessful() || audio.getFile().length() == 0) {
+                log.warn("Could not extract the audio of {}: {}", video.getFilename(), result.getError());
+                return null;
+            }
+            audio.setMimeType(codec.mimeType);
+            audio.setFilename(getFilename(video));
+            return audio;
+        } catch (IOException e) {
+            log.warn("Could not extract the audio of {}", video.getFilename(), e);
+            return null;
+        }
+    }
+
+    protected ManagedBlob readBlob(String audioKey, Blob video) {
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = audioKey;
+        blobInfo.mimeType = codec.mimeType;
+        blobInfo.filename = getFilename(video);
+        try {
+            Blob blob = getBlobProvider().readBlob(blobInfo);
+            return blob instanceof ManagedBlob managedBlob ? managedBlob : null;
+        } catch (IOException e) {
+            log.debug("Could not read the audio {}", audioKey, e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks that the stored audio was not deleted meanwhile, by the expiration of the storage or a GC. The audio being
+     * small, opening it costs little compared to an extraction, and a caching blob store keeps it for the transcription.
+     */
+    protected boolean exists(ManagedBlob audio) {
+        try (InputStream in = audio.getStream()) {
+            return in != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the cache key of the audio of the given video, or {@code null} if the video has no digest
+     */
+    protected String getKey(Blob video) {
+        String digest = video.getDigest();
+        if (StringUtils.isBlank(digest) && video instanceof ManagedBlob managedBlob) {
+            digest = managedBlob.getKey();
+        }
+        if (StringUtils.isBlank(digest)) {
+            return null;
+        }
+        return KEY_PREFIX + digest + ":" + codec.extension + ":" + sampleRate;
+    }
+
+    protected String getFilename(Blob video) {
+        String basename = StringUtils.defaultIfBlank(FilenameUtils.getBaseName(video.getFilename()), "audio");
+        return basename + "." + codec.extension;
+    }
+
+    protected BlobProvider getBlobProvider() {
+        return Framework.getService(BlobManager.class).getBlobProvider(blobProviderId);
+    }
+
+    protected KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(KV_STORE_NAME);
+    }
+}
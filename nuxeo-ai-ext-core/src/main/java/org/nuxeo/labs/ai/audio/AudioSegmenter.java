@@ -0,0 +1,271 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.audio;
+
+import io.dropwizard.metrics5.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CloseableFile;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobContext;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.platform.commandline.executor.api.CmdParameters;
+import org.nuxeo.ecm.platform.commandline.executor.api.CommandLineExecutorService;
+import org.nuxeo.ecm.platform.commandline.executor.api.ExecResult;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a long media into audio segments cut in silences, so that the segments can be transcribed concurrently.
+ * <p>
+ * The silences are detected with the ffmpeg {@code silencedetect} filter. Each cut is made in the silence closest to
+ * the target segment duration, within a search window; without silence in the window, the cut is made at the target.
+ */
+public class AudioSegmenter {
+
+    private static final Logger log = LogManager.getLogger(AudioSegmenter.class);
+
+    public static final String SEGMENT_DURATION_OPTION = "segmentDuration";
+
+    public static final String SEGMENT_WINDOW_OPTION = "segmentWindow";
+
+    public static final String SEGMENT_NOISE_OPTION = "segmentNoise";
+
+    public static final String SEGMENT_SILENCE_OPTION = "segmentSilence";
+
+    public static final String SILENCE_COMMAND = "ai-ext-silence-detect";
+
+    public static final String SEGMENT_COMMAND = "ai-ext-audio-segment";
+
+    protected static final Pattern DURATION = Pattern.compile("Duration: (\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+
+    protected static final Pattern SILENCE_START = Pattern.compile("silence_start: (-?\\d+(?:\\.\\d+)?)");
+
+    protected static final Pattern SILENCE_END = Pattern.compile("silence_end: (\\d+(?:\\.\\d+)?)");
+
+    protected final double segmentDuration;
+
+    protected final double window;
+
+    protected final String noise;
+
+    protected final double silence;
+
+    protected final int sampleRate;
+
+    protected final String blobProviderId;
+
+    /**
+     * An audio segment and its position in the media, in seconds.
+     */
+    public record Segment(ManagedBlob blob, double offset, double duration) {
+    }
+
+    /**
+     * @param segmentDuration the target duration of a segment in seconds
+     * @param window the distance to the target in which a silence is looked for, in seconds
+     * @param noise the level under which the audio is silent, e.g. {@code -30dB}
+     * @param silence the minimum duration of a silence in seconds
+     */
+    public AudioSegmenter(double segmentDuration, double window, String noise, double silence, int sampleRate,
+            String blobProviderId) {
+        this.segmentDuration = segmentDuration;
+        this.window = window;
+        this.noise = noise;
+        this.silence = silence;
+        this.sampleRate = sampleRate;
+        this.blobProviderId = blobProviderId;
+    }
+
+    public static AudioSegmenter fromOptions(Map<String, String> options) {
+        return new AudioSegmenter(Double.parseDouble(options.getOrDefault(SEGMENT_DURATION_OPTION, "900")),
+                Double.parseDouble(options.getOrDefault(SEGMENT_WINDOW_OPTION, "60")),
+                options.getOrDefault(SEGMENT_NOISE_OPTION, "-30dB"),
+                Double.parseDouble(options.getOrDefault(SEGMENT_SILENCE_OPTION, "0.5")),
+                Integer.parseInt(options.getOrDefault(AudioExtractor.SAMPLE_RATE_OPTION, "16000")),
+                options.getOrDefault(AudioExtractor.BLOB_PROVIDER_OPTION, AudioExtractor.DEFAULT_BLOB_PROVIDER));
+    }
+
+    public double getSegmentDuration() {
+        return segmentDuration;
+    }
+
+    /**
+     * @return the segments of the media in order, a single segment holding the media itself if it is too short or
+     *         cannot be split
+     */
+    public List<Segment> split(ManagedBlob media) {
+        CommandLineExecutorService cles = Framework.getService(CommandLineExecutorService.class);
+        if (!cles.getCommandAvailability(SILENCE_COMMAND).isAvailable()
+                || !cles.getCommandAvailability(SEGMENT_COMMAND).isAvailable()) {
+            log.warn("Commands {} and {} are required to split media", SILENCE_COMMAND, SEGMENT_COMMAND);
+            return List.of(new Segment(media, 0, 0));
+        }
+        try (Timer.Context ignored = AIExtMetrics.AUDIO_SPLIT.time();
+                CloseableFile source = media.getCloseableFile()) {
+            String path = source.getFile().getAbsolutePath();
+            CmdParameters params = cles.getDefaultCmdParameters();
+            params.addNamedParameter("inFilePath", path);
+            params.addNamedParameter("noise", noise);
+            params.addNamedParameter("silence", String.valueOf(silence));
+            ExecResult result = cles.execCommand(SILENCE_COMMAND, params);
+            if (!result.isSuccessful()) {
+                log.warn("Could not detect the silences of {}: {}", media.getFilename(), result.getError());
+                return List.of(new Segment(media, 0, 0));
+            }
+            double duration = parseDuration(result.getOutput());
+            List<Double> cuts = cutPoints(duration, parseSilences(result.getOutput()), segmentDuration, window);
+            if (cuts.size() < 3) {
+                return List.of(new Segment(media, 0, duration));
+            }
+            List<Segment> segments = new ArrayList<>(cuts.size() - 1);
+            for (int i = 0; i < cuts.size() - 1; i++) {
+                double start = cuts.get(i);
+                double length = cuts.get(i + 1) - start;
+                segments.add(new Segment(cut(cles, path, start, length, media.getFilename(), i), start, length));
+            }
+            log.debug("Split {} of {}s into {} segments", media.getFilename(), duration, segments.size());
+            return segments;
+        } catch (IOException e) {
+            throw new NuxeoException("Could not split " + media.getFilename(), e);
+        }
+    }
+
+    protected ManagedBlob cut(CommandLineExecutorService cles, String path, double start, double length,
+            String filename, int index) throws IOException {
+        Blob segment = Blobs.createBlobWithExtension(".flac");
+        File file = segment.getFile();
+        CmdParameters params = cles.getDefaultCmdParameters();
+        params.addNamedParameter("inFilePath", path);
+        params.addNamedParameter("outFilePath", file.getAbsolutePath());
+        params.addNamedParameter("start", format(start));
+        params.addNamedParameter("duration", format(length));
+        params.addNamedParameter("sampleRate", String.valueOf(sampleRate));
+        ExecResult result = cles.execCommand(SEGMENT_COMMAND, params);
+        if (!result.isSuccessful() || file.length() == 0) {
+            throw new IOException("Could not cut segment " + index + " of " + filename + ": " + result.getError());
+        }
+        // Transcribe reads the segments from the blob provider, like the extracted audio
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = getBlobProvider().writeBlob(segment);
+        blobInfo.mimeType = "audio/flac";
+        blobInfo.filename = String.format("%s-%03d.flac", filename, index);
+        Blob stored = getBlobProvider().readBlob(blobInfo);
+        if (!(stored instanceof ManagedBlob managedBlob)) {
+            throw new IOException("Blob provider " + blobProviderId + " does not provide managed blobs");
+        }
+        return managedBlob;
+    }
+
+    /**
+     * Deletes a segment from the blob provider, once its transcription job is over.
+     */
+    public void delete(Segment segment) {
+        try {
+            getBlobProvider().deleteBlob(new BlobContext(segment.blob(), null, null));
+        } catch (RuntimeException e) {
+            // left to the cleanup of the transient provider
+            log.warn("Could not delete segment {}", segment.blob().getKey(), e);
+        }
+    }
+
+    /**
+     * @return the cut points from 0 to the duration, each cut in the middle of the silence closest to the target
+     */
+    public static List<Double> cutPoints(double duration, List<double[]> silences, double segmentDuration,
+            double window) {
+        List<Double> cuts = new ArrayList<>();
+        cuts.add(0d);
+        double last = 0;
+        // the last segment is not made shorter than half a segment
+        while (duration - last > segmentDuration * 1.5) {
+            double target = last + segmentDuration;
+            double cut = target;
+            double distance = window;
+            for (double[] range : silences) {
+                double middle = (range[0] + range[1]) / 2;
+                if (middle > last && Math.abs(middle - target) <= distance) {
+                    distance = Math.abs(middle - target);
+                    cut = middle;
+                }
+            }
+            cuts.add(cut);
+            last = cut;
+        }
+        cuts.add(duration);
+        return cuts;
+    }
+
+    /**
+     * @return the silences as {@code [start, end]} pairs, in seconds
+     */
+    public static List<double[]> parseSilences(List<String> output) {
+        List<double[]> silences = new ArrayList<>();
+        double start = -1;
+        for (String line : output) {
+            Matcher matcher = SILENCE_START.matcher(line);
+            if (matcher.find()) {
+                start = Math.max(0, Double.parseDouble(matcher.group(1)));
+                continue;
+            }
+            matcher = SILENCE_END.matcher(line);
+            if (matcher.find() && start >= 0) {
+                silences.add(new double[] { start, Double.parseDouble(matcher.group(1)) });
+                start = -1;
+            }
+        }
+        return silences;
+    }
+
+    /**
+     * @return the duration of the media in seconds, 0 if unknown
+     */
+    public static double parseDuration(List<String> output) {
+        for (String line : output) {
+            Matcher matcher = DURATION.matcher(line);
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1)) * 3600 + Integer.parseInt(matcher.group(2)) * 60
+                        + Double.parseDouble(matcher.group(3));
+            }
+        }
+        return 0;
+    }
+
+    protected static String format(double seconds) {
+        return String.format(Locale.ROOT, "%.3f", seconds);
+    }
+
+    protected BlobProvider getBlobProvider() {
+        return Framework.getService(BlobManager.class).getBlobProvider(blobProviderId);
+    }
+}
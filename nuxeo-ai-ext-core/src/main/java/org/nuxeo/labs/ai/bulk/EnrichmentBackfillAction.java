@@ -0,0 +1,199 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.bulk;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.enrichment.EnrichmentProvider;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ai.sdk.objects.PropertyType;
+import org.nuxeo.ai.services.AIComponent;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.labs.ai.pipes.MediaDocEvent2Stream;
+import org.nuxeo.labs.ai.pipes.RenditionSelectionPolicy;
+import org.nuxeo.lib.stream.computation.StreamManager;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+import org.nuxeo.runtime.stream.StreamService;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_FACET;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_ITEMS;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_SCHEMA_NAME;
+import static org.nuxeo.ai.pipes.services.JacksonUtil.toRecord;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+
+/**
+ * Enriches the documents of an NXQL query with a provider, the same way as the media pipelines do for new documents.
+ * <p>
+ * The documents are serialized with {@link MediaDocEvent2Stream} from the same options as the
+ * {@code MediaConversion2Stream} transformer, and their records are appended to the enrichment stream consumed by the
+ * provider, so that the enrichment runs with the concurrency, retry policy and governor of the pipelines instead of
+ * blocking the bulk threads. As for any bulk action, the documents are split into buckets spread over the partitions
+ * of the action stream, consumed by all the nodes, and the stream offsets are the checkpoints from which an interrupted
+ * run resumes. The documents that cannot be serialized are counted as errors of the bulk status.
+ */
+public class EnrichmentBackfillAction implements StreamProcessorTopology {
+
+    public static final String ACTION_NAME = "aiEnrichmentBackfill";
+
+    public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
+
+    public static final String PROVIDER_PARAM = "provider";
+
+    /** Enrichment stream consumed by the provider, the {@code source} of its {@code EnrichingStreamProcessor}. */
+    public static final String STREAM_PARAM = "stream";
+
+    /** Skips the documents already having an enrichment of the provider, {@code true} by default. */
+    public static final String SKIP_ENRICHED_PARAM = "skipEnriched";
+
+    /** Maximum documents sent per second by each node, {@code 0} for no limit. */
+    public static final String DOCS_PER_SECOND_PARAM = "docsPerSecond";
+
+    public static final String BLOB_PROPERTIES_PARAM = "blobProperties";
+
+    public static final String BLOB_PROPERTIES_TYPE_PARAM = "blobPropertiesType";
+
+    public static final String TEXT_PROPERTIES_PARAM = "textProperties";
+
+    public static final String SINGLE_RECORD_PARAM = "singleRecord";
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(EnrichmentBackfillComputation::new,
+                               Arrays.asList(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
+                       .build();
+    }
+
+    public static class EnrichmentBackfillComputation extends AbstractBulkComputation {
+
+        private static final Logger log = LogManager.getLogger(EnrichmentBackfillComputation.class);
+
+        // shared by the threads of the node working on the same command, dropped once the command is idle
+        protected static final Cache<String, RateLimiter> RATE_LIMITERS = CacheBuilder.newBuilder()
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+
+        public EnrichmentBackfillComputation() {
+            super(ACTION_FULL_NAME);
+        }
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+            String providerName = (String) properties.get(PROVIDER_PARAM);
+            EnrichmentProvider provider = Framework.getService(AIComponent.class).getEnrichmentProvider(providerName);
+            if (provider == null) {
+                throw new NuxeoException("Unknown enrichment provider: " + providerName);
+            }
+            String stream = (String) properties.get(STREAM_PARAM);
+            boolean skipEnriched = !"false".equals(String.valueOf(properties.get(SKIP_ENRICHED_PARAM)));
+            MediaDocEvent2Stream serializer = getSerializer(properties);
+            RateLimiter rateLimiter = getRateLimiter(properties);
+            StreamManager streamManager = Framework.getService(StreamService.class).getStreamManager();
+
+            for (DocumentModel doc : loadDocuments(session, ids)) {
+                if (skipEnriched && isEnriched(doc, providerName)) {
+                    log.debug("Skipping document id = {}, already enriched by {}", doc.getId(), providerName);
+                    continue;
+                }
+                Collection<BlobTextFromDocument> items;
+                try {
+                    items = serializer.docSerialize(doc);
+                } catch (RuntimeException e) {
+                    log.warn("Could not serialize document id = {} for {}", doc.getId(), providerName, e);
+                    delta.inError("Could not serialize document id = " + doc.getId() + ": " + e.getMessage());
+                    continue;
+                }
+                if (items.isEmpty()) {
+                    continue;
+                }
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                }
+                // a failed append fails the bucket, which is retried by the policy of the action
+                items.forEach(item -> streamManager.append(stream, toRecord(item.getKey(), item)));
+            }
+        }
+
+        protected boolean isEnriched(DocumentModel doc, String providerName) {
+            if (!doc.hasFacet(ENRICHMENT_FACET)) {
+                return false;
+            }
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> enrichments = (List<Map<String, Object>>) doc.getProperty(
+                    ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS);
+            return enrichments != null
+                    && enrichments.stream().anyMatch(en -> providerName.equals(en.get("model")));
+        }
+
+        protected MediaDocEvent2Stream getSerializer(Map<String, Serializable> properties) {
+            List<String> names = split(properties.get(BLOB_PROPERTIES_PARAM));
+            List<String> types = split(properties.get(BLOB_PROPERTIES_TYPE_PARAM));
+            List<PropertyType> blobProperties = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                blobProperties.add(new PropertyType(names.get(i), i < types.size() ? types.get(i) : "img"));
+            }
+            Map<String, String> options = new HashMap<>();
+            properties.forEach((key, value) -> options.put(key, String.valueOf(value)));
+            return new MediaDocEvent2Stream(blobProperties, split(properties.get(TEXT_PROPERTIES_PARAM)), List.of(),
+                    Boolean.parseBoolean(options.get(SINGLE_RECORD_PARAM)),
+                    RenditionSelectionPolicy.fromOptions(options));
+        }
+
+        protected RateLimiter getRateLimiter(Map<String, Serializable> properties) {
+            double docsPerSecond = Double.parseDouble(
+                    String.valueOf(properties.getOrDefault(DOCS_PER_SECOND_PARAM, "0")));
+            if (docsPerSecond <= 0) {
+                return null;
+            }
+            try {
+                return RATE_LIMITERS.get(command.getId(), () -> RateLimiter.create(docsPerSecond));
+            } catch (ExecutionException e) {
+                throw new NuxeoException(e);
+            }
+        }
+
+        protected static List<String> split(Serializable value) {
+            if (value == null || StringUtils.isBlank(value.toString())) {
+                return List.of();
+            }
+            return Arrays.stream(value.toString().split(",")).map(String::trim).toList();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.bulk;
+
+import org.nuxeo.ai.services.AIComponent;
+import org.nuxeo.ecm.core.bulk.AbstractBulkActionValidation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.runtime.api.Framework;
+
+import java.util.List;
+
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.BLOB_PROPERTIES_PARAM;
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.BLOB_PROPERTIES_TYPE_PARAM;
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.DOCS_PER_SECOND_PARAM;
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.PROVIDER_PARAM;
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.SINGLE_RECORD_PARAM;
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.SKIP_ENRICHED_PARAM;
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.STREAM_PARAM;
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.TEXT_PROPERTIES_PARAM;
+import static org.nuxeo.labs.ai.pipes.RenditionSelectionPolicy.MAX_SIZE_OPTION;
+import static org.nuxeo.labs.ai.pipes.RenditionSelectionPolicy.MIN_BITRATE_OPTION;
+import static org.nuxeo.labs.ai.pipes.RenditionSelectionPolicy.MIN_HEIGHT_OPTION;
+import static org.nuxeo.labs.ai.pipes.RenditionSelectionPolicy.MIN_WIDTH_OPTION;
+import static org.nuxeo.labs.ai.pipes.RenditionSelectionPolicy.SELECTION_OPTION;
+
+public class EnrichmentBackfillValidation extends AbstractBulkActionValidation {
+
+    @Override
+    protected List<String> getParametersToValidate() {
+        return List.of(PROVIDER_PARAM, STREAM_PARAM, SKIP_ENRICHED_PARAM, DOCS_PER_SECOND_PARAM,
+                BLOB_PROPERTIES_PARAM, BLOB_PROPERTIES_TYPE_PARAM, TEXT_PROPERTIES_PARAM, SINGLE_RECORD_PARAM,
+                SELECTION_OPTION, MIN_WIDTH_OPTION, MIN_HEIGHT_OPTION, MIN_BITRATE_OPTION, MAX_SIZE_OPTION);
+    }
+
+    @Override
+    protected void validateCommand(BulkCommand command) throws IllegalArgumentException {
+        validateString(PROVIDER_PARAM, command);
+        String providerName = command.getParam(PROVIDER_PARAM);
+        if (providerName == null) {
+            throw new IllegalArgumentException(invalidParameterMessage(PROVIDER_PARAM, null));
+        }
+        if (Framework.getService(AIComponent.class).getEnrichmentProvider(providerName) == null) {
+            throw new IllegalArgumentException("Unknown enrichment provider: " + providerName);
+        }
+        validateString(STREAM_PARAM, command);
+        if (command.getParam(STREAM_PARAM) == null) {
+            throw new IllegalArgumentException(invalidParameterMessage(STREAM_PARAM, null));
+        }
+        validateBoolean(SKIP_ENRICHED_PARAM, command);
+        validateBoolean(SINGLE_RECORD_PARAM, command);
+        validateString(BLOB_PROPERTIES_PARAM, command);
+        validateString(BLOB_PROPERTIES_TYPE_PARAM, command);
+        validateString(TEXT_PROPERTIES_PARAM, command);
+        Object docsPerSecond = command.getParam(DOCS_PER_SECOND_PARAM);
+        if (docsPerSecond != null) {
+            try {
+                Double.parseDouble(docsPerSecond.toString());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(invalidParameterMessage(DOCS_PER_SECOND_PARAM, command));
+            }
+        }
+    }
+}
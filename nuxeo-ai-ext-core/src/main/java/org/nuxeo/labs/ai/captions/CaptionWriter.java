@@ -0,0 +1,222 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.captions;
+
+import org.nuxeo.ai.metadata.Caption;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes captions to temporary files as they are produced, in one or more formats at once, so that the caption files
+ * of long videos are never held in memory. The files are deleted once their blobs are garbage collected.
+ */
+public class CaptionWriter implements Closeable {
+
+    public enum Format {
+
+        VTT("vtt", "text/vtt"),
+
+        SRT("srt", "application/x-subrip"),
+
+        TTML("ttml", "application/ttml+xml");
+
+        protected final String extension;
+
+        protected final String mimeType;
+
+        Format(String extension, String mimeType) {
+            this.extension = extension;
+            this.mimeType = mimeType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * @return the formats of a comma separated list, VTT always included
+         */
+        public static List<Format> parse(String formats) {
+            List<Format> result = new ArrayList<>(List.of(VTT));
+            Arrays.stream(formats.split(","))
+                  .map(String::trim)
+                  .filter(format -> !format.isEmpty())
+                  .map(format -> valueOf(format.toUpperCase(Locale.ROOT)))
+                  .filter(format -> !result.contains(format))
+                  .forEach(result::add);
+            return result;
+        }
+    }
+
+    protected final Map<Format, File> files = new EnumMap<>(Format.class);
+
+    protected final Map<Format, Writer> writers = new EnumMap<>(Format.class);
+
+    protected int count;
+
+    protected boolean finished;
+
+    public CaptionWriter(Collection<Format> formats) throws IOException {
+        try {
+            for (Format format : formats) {
+                File file = Framework.createTempFile("captions-", "." + format.extension);
+                files.put(format, file);
+                Writer writer = Files.newBufferedWriter(file.toPath(), UTF_8);
+                writers.put(format, writer);
+                writeHeader(format, writer);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes all the captions and finishes the files.
+     */
+    public static Map<Format, Blob> write(Iterable<Caption> captions, Collection<Format> formats) throws IOException {
+        try (CaptionWriter writer = new CaptionWriter(formats)) {
+            for (Caption caption : captions) {
+                writer.write(caption);
+            }
+            return writer.finish();
+        }
+    }
+
+    public void write(Caption caption) throws IOException {
+        count++;
+        for (Map.Entry<Format, Writer> entry : writers.entrySet()) {
+            Writer writer = entry.getValue();
+            switch (entry.getKey()) {
+            case VTT -> {
+                writer.write(timestamp(caption.getStart(), '.') + " --> " + timestamp(caption.getEnd(), '.') + "\n");
+                writer.write(String.join("\n", caption.getLines()) + "\n\n");
+            }
+            case SRT -> {
+                writer.write(count + "\n");
+                writer.write(timestamp(caption.getStart(), ',') + " --> " + timestamp(caption.getEnd(), ',') + "\n");
+                writer.write(String.join("\n", caption.getLines()) + "\n\n");
+            }
+            case TTML -> {
+                writer.write("      <p begin=\"" + timestamp(caption.getStart(), '.') + "\" end=\""
+                        + timestamp(caption.getEnd(), '.') + "\">");
+                writer.write(String.join("<br/>", caption.getLines().stream().map(CaptionWriter::escape).toList()));
+                writer.write("</p>\n");
+            }
+            }
+        }
+    }
+
+    /**
+     * Closes the files.
+     *
+     * @return the blobs of the files by format
+     */
+    public Map<Format, Blob> finish() throws IOException {
+        Map<Format, Blob> blobs = new EnumMap<>(Format.class);
+        for (Map.Entry<Format, Writer> entry : writers.entrySet()) {
+            Format format = entry.getKey();
+            try (Writer writer = entry.getValue()) {
+                writeFooter(format, writer);
+            }
+            File file = files.get(format);
+            Blob blob = new FileBlob(file);
+            blob.setMimeType(format.mimeType);
+            blob.setEncoding(UTF_8.name());
+            blob.setFilename("captions." + format.extension);
+            Framework.trackFile(file, blob);
+            blobs.put(format, blob);
+        }
+        finished = true;
+        return blobs;
+    }
+
+    /**
+     * Deletes the files unless they were finished.
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        for (Writer writer : writers.values()) {
+            writer.close();
+        }
+        for (File file : files.values()) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    protected void writeHeader(Format format, Writer writer) throws IOException {
+        switch (format) {
+        case VTT -> writer.write("WEBVTT\n\n");
+        case TTML -> writer.write("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <tt xmlns="http://www.w3.org/ns/ttml">
+                  <body>
+                    <div>
+                """);
+        default -> {
+            // no header
+        }
+        }
+    }
+
+    protected void writeFooter(Format format, Writer writer) throws IOException {
+        if (format == Format.TTML) {
+            writer.write("""
+                        </div>
+                      </body>
+                    </tt>
+                    """);
+        }
+    }
+
+    /**
+     * @return the time in {@code hh:mm:ss.mmm} form, with the given separator before the milliseconds
+     */
+    protected static String timestamp(long millis, char separator) {
+        return String.format("%02d:%02d:%02d%c%03d", millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60,
+                separator, millis % 1000);
+    }
+
+    protected static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.dedup;
+
+import org.nuxeo.ecm.core.api.Blob;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * 64-bit DCT perceptual hash of a picture: near-identical pictures (resized, re-encoded, slightly retouched) have hashes
+ * differing by a few bits only.
+ * <p>
+ * The picture is reduced to a 32x32 grayscale image, and each bit tells whether one of the 8x8 lowest frequencies of its
+ * DCT is above their median.
+ */
+public final class PerceptualHash {
+
+    protected static final int SIZE = 32;
+
+    protected static final int LOW_SIZE = 8;
+
+    protected static final double[][] COSINES = new double[LOW_SIZE][SIZE];
+
+    static {
+        for (int u = 0; u < LOW_SIZE; u++) {
+            for (int x = 0; x < SIZE; x++) {
+                COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * SIZE));
+            }
+        }
+    }
+
+    private PerceptualHash() {
+        // utility class
+    }
+
+    /**
+     * @return the hash of the picture, or {@code null} if the blob is not a readable picture
+     */
+    public static Long hash(Blob blob) throws IOException {
+        BufferedImage image;
+        try (InputStream in = blob.getStream()) {
+            image = ImageIO.read(in);
+        }
+        return image == null ? null : hash(image);
+    }
+
+    public static long hash(BufferedImage image) {
+        double[][] pixels = grayscale(image);
+
+        // separable DCT-II, only the low frequencies are needed
+        double[][] rows = new double[LOW_SIZE][SIZE];
+        for (int u = 0; u < LOW_SIZE; u++) {
+            for (int y = 0; y < SIZE; y++) {
+                double sum = 0;
+                for (int x = 0; x < SIZE; x++) {
+                    sum += COSINES[u][x] * pixels[x][y];
+                }
+                rows[u][y] = sum;
+            }
+        }
+        double[] coefficients = new double[LOW_SIZE * LOW_SIZE];
+        for (int u = 0; u < LOW_SIZE; u++) {
+            for (int v = 0; v < LOW_SIZE; v++) {
+                double sum = 0;
+                for (int y = 0; y < SIZE; y++) {
+                    sum += COSINES[v][y] * rows[u][y];
+                }
+                coefficients[u * LOW_SIZE + v] = sum;
+            }
+        }
+
+        // the DC coefficient is the mean brightness, it would skew the median
+        double[] sorted = Arrays.copyOfRange(coefficients, 1, coefficients.length);
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        long hash = 0;
+        for (int i = 0; i < coefficients.length; i++) {
+            if (coefficients[i] > median) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return the number of bits differing between the two hashes
+     */
+    public static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    /**
+     * Reduces the picture to the average luminance of each cell of a 32x32 grid.
+     */
+    protected static double[][] grayscale(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[][] pixels = new double[SIZE][SIZE];
+        int[][] counts = new int[SIZE][SIZE];
+        for (int y = 0; y < height; y++) {
+            int cy = (int) ((long) y * SIZE / height);
+            for (int x = 0; x < width; x++) {
+                int cx = (int) ((long) x * SIZE / width);
+                pixels[cx][cy] += luminance(image.getRGB(x, y));
+                counts[cx][cy]++;
+            }
+        }
+        for (int cx = 0; cx < SIZE; cx++) {
+            for (int cy = 0; cy < SIZE; cy++) {
+                pixels[cx][cy] = counts[cx][cy] > 0 ? pixels[cx][cy] / counts[cx][cy]
+                        // pictures smaller than the grid
+                        : luminance(image.getRGB(cx * width / SIZE, cy * height / SIZE));
+            }
+        }
+        return pixels;
+    }
+
+    protected static double luminance(int rgb) {
+        return 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+    }
+}
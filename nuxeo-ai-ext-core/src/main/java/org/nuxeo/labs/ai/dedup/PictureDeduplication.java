@@ -0,0 +1,218 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.dedup;
+
+import io.dropwizard.metrics5.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_FACET;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_ITEMS;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_SCHEMA_NAME;
+
+/**
+ * Skips the enrichment of the pictures that are near duplicates of an already enriched picture (burst shots,
+ * re-exports, duplicated assets): the enrichments of the duplicated document are copied instead of sending a record.
+ * Only the enrichments of the models fed by the pipe from the same input property are copied, and the record is sent
+ * anyway when one of them is missing on the duplicated document.
+ * <p>
+ * The perceptual hashes of the pictures are kept in a local {@link PictureHashIndex}, so only the duplicates of the
+ * pictures seen by the node are detected.
+ */
+public class PictureDeduplication {
+
+    private static final Logger log = LogManager.getLogger(PictureDeduplication.class);
+
+    /** {@code phash} to enable the deduplication. */
+    public static final String DEDUP_OPTION = "dedup";
+
+    public static final String PHASH_DEDUP = "phash";
+
+    /** Maximum number of bits differing between the hashes of near duplicates. */
+    public static final String THRESHOLD_OPTION = "dedupThreshold";
+
+    /** Maximum number of pictures in the index. */
+    public static final String CAPACITY_OPTION = "dedupCapacity";
+
+    /** Comma-separated names of the enrichment providers consuming the records of the pipe. */
+    public static final String MODELS_OPTION = "dedupModels";
+
+    protected static final String MODEL_KEY = "model";
+
+    protected static final String INPUT_PROPERTIES_KEY = "inputProperties";
+
+    protected static final String NAME_KEY = "name";
+
+    protected final PictureHashIndex index;
+
+    protected final Set<String> models;
+
+    /**
+     * @param models the enrichment providers fed by the pipe, whose enrichments are reused
+     */
+    public PictureDeduplication(PictureHashIndex index, Set<String> models) {
+        this.index = index;
+        this.models = Set.copyOf(models);
+    }
+
+    /**
+     * @return the deduplication configured by the pipe options, or {@code null} if disabled
+     */
+    public static PictureDeduplication fromOptions(Map<String, String> options) {
+        if (!PHASH_DEDUP.equals(options.get(DEDUP_OPTION))) {
+            return null;
+        }
+        Set<String> models = Arrays.stream(options.getOrDefault(MODELS_OPTION, "").split(","))
+                                   .map(String::trim)
+                                   .filter(model -> !model.isEmpty())
+                                   .collect(Collectors.toSet());
+        if (models.isEmpty()) {
+            throw new IllegalArgumentException("The " + MODELS_OPTION + " option is required by the deduplication");
+        }
+        return new PictureDeduplication(
+                new PictureHashIndex(Integer.parseInt(options.getOrDefault(THRESHOLD_OPTION, "6")),
+                        Integer.parseInt(options.getOrDefault(CAPACITY_OPTION, "100000"))), models);
+    }
+
+    /**
+     * Reuses the enrichments of a near duplicate of the picture carried by the item.
+     *
+     * @return {@code true} if the enrichments were reused and the item does not need to be enriched
+     */
+    public boolean reuse(DocumentModel doc, BlobTextFromDocument item) {
+        if (item.getBlobs().size() != 1) {
+            return false;
+        }
+        ManagedBlob blob = item.getBlobs().values().iterator().next();
+        if (blob.getMimeType() != null && !blob.getMimeType().startsWith("image/")) {
+            return false;
+        }
+        Long hash;
+        try (Timer.Context ignored = AIExtMetrics.DEDUP_HASH.time()) {
+            hash = PerceptualHash.hash(blob);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not hash picture of document id = {}", doc.getId(), e);
+            return false;
+        }
+        if (hash == null) {
+            return false;
+        }
+
+        String repository = doc.getRepositoryName();
+        String inputProperty = item.getBlobs().keySet().iterator().next();
+        PictureHashIndex.Match match = index.find(repository, doc.getId(), hash);
+        if (match != null && copyEnrichments(repository, match.docId(), doc.getId(), inputProperty)) {
+            log.debug("Document id = {} is a near duplicate of {} ({} bits); Reusing its enrichments", doc.getId(),
+                    match.docId(), match.distance());
+            AIExtMetrics.DEDUP_DUPLICATES.inc();
+            return true;
+        }
+        // the duplicate of a picture not enriched yet is a candidate as well
+        index.add(repository, doc.getId(), hash);
+        AIExtMetrics.DEDUP_UNIQUE.inc();
+        return false;
+    }
+
+    /**
+     * Copies the enrichments of the source document by the models of the pipe for the given input property, replacing
+     * the enrichments of the same models and input property.
+     *
+     * @return {@code false} if the source lacks the enrichment of one of the models
+     */
+    @SuppressWarnings("unchecked")
+    protected boolean copyEnrichments(String repository, String sourceId, String targetId, String inputProperty) {
+        return TransactionHelper.runInTransaction(() -> CoreInstance.doPrivileged(repository, session -> {
+            IdRef sourceRef = new IdRef(sourceId);
+            IdRef targetRef = new IdRef(targetId);
+            if (!session.exists(sourceRef)) {
+                index.remove(repository, sourceId);
+                return false;
+            }
+            DocumentModel source = session.getDocument(sourceRef);
+            List<Map<String, Serializable>> sourceItems = source.hasFacet(ENRICHMENT_FACET)
+                    ? (List<Map<String, Serializable>>) source.getProperty(ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS)
+                    : null;
+            if (sourceItems == null || !session.exists(targetRef)) {
+                return false;
+            }
+            List<Map<String, Serializable>> enrichments = sourceItems.stream()
+                                                                     .filter(en -> isFedByPipe(en, inputProperty))
+                                                                     .toList();
+            Set<Object> enriched = enrichments.stream().map(en -> en.get(MODEL_KEY)).collect(Collectors.toSet());
+            if (!enriched.containsAll(models)) {
+                // the record is sent, so that the missing enrichments are computed along with the others
+                return false;
+            }
+
+            DocumentModel target = session.getDocument(targetRef);
+            List<Map<String, Serializable>> merged = new ArrayList<>();
+            if (target.hasFacet(ENRICHMENT_FACET)) {
+                List<Map<String, Serializable>> existing = (List<Map<String, Serializable>>) target.getProperty(
+                        ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS);
+                if (existing != null) {
+                    existing.stream().filter(en -> !isFedByPipe(en, inputProperty)).forEach(merged::add);
+                }
+            } else {
+                target.addFacet(ENRICHMENT_FACET);
+            }
+            merged.addAll(enrichments);
+            target.setProperty(ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS, merged);
+            session.saveDocument(target);
+            return true;
+        }));
+    }
+
+    /**
+     * @return {@code true} if the enrichment item was computed by one of the models of the pipe from the given input
+     *         property
+     */
+    protected boolean isFedByPipe(Map<String, Serializable> enrichment, String inputProperty) {
+        if (!models.contains(enrichment.get(MODEL_KEY))) {
+            return false;
+        }
+        Serializable inputs = enrichment.get(INPUT_PROPERTIES_KEY);
+        Collection<?> values = inputs instanceof Object[] array ? Arrays.asList(array)
+                : inputs instanceof Collection<?> collection ? collection : List.of();
+        // input properties are stored as names, or as name and type
+        return values.stream()
+                     .map(value -> value instanceof Map<?, ?> map ? map.get(NAME_KEY) : value)
+                     .anyMatch(inputProperty::equals);
+    }
+
+    public PictureHashIndex getIndex() {
+        return index;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.dedup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the perceptual hashes of the pictures seen by a node, finding the near duplicates of a picture
+ * without comparing it to every entry.
+ * <p>
+ * The 64 bits of a hash are split into {@code threshold + 1} bands: two hashes differing by at most {@code threshold}
+ * bits have at least one identical band, so only the entries sharing a band bucket with the hash are compared. The
+ * least recently added entries are evicted beyond the capacity.
+ */
+public class PictureHashIndex {
+
+    public record Match(String docId, long hash, int distance) {
+    }
+
+    protected record Entry(String repository, String docId, long hash) {
+    }
+
+    protected final int threshold;
+
+    protected final int capacity;
+
+    protected final int[] bandStarts;
+
+    protected final List<Map<Long, List<Entry>>> buckets = new ArrayList<>();
+
+    protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * @param threshold the maximum number of differing bits of near duplicates
+     * @param capacity the maximum number of entries
+     */
+    public PictureHashIndex(int threshold, int capacity) {
+        if (threshold < 0 || threshold > 63) {
+            throw new IllegalArgumentException("Invalid Hamming threshold: " + threshold);
+        }
+        this.threshold = threshold;
+        this.capacity = capacity;
+        int bands = threshold + 1;
+        bandStarts = new int[bands + 1];
+        for (int band = 0; band <= bands; band++) {
+            bandStarts[band] = band * Long.SIZE / bands;
+        }
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * @return the nearest picture of another document of the repository within the threshold, or {@code null}
+     */
+    public synchronized Match find(String repository, String docId, long hash) {
+        Match nearest = null;
+        for (int band = 0; band < buckets.size(); band++) {
+            for (Entry entry : buckets.get(band).getOrDefault(bandValue(hash, band), List.of())) {
+                if (!entry.repository().equals(repository) || entry.docId().equals(docId)) {
+                    continue;
+                }
+                int distance = PerceptualHash.distance(hash, entry.hash());
+                if (distance <= threshold && (nearest == null || distance < nearest.distance())) {
+                    nearest = new Match(entry.docId(), entry.hash(), distance);
+                }
+            }
+        }
+        return nearest;
+    }
+
+    public synchronized void add(String repository, String docId, long hash) {
+        Entry entry = new Entry(repository, docId, hash);
+        Entry previous = entries.remove(key(repository, docId));
+        if (previous != null) {
+            unbucket(previous);
+        }
+        entries.put(key(repository, docId), entry);
+        for (int band = 0; band < buckets.size(); band++) {
+            buckets.get(band).computeIfAbsent(bandValue(hash, band), k -> new ArrayList<>()).add(entry);
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > capacity) {
+            unbucket(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    public synchronized void remove(String repository, String docId) {
+        Entry entry = entries.remove(key(repository, docId));
+        if (entry != null) {
+            unbucket(entry);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    protected void unbucket(Entry entry) {
+        for (int band = 0; band < buckets.size(); band++) {
+            long value = bandValue(entry.hash(), band);
+            List<Entry> bucket = buckets.get(band).get(value);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    buckets.get(band).remove(value);
+                }
+            }
+        }
+    }
+
+    protected long bandValue(long hash, int band) {
+        int width = bandStarts[band + 1] - bandStarts[band];
+        return (hash >>> bandStarts[band]) & (width == Long.SIZE ? -1L : (1L << width) - 1);
+    }
+
+    protected static String key(String repository, String docId) {
+        return repository + ":" + docId;
+    }
+}
@@ -2,13 +2,8 @@ package org.nuxeo.labs.ai.enricher;
 
 import com.amazonaws.services.transcribe.model.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.metrics5.Timer;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -25,18 +20,39 @@ import org.nuxeo.ai.transcribe.TranscribeService;
 import org.nuxeo.ai.transcribe.TranscribeServiceImpl;
 import org.nuxeo.ecm.core.api.*;
 import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.labs.ai.audio.AudioSegmenter;
+import org.nuxeo.labs.ai.governor.AWSGovernor;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.labs.ai.transcribe.PendingTranscription;
+import org.nuxeo.labs.ai.transcribe.PollingPolicy;
+import org.nuxeo.labs.ai.transcribe.TranscribeJobService;
+import org.nuxeo.labs.ai.transcribe.TranscribeJobServiceImpl;
+import org.nuxeo.labs.ai.transcribe.Transcript;
+import org.nuxeo.labs.ai.transcribe.TranscriptCache;
+import org.nuxeo.labs.ai.transcribe.TranscriptClient;
+import org.nuxeo.labs.ai.transcribe.TranscriptMerger;
+import org.nuxeo.labs.ai.transcribe.TranscriptionJobRegistry;
+import org.nuxeo.labs.ai.transcribe.TranscriptParser;
 import org.nuxeo.runtime.api.Framework;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.FAILED;
-import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.IN_PROGRESS;
 
 public class TranscribeEnrichmentProviderExt extends TranscribeEnrichmentProvider {
 
@@ -44,18 +60,60 @@ public class TranscribeEnrichmentProviderExt extends TranscribeEnrichmentProvide
 
     private static final long TIMEOUT = 1000 * 60 * 60 * 2; // 2h
 
-    private static final long WAIT_TIME = 1000 * 5; // 5s
+    private static final long TIMEOUT_MARGIN = 1000 * 60; // 1min
 
     private static final Logger log = LogManager.getLogger(TranscribeEnrichmentProvider.class);
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+    public static final String ASYNC_OPTION = "async";
+
+    public static final String SEGMENTED_OPTION = "segmented";
+
+    /** Estimated duration in seconds from which a media is split into segments. */
+    public static final String SEGMENT_THRESHOLD_OPTION = "segmentThreshold";
+
+    /** Maximum number of segments of a media transcribed at once. */
+    public static final String SEGMENT_CONCURRENCY_OPTION = "segmentConcurrency";
+
+    protected static final String RAW_BLOB_PROVIDER = "default";
+
     protected String[] languages;
 
+    protected boolean async;
+
+    protected PollingPolicy pollingPolicy;
+
+    protected TranscriptClient transcriptClient;
+
+    protected TranscriptCache transcriptCache;
+
+    protected AudioSegmenter segmenter;
+
+    protected long segmentThreshold;
+
+    protected int segmentConcurrency;
+
     @Override
     public void init(EnrichmentDescriptor descriptor) {
         super.init(descriptor);
         languages = descriptor.options.getOrDefault(LANGUAGES_OPTION, "").split(",");
+        async = Boolean.parseBoolean(descriptor.options.getOrDefault(ASYNC_OPTION, "false"));
+        pollingPolicy = PollingPolicy.fromOptions(descriptor.options);
+        if (transcriptClient != null) {
+            try {
+                transcriptClient.close();
+            } catch (IOException e) {
+                log.warn("Could not close the transcript HTTP client", e);
+            }
+        }
+        transcriptClient = TranscriptClient.fromOptions(descriptor.options);
+        transcriptCache = TranscriptCache.fromOptions(descriptor.options, RAW_BLOB_PROVIDER);
+        segmenter = Boolean.parseBoolean(descriptor.options.getOrDefault(SEGMENTED_OPTION, "false"))
+                ? AudioSegmenter.fromOptions(descriptor.options) : null;
+        segmentThreshold = Long.parseLong(descriptor.options.getOrDefault(SEGMENT_THRESHOLD_OPTION, "1800")) * 1000;
+        segmentConcurrency = Math.max(1,
+                Integer.parseInt(descriptor.options.getOrDefault(SEGMENT_CONCURRENCY_OPTION, "4")));
     }
 
     @Override
@@ -69,67 +127,367 @@ public class TranscribeEnrichmentProviderExt extends TranscribeEnrichmentProvide
 
         Blob blob = blobOptional.get();
 
+        String cacheKey = transcriptCache.getKey(blob, languages);
+        EnrichmentMetadata cached = fromCache(blobTextFromDocument, cacheKey);
+        if (cached != null) {
+            return Collections.singletonList(cached);
+        }
+
         TranscribeService ts = Framework.getService(TranscribeService.class);
 
+        if (segmenter != null && pollingPolicy.estimateDuration(blob.getLength()) >= segmentThreshold
+                && blob instanceof ManagedBlob managedBlob) {
+            List<AudioSegmenter.Segment> segments = segmenter.split(managedBlob);
+            if (segments.size() > 1) {
+                return Collections.singletonList(
+                        transcribeSegments(blobTextFromDocument, ts, cacheKey, segments));
+            }
+        }
+
+        String jobName = ts.getJobName(blob, "automatic");
+        TranscribeJobService jobService = Framework.getService(TranscribeJobService.class);
+        TranscriptionJobRegistry registry = jobService.getRegistry();
+        TranscriptionJobRegistry.Entry entry = registry.get(jobName, docId);
+        if (entry != null && isFollowed(entry, jobService)) {
+            // the node following the job completes the enrichment
+            log.debug("Job {} is already followed by node {}; Document Id: {}", jobName, entry.owner, docId);
+            return Collections.emptyList();
+        }
+
+        // the job slot is released when the job terminates, by this thread or by the job service
+        AWSGovernor governor = Framework.getService(AWSGovernor.class);
+        governor.acquireJob(AWSGovernor.TRANSCRIBE, jobName, docId);
+        long submitTime = entry != null ? entry.submitTime : System.currentTimeMillis();
+        TranscriptionJob job;
+        try {
+            job = entry != null ? adoptJob(ts, jobName) : null;
+            if (job == null) {
+                submitTime = System.currentTimeMillis();
+                job = startJob(ts, newRequest(blob, jobName));
+            }
+        } catch (RuntimeException e) {
+            governor.releaseJob(AWSGovernor.TRANSCRIBE, jobName, docId);
+            throw e;
+        }
+        long mediaDuration = pollingPolicy.estimateDuration(blob.getLength());
+        PendingTranscription pending = new PendingTranscription(getName(), job.getTranscriptionJobName(),
+                blobTextFromDocument, mediaDuration, pollingPolicy, submitTime);
+        boolean followed = async && TranscribeJobServiceImpl.isRunning(job);
+        if (TranscribeJobServiceImpl.isRunning(job)) {
+            registry.register(pending, followed, jobService.getNodeId());
+        }
+        if (followed) {
+            jobService.track(pending);
+            return Collections.emptyList();
+        }
+
+        try {
+            job = awaitJob(pending, job);
+        } finally {
+            governor.releaseJob(AWSGovernor.TRANSCRIBE, jobName, docId);
+            // an interrupted wait is resumed by the retry, or by the sweeper if there is none
+            if (!Thread.currentThread().isInterrupted()) {
+                registry.remove(jobName, docId);
+            }
+        }
+        return Collections.singletonList(complete(blobTextFromDocument, job));
+    }
+
+    /**
+     * A job awaited by an enrichment on another node is not followed anymore once the enrichment is retried: its wait
+     * was interrupted, or its partition moved to this node. The job is claimed to be adopted by this enrichment, unless
+     * another node claimed it first.
+     *
+     * @return {@code true} if another enrichment or the job service of a live node completes the job
+     */
+    protected boolean isFollowed(TranscriptionJobRegistry.Entry entry, TranscribeJobService jobService) {
+        if (jobService.isTracked(entry.jobName, entry.docId)) {
+            return true;
+        }
+        String nodeId = jobService.getNodeId();
+        TranscriptionJobRegistry registry = jobService.getRegistry();
+        if (nodeId.equals(entry.owner) || !registry.isAlive(entry.owner)) {
+            return false;
+        }
+        return entry.async || !registry.claim(entry, nodeId);
+    }
+
+    protected StartTranscriptionJobRequest newRequest(Blob blob, String jobName) {
         URI blobURI = TranscribeServiceImpl.getBlobURI(blob, false);
         Media media = (new Media()).withMediaFileUri(blobURI.toString());
-        StartTranscriptionJobRequest request = (new StartTranscriptionJobRequest()).withIdentifyLanguage(true).withMedia(media).withTranscriptionJobName(ts.getJobName(blob, "automatic"));
+        StartTranscriptionJobRequest request = (new StartTranscriptionJobRequest()).withIdentifyLanguage(true).withMedia(media).withTranscriptionJobName(jobName);
         if (StringUtils.isNoneBlank(languages)) {
             request = request.withLanguageOptions(languages);
         }
+        return request;
+    }
+
+    /**
+     * Transcribes the segments of a long media with concurrent jobs, then merges their transcripts into the transcript
+     * of the whole media.
+     * <p>
+     * At most {@code segmentConcurrency} segments are in flight: the job slot of a segment is released as soon as its
+     * job terminates, and the next segment takes it. The timeout runs from the submission of the first segment.
+     */
+    protected EnrichmentMetadata transcribeSegments(BlobTextFromDocument blobTextFromDocument, TranscribeService ts,
+            String cacheKey, List<AudioSegmenter.Segment> segments) {
+        String docId = blobTextFromDocument.getId();
+        long submitTime = System.currentTimeMillis();
+        List<SegmentJob> running = new ArrayList<>();
+        Blob[] transcripts = new Blob[segments.size()];
+        String firstJobName = null;
+        int next = 0;
+        try {
+            while (next < segments.size() || !running.isEmpty()) {
+                while (next < segments.size() && running.size() < segmentConcurrency) {
+                    SegmentJob segmentJob = startSegment(blobTextFromDocument, ts, segments.get(next), next,
+                            submitTime);
+                    firstJobName = firstJobName == null ? segmentJob.pending().getJobName() : firstJobName;
+                    running.add(segmentJob);
+                    next++;
+                }
+                awaitAny(running, submitTime, docId);
+                for (Iterator<SegmentJob> it = running.iterator(); it.hasNext();) {
+                    SegmentJob segmentJob = it.next();
+                    if (!segmentJob.result().isDone()) {
+                        continue;
+                    }
+                    it.remove();
+                    endSegment(segmentJob);
+                    TranscriptionJob job = getResult(segmentJob);
+                    if (FAILED.name().equals(job.getTranscriptionJobStatus())) {
+                        throw new NuxeoException("Transcribe job failed with reason: " + job.getFailureReason()
+                                + "; Job: " + job.getTranscriptionJobName() + " Document Id: " + docId);
+                    }
+                    transcripts[segmentJob.index()] = getResponse(docId, job);
+                }
+            }
+        } finally {
+            running.forEach(this::endSegment);
+            if (!Thread.currentThread().isInterrupted()) {
+                segments.subList(next, segments.size()).forEach(segmenter::delete);
+            }
+        }
 
-        StartTranscriptionJobResult result;
+        Blob json;
         try {
-            result = ts.getClient().startTranscriptionJob(request);
-            ((AWSMetrics)Framework.getService(AWSMetrics.class)).getTranscribeGlobalCalls().inc();
-        } catch (ConflictException var10) {
-            String jobName = ts.getJobName(blob, "automatic");
-            log.error("Job already exist {}; Deleting it", jobName);
+            json = TranscriptMerger.merge(firstJobName, List.of(transcripts),
+                    segments.stream().map(AudioSegmenter.Segment::offset).toList());
+        } catch (IOException e) {
+            throw new NuxeoException("Could not merge the transcripts of Document Id: " + docId, e);
+        }
+        log.debug("Merged the transcripts of {} segments for Document Id: {}", segments.size(), docId);
+        String rawKey = EnrichmentUtils.saveRawBlob(json, RAW_BLOB_PROVIDER);
+        transcriptCache.put(cacheKey, rawKey);
+        return buildMetadata(blobTextFromDocument, getTranscript(docId, json), rawKey);
+    }
+
+    /**
+     * A segment in flight, holding a job slot until its job terminates.
+     */
+    protected record SegmentJob(int index, AudioSegmenter.Segment segment, PendingTranscription pending,
+            CompletableFuture<TranscriptionJob> result) {
+    }
+
+    /**
+     * Starts the job of a segment, or resumes it when a previous attempt of the enrichment registered it.
+     */
+    protected SegmentJob startSegment(BlobTextFromDocument blobTextFromDocument, TranscribeService ts,
+            AudioSegmenter.Segment segment, int index, long submitTime) {
+        String jobName = ts.getJobName(segment.blob(), "automatic");
+        TranscribeJobService jobService = Framework.getService(TranscribeJobService.class);
+        TranscriptionJobRegistry registry = jobService.getRegistry();
+        String docId = blobTextFromDocument.getId();
+        AWSGovernor governor = Framework.getService(AWSGovernor.class);
+        governor.acquireJob(AWSGovernor.TRANSCRIBE, jobName, docId);
+        try {
+            TranscriptionJob job = registry.get(jobName, docId) != null
+                    ? adoptJob(ts, jobName) : null;
+            if (job == null) {
+                job = startJob(ts, newRequest(segment.blob(), jobName));
+            }
+            PendingTranscription pending = new PendingTranscription(getName(), jobName, blobTextFromDocument,
+                    (long) (segment.duration() * 1000), pollingPolicy, submitTime);
+            if (!TranscribeJobServiceImpl.isRunning(job)) {
+                return new SegmentJob(index, segment, pending, CompletableFuture.completedFuture(job));
+            }
+            registry.register(pending, false, true, jobService.getNodeId());
+            return new SegmentJob(index, segment, pending, jobService.watch(pending));
+        } catch (RuntimeException e) {
+            governor.releaseJob(AWSGovernor.TRANSCRIBE, jobName, docId);
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the job slot of a segment whose job terminated or is abandoned, and deletes the segment.
+     */
+    protected void endSegment(SegmentJob segmentJob) {
+        PendingTranscription pending = segmentJob.pending();
+        // an abandoned wait is dropped by the job service
+        segmentJob.result().cancel(false);
+        Framework.getService(AWSGovernor.class)
+                 .releaseJob(AWSGovernor.TRANSCRIBE, pending.getJobName(), pending.getDocId());
+        // an interrupted wait is resumed by the retry, which still needs the registered jobs and their segments
+        if (!Thread.currentThread().isInterrupted()) {
+            Framework.getService(TranscribeJobService.class)
+                     .getRegistry()
+                     .remove(pending.getJobName(), pending.getDocId());
+            segmenter.delete(segmentJob.segment());
+        }
+    }
+
+    /**
+     * Waits for one of the segment jobs to terminate, the timeout running from the given submission time.
+     */
+    protected void awaitAny(List<SegmentJob> running, long submitTime, String docId) {
+        long remaining = Math.max(0, TIMEOUT - (System.currentTimeMillis() - submitTime));
+        try {
+            // the job service ends the waits at the timeout, the margin only covers a stopped poller
+            CompletableFuture.anyOf(running.stream().map(SegmentJob::result).toArray(CompletableFuture[]::new))
+                             .get(remaining + TIMEOUT_MARGIN, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Transcribe was interrupted; could not get results for Document Id: " + docId,
+                    e);
+        } catch (ExecutionException e) {
+            // the failed job is reported by getResult
+        } catch (TimeoutException e) {
+            throw new NuxeoException("Work reached timeout; Document Id: " + docId);
+        }
+    }
+
+    protected TranscriptionJob getResult(SegmentJob segmentJob) {
+        try {
+            return segmentJob.result().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof NuxeoException cause ? cause : new NuxeoException(e.getCause());
+        }
+    }
+
+    /**
+     * Starts the job, or adopts the job with the same name if it already exists and has not failed: jobs are named
+     * after the blob, so a running or completed job already has the transcript we need.
+     */
+    protected TranscriptionJob startJob(TranscribeService ts, StartTranscriptionJobRequest request) {
+        String jobName = request.getTranscriptionJobName();
+        try {
+            return submit(ts, request);
+        } catch (ConflictException e) {
+            GetTranscriptionJobRequest jobRequest = new GetTranscriptionJobRequest().withTranscriptionJobName(jobName);
+            TranscriptionJob job = ts.getClient().getTranscriptionJob(jobRequest).getTranscriptionJob();
+            if (!FAILED.name().equals(job.getTranscriptionJobStatus())) {
+                log.info("Job already exist {}; Adopting it", jobName);
+                return job;
+            }
+            log.warn("Job already exist {} and failed; Restarting it", jobName);
             DeleteTranscriptionJobRequest deleteReq = (DeleteTranscriptionJobRequest)(new DeleteTranscriptionJobRequest()).withTranscriptionJobName(jobName).withSdkClientExecutionTimeout(5000);
             ts.getClient().deleteTranscriptionJob(deleteReq);
-            result = ts.getClient().startTranscriptionJob(request);
+            return submit(ts, request);
+        }
+    }
+
+    /**
+     * @return the registered job to resume, or {@code null} if it does not exist anymore or failed
+     */
+    protected TranscriptionJob adoptJob(TranscribeService ts, String jobName) {
+        GetTranscriptionJobRequest jobRequest = new GetTranscriptionJobRequest().withTranscriptionJobName(jobName);
+        try {
+            TranscriptionJob job = ts.getClient().getTranscriptionJob(jobRequest).getTranscriptionJob();
+            if (!FAILED.name().equals(job.getTranscriptionJobStatus())) {
+                log.info("Resuming job {}", jobName);
+                return job;
+            }
+        } catch (BadRequestException e) {
+            log.debug("Job {} not found", jobName);
+        }
+        return null;
+    }
+
+    protected TranscriptionJob submit(TranscribeService ts, StartTranscriptionJobRequest request) {
+        Framework.getService(AWSGovernor.class).acquire(AWSGovernor.TRANSCRIBE);
+        TranscriptionJob job;
+        try (Timer.Context ignored = AIExtMetrics.JOB_SUBMIT.time()) {
+            job = ts.getClient().startTranscriptionJob(request).getTranscriptionJob();
         }
+        ((AWSMetrics)Framework.getService(AWSMetrics.class)).getTranscribeGlobalCalls().inc();
+        return job;
+    }
 
-        TranscriptionJob job = result.getTranscriptionJob();
-        job = awaitJob(docId, ts, job);
+    /**
+     * @return the enrichment built from the transcript already saved for the same blob and language options, or
+     *         {@code null} if there is none
+     */
+    protected EnrichmentMetadata fromCache(BlobTextFromDocument blobTextFromDocument, String cacheKey) {
+        String rawKey = transcriptCache.getRawKey(cacheKey);
+        if (rawKey == null) {
+            return null;
+        }
+        Blob json = transcriptCache.getRawBlob(cacheKey, rawKey);
+        if (json == null) {
+            return null;
+        }
+        log.debug("Reusing transcript {} for Document Id: {}", rawKey, blobTextFromDocument.getId());
+        return buildMetadata(blobTextFromDocument, getTranscript(blobTextFromDocument.getId(), json), rawKey);
+    }
+
+    public PollingPolicy getPollingPolicy() {
+        return pollingPolicy;
+    }
+
+    /**
+     * Builds the enrichment of a terminated job: downloads the transcript, computes the labels and saves the raw blob.
+     */
+    public EnrichmentMetadata complete(BlobTextFromDocument blobTextFromDocument, TranscriptionJob job) {
+        String docId = blobTextFromDocument.getId();
         if (FAILED.name().equals(job.getTranscriptionJobStatus())) {
             throw new NuxeoException("Transcribe job failed with reason: " + job.getFailureReason() + "; Job: "
                     + job.getTranscriptionJobName() + " Document Id: " + docId);
         }
 
-        String json = getResponse(docId, job);
-        AudioTranscription transcription = getAudioTranscription(docId, json);
-        List<AIMetadata.Label> labels = ts.asLabels(transcription);
+        Blob json = getResponse(docId, job);
+        Transcript transcript = getTranscript(docId, json);
+        String rawKey = EnrichmentUtils.saveRawBlob(json, RAW_BLOB_PROVIDER);
+        blobTextFromDocument.getBlobs().values().stream().findFirst().ifPresent(
+                blob -> transcriptCache.put(transcriptCache.getKey(blob, languages), rawKey));
+        return buildMetadata(blobTextFromDocument, transcript, rawKey);
+    }
+
+    protected EnrichmentMetadata buildMetadata(BlobTextFromDocument blobTextFromDocument, Transcript transcript,
+            String rawKey) {
+        TranscribeService ts = Framework.getService(TranscribeService.class);
+        List<AIMetadata.Label> labels = ts.asLabels(asAudioTranscription(transcript));
 
         List<LabelSuggestion> labelSuggestions = Collections.singletonList(
                 new LabelSuggestion(UNSET + PROVIDER_NAME, labels));
-        String rawKey = EnrichmentUtils.saveRawBlob(Blobs.createJSONBlob(json), "default");
-        EnrichmentMetadata metadata = new EnrichmentMetadata.Builder(PROVIDER_KIND, PROVIDER_NAME, blobTextFromDocument).withLabels(
+        return new EnrichmentMetadata.Builder(PROVIDER_KIND, PROVIDER_NAME, blobTextFromDocument).withLabels(
                 labelSuggestions).withRawKey(rawKey).build();
-
-        return Collections.singletonList(metadata);
     }
 
-    private AudioTranscription getAudioTranscription(String docId, String json) {
-        AudioTranscription transcription;
-        try {
-            transcription = OBJECT_MAPPER.readValue(json, AudioTranscription.class);
+    private Transcript getTranscript(String docId, Blob json) {
+        try (InputStream in = json.getStream()) {
+            return TranscriptParser.parse(in);
         } catch (IOException e) {
-            log.error("Could not process JSON response {}", json, e);
+            log.error("Could not process JSON response for Document Id: {}", docId, e);
             throw new NuxeoException("Could not read `AudioTranscription` for Document Id: " + docId);
         }
+    }
 
-        return transcription;
+    /**
+     * Builds an {@link AudioTranscription} holding only the full transcripts, which is what the labels are made of.
+     */
+    private AudioTranscription asAudioTranscription(Transcript transcript) {
+        Map<String, Object> results = new HashMap<>();
+        results.put("language_code", transcript.getLanguageCode());
+        results.put("transcripts", transcript.getTranscripts().stream().map(text -> Map.of("transcript", text)).toList());
+        results.put("items", List.of());
+        return OBJECT_MAPPER.convertValue(Map.of("results", results), AudioTranscription.class);
     }
 
-    private String getResponse(String docId, TranscriptionJob job) {
+    private Blob getResponse(String docId, TranscriptionJob job) {
         String transcriptUri = job.getTranscript().getTranscriptFileUri();
-        HttpGet req = new HttpGet(transcriptUri);
-
-        try (CloseableHttpClient httpClient = HttpClients.createDefault();
-             CloseableHttpResponse resp = httpClient.execute(req)) {
-            HttpEntity entity = resp.getEntity();
-            return EntityUtils.toString(entity, StandardCharsets.UTF_8);
+        try {
+            return transcriptClient.download(transcriptUri);
         } catch (IOException e) {
             log.error(e);
             throw new NuxeoException(
@@ -137,27 +495,35 @@ public class TranscribeEnrichmentProviderExt extends TranscribeEnrichmentProvide
         }
     }
 
+    /**
+     * Waits for the job to terminate, the timeout running from the submission of the job. The job is checked by the
+     * job service, in bulk with the other jobs followed on this node.
+     */
     @NotNull
-    private TranscriptionJob awaitJob(String docId, TranscribeService ts, TranscriptionJob job) {
-        long timeSpent = 0;
-        String jobName = job.getTranscriptionJobName();
-        GetTranscriptionJobRequest jobRequest = new GetTranscriptionJobRequest().withTranscriptionJobName(jobName);
-        while (IN_PROGRESS.name().equals(job.getTranscriptionJobStatus())) {
-            GetTranscriptionJobResult jobResult = ts.getClient().getTranscriptionJob(jobRequest);
-            job = jobResult.getTranscriptionJob();
-            if (timeSpent > TIMEOUT) {
-                throw new NuxeoException("Work reached timeout; Job name: " + jobName + " Document Id: " + docId);
-            }
-            try {
-                Thread.sleep(WAIT_TIME);
-                timeSpent += WAIT_TIME;
-            } catch (InterruptedException e) {
-                log.error(e);
-                throw new NuxeoException(
-                        "Transcribe was interrupted; could not get results for Job: " + jobName + " Document Id: "
-                                + docId, e);
-            }
+    private TranscriptionJob awaitJob(PendingTranscription pending, TranscriptionJob job) {
+        if (!TranscribeJobServiceImpl.isRunning(job)) {
+            return job;
+        }
+        String jobName = pending.getJobName();
+        String docId = pending.getDocId();
+        long remaining = Math.max(0, TIMEOUT - (System.currentTimeMillis() - pending.getSubmitTime()));
+        CompletableFuture<TranscriptionJob> result = Framework.getService(TranscribeJobService.class).watch(pending);
+        try {
+            // the job service ends the wait at the timeout, the margin only covers a stopped poller
+            return result.get(remaining + TIMEOUT_MARGIN, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error(e);
+            throw new NuxeoException(
+                    "Transcribe was interrupted; could not get results for Job: " + jobName + " Document Id: "
+                            + docId, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof NuxeoException cause ? cause : new NuxeoException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new NuxeoException("Work reached timeout; Job name: " + jobName + " Document Id: " + docId);
+        } finally {
+            // an abandoned wait is dropped by the job service
+            result.cancel(false);
         }
-        return job;
     }
 }
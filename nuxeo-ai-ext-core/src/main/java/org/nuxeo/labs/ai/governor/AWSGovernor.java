@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.governor;
+
+/**
+ * Shares the AWS quotas between all the nodes of the cluster. Callers wait for their turn instead of being throttled
+ * by AWS, so that the throughput stays steady at the quota ceiling.
+ * <p>
+ * The limits of a resource are set with the {@code nuxeo.ai.ext.governor.<resource>.*} properties; a resource without
+ * limits is not governed.
+ */
+public interface AWSGovernor {
+
+    String TRANSCRIBE = "transcribe";
+
+    String TRANSLATE = "translate";
+
+    /**
+     * Waits until a call to the resource is allowed by its cluster-wide rate.
+     */
+    void acquire(String resource);
+
+    /**
+     * Waits until the number of running jobs of the resource is below its cluster-wide limit. Acquiring again for a
+     * job holding a slot returns right away.
+     * <p>
+     * A slot is held by a job of a document: two documents sharing a job name hold a slot each, so that the first one
+     * to complete does not free the slot of the other.
+     */
+    void acquireJob(String resource, String jobName, String docId);
+
+    /**
+     * Frees the slot held by a job, from any node.
+     */
+    void releaseJob(String resource, String jobName, String docId);
+
+}
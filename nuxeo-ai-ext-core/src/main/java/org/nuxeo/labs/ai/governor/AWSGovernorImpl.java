@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.governor;
+
+import io.dropwizard.metrics5.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class AWSGovernorImpl extends DefaultComponent implements AWSGovernor {
+
+    private static final Logger log = LogManager.getLogger(AWSGovernorImpl.class);
+
+    public static final String PROPERTY_PREFIX = "nuxeo.ai.ext.governor.";
+
+    /** Calls per second, cluster-wide; 0 for no limit. */
+    public static final String RATE_PROPERTY = ".rate";
+
+    /** Calls allowed at once after an idle period. */
+    public static final String BURST_PROPERTY = ".burst";
+
+    /** Running jobs, cluster-wide; 0 for no limit. */
+    public static final String JOBS_PROPERTY = ".jobs";
+
+    /** Lifetime of a job slot in seconds, after which the slot of a lost job is freed. */
+    public static final String JOBS_LEASE_PROPERTY = ".jobs.lease";
+
+    public static final String KV_STORE_NAME = "aiGovernor";
+
+    protected static final long MIN_JOB_WAIT = 100;
+
+    protected static final long MAX_JOB_WAIT = 5000;
+
+    protected final Map<String, Limits> limits = new ConcurrentHashMap<>();
+
+    @Override
+    public void stop(ComponentContext context) {
+        limits.clear();
+    }
+
+    @Override
+    public void acquire(String resource) {
+        Limits resourceLimits = getLimits(resource);
+        if (resourceLimits.rateLimiter == null) {
+            return;
+        }
+        long wait;
+        // the fair lock queues the local callers, the reservations queue the callers of the cluster
+        resourceLimits.rateLock.lock();
+        try {
+            wait = resourceLimits.rateLimiter.reserve();
+        } finally {
+            resourceLimits.rateLock.unlock();
+        }
+        if (wait > 0) {
+            try (Timer.Context ignored = AIExtMetrics.governorWait(resource).time()) {
+                TimeUnit.MICROSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException("Interrupted while waiting for a call to " + resource, e);
+            }
+        }
+    }
+
+    @Override
+    public void acquireJob(String resource, String jobName, String docId) {
+        Limits resourceLimits = getLimits(resource);
+        if (resourceLimits.semaphore == null) {
+            return;
+        }
+        try (Timer.Context ignored = AIExtMetrics.governorWait(resource).time()) {
+            long wait = MIN_JOB_WAIT;
+            while (!tryAcquireJob(resourceLimits, holder(jobName, docId))) {
+                log.debug("All the {} job slots are used; {} of document {} is waiting", resource, jobName, docId);
+                Thread.sleep(wait);
+                wait = Math.min(wait * 2, MAX_JOB_WAIT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while waiting for a " + resource + " job slot", e);
+        }
+    }
+
+    /**
+     * The lock is held for one attempt only: a caller sleeping between its attempts must not block the other callers,
+     * which would then all wait for the longest backoff, nor the calls of the rate limiter.
+     */
+    protected boolean tryAcquireJob(Limits resourceLimits, String holder) {
+        resourceLimits.jobLock.lock();
+        try {
+            return resourceLimits.semaphore.tryAcquire(holder);
+        } finally {
+            resourceLimits.jobLock.unlock();
+        }
+    }
+
+    @Override
+    public void releaseJob(String resource, String jobName, String docId) {
+        Limits resourceLimits = getLimits(resource);
+        if (resourceLimits.semaphore != null) {
+            resourceLimits.semaphore.release(holder(jobName, docId));
+        }
+    }
+
+    protected static String holder(String jobName, String docId) {
+        return docId + ":" + jobName;
+    }
+
+    protected Limits getLimits(String resource) {
+        return limits.computeIfAbsent(resource, this::loadLimits);
+    }
+
+    protected Limits loadLimits(String resource) {
+        String prefix = PROPERTY_PREFIX + resource;
+        double rate = Double.parseDouble(Framework.getProperty(prefix + RATE_PROPERTY, "0"));
+        int burst = Integer.parseInt(Framework.getProperty(prefix + BURST_PROPERTY, "1"));
+        int jobs = Integer.parseInt(Framework.getProperty(prefix + JOBS_PROPERTY, "0"));
+        long lease = Long.parseLong(Framework.getProperty(prefix + JOBS_LEASE_PROPERTY, "10800"));
+        KeyValueStore store = Framework.getService(KeyValueService.class).getKeyValueStore(KV_STORE_NAME);
+        DistributedRateLimiter rateLimiter = rate <= 0 ? null
+                : new DistributedRateLimiter(store, resource + ":rate", rate, burst,
+                        () -> TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+        DistributedSemaphore semaphore = jobs <= 0 ? null
+                : new DistributedSemaphore(store, resource + ":jobs", jobs, lease);
+        log.debug("Limits of {}: {} calls/s, burst {}, {} jobs", resource, rate, burst, jobs);
+        return new Limits(rateLimiter, semaphore);
+    }
+
+    protected static class Limits {
+
+        protected final ReentrantLock rateLock = new ReentrantLock(true);
+
+        protected final ReentrantLock jobLock = new ReentrantLock(true);
+
+        protected final DistributedRateLimiter rateLimiter;
+
+        protected final DistributedSemaphore semaphore;
+
+        protected Limits(DistributedRateLimiter rateLimiter, DistributedSemaphore semaphore) {
+            this.rateLimiter = rateLimiter;
+            this.semaphore = semaphore;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.governor;
+
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Cluster-wide rate limiter implementing the Generic Cell Rate Algorithm on a key/value store: the store holds the
+ * theoretical arrival time of the next call, which each caller pushes forward with a compare-and-set to reserve its
+ * own time slot. Callers are served in reservation order and never rejected.
+ */
+public class DistributedRateLimiter {
+
+    protected static final long KEY_TTL = 3600; // seconds
+
+    protected final KeyValueStore store;
+
+    protected final String key;
+
+    protected final long interval;
+
+    protected final long tolerance;
+
+    protected final LongSupplier clock;
+
+    /**
+     * @param permitsPerSecond the steady rate
+     * @param burst the number of calls allowed at once after an idle period
+     * @param clock the current time in microseconds
+     */
+    public DistributedRateLimiter(KeyValueStore store, String key, double permitsPerSecond, int burst,
+            LongSupplier clock) {
+        this.store = store;
+        this.key = key;
+        this.interval = Math.max(1, Math.round(1_000_000 / permitsPerSecond));
+        this.tolerance = Math.max(0, burst - 1) * interval;
+        this.clock = clock;
+    }
+
+    /**
+     * Reserves the next time slot.
+     *
+     * @return the time to wait for the slot, in microseconds
+     */
+    public long reserve() {
+        for (;;) {
+            String current = store.getString(key);
+            long now = clock.getAsLong();
+            long tat = current == null ? now : Long.parseLong(current);
+            long start = Math.max(now, tat - tolerance);
+            long next = Math.max(tat, now) + interval;
+            if (store.compareAndSet(key, current, String.valueOf(next), KEY_TTL)) {
+                return start - now;
+            }
+        }
+    }
+
+}
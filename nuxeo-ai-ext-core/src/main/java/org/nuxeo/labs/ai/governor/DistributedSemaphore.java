@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.governor;
+
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cluster-wide semaphore made of a fixed number of slots in a key/value store. A slot is leased to a holder, so the
+ * slots of a crashed node are freed once their lease expires.
+ */
+public class DistributedSemaphore {
+
+    protected final KeyValueStore store;
+
+    protected final String prefix;
+
+    protected final int permits;
+
+    protected final long lease;
+
+    /**
+     * @param lease the lifetime of a slot in seconds, longer than the longest job
+     */
+    public DistributedSemaphore(KeyValueStore store, String prefix, int permits, long lease) {
+        this.store = store;
+        this.prefix = prefix;
+        this.permits = permits;
+        this.lease = lease;
+    }
+
+    /**
+     * @return {@code true} if the holder got a slot or already had one
+     */
+    public boolean tryAcquire(String holder) {
+        if (store.getString(holderKey(holder)) != null) {
+            return true;
+        }
+        // starting from a random slot limits the contention between nodes
+        int first = ThreadLocalRandom.current().nextInt(permits);
+        for (int i = 0; i < permits; i++) {
+            int slot = (first + i) % permits;
+            if (store.compareAndSet(slotKey(slot), null, holder, lease)) {
+                store.put(holderKey(holder), String.valueOf(slot), lease);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void release(String holder) {
+        String slot = store.getString(holderKey(holder));
+        if (slot == null) {
+            return;
+        }
+        store.compareAndSet(slotKey(Integer.parseInt(slot)), holder, null);
+        store.put(holderKey(holder), (String) null);
+    }
+
+    /**
+     * @return the number of slots currently leased
+     */
+    public int getUsed() {
+        int used = 0;
+        for (int i = 0; i < permits; i++) {
+            if (store.getString(slotKey(i)) != null) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    protected String slotKey(int slot) {
+        return prefix + ":slot:" + slot;
+    }
+
+    protected String holderKey(String holder) {
+        return prefix + ":holder:" + holder;
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.metrics;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.Histogram;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics of the pipeline stages, registered in the Nuxeo registry so that they are sent by the configured metrics
+ * reporters. All the names start with {@code nuxeo.ai.ext}.
+ */
+public final class AIExtMetrics {
+
+    private static final MetricRegistry registry = SharedMetricRegistries.getOrCreate(
+            MetricsService.class.getName());
+
+    /** Time spent serializing a document into pipeline items. */
+    public static final Timer SERIALIZE = registry.timer(name("pipes", "serialize"));
+
+    /** Records emitted per document event. */
+    public static final Histogram RECORDS_PER_EVENT = registry.histogram(name("pipes", "records"));
+
+    /** Time spent computing the perceptual hash of a picture. */
+    public static final Timer DEDUP_HASH = registry.timer(name("pipes", "dedup", "hash"));
+
+    /** Pictures whose enrichment was reused from a near duplicate instead of being sent to the stream. */
+    public static final Counter DEDUP_DUPLICATES = registry.counter(name("pipes", "dedup", "duplicates"));
+
+    /** Pictures without near duplicate already enriched, sent to the stream. */
+    public static final Counter DEDUP_UNIQUE = registry.counter(name("pipes", "dedup", "unique"));
+
+    /** Latency of the {@code StartTranscriptionJob} calls. */
+    public static final Timer JOB_SUBMIT = registry.timer(name("transcribe", "job", "submit"));
+
+    /** Wall time from the submission of a Transcribe job to the detection of its termination. */
+    public static final Timer JOB_DURATION = registry.timer(name("transcribe", "job", "duration"));
+
+    /** Status checks per Transcribe job. */
+    public static final Histogram JOB_POLLS = registry.histogram(name("transcribe", "job", "polls"));
+
+    /** Transcribe jobs adopted from a previous run or from a node that stopped. */
+    public static final Counter ADOPTED_JOBS = registry.counter(name("transcribe", "job", "adopted"));
+
+    /** Transcribe jobs collected from the registry after reaching the timeout without being completed. */
+    public static final Counter ORPHANED_JOBS = registry.counter(name("transcribe", "job", "orphaned"));
+
+    /** Transcript downloads, retries included. */
+    public static final Timer DOWNLOAD = registry.timer(name("transcribe", "download"));
+
+    /** Size of the downloaded transcripts in bytes. */
+    public static final Histogram DOWNLOAD_BYTES = registry.histogram(name("transcribe", "download", "bytes"));
+
+    /** Audio extractions from videos. */
+    public static final Timer AUDIO_EXTRACT = registry.timer(name("audio", "extract"));
+
+    /** Splits of long media into segments transcribed concurrently. */
+    public static final Timer AUDIO_SPLIT = registry.timer(name("audio", "split"));
+
+    /** Time spent building the source captions from a transcript. */
+    public static final Timer CAPTIONS_BUILD = registry.timer(name("captions", "build"));
+
+    /** Time spent writing a caption file. */
+    public static final Timer CAPTIONS_WRITE = registry.timer(name("captions", "write"));
+
+    /** Time spent saving the document holding the captions. */
+    public static final Timer CAPTIONS_SAVE = registry.timer(name("captions", "save"));
+
+    protected static final AtomicInteger IN_FLIGHT_JOBS = new AtomicInteger();
+
+    static {
+        registry.gauge(name("transcribe", "jobs", "inflight"), () -> (Gauge<Integer>) IN_FLIGHT_JOBS::get);
+    }
+
+    private AIExtMetrics() {
+        // utility class
+    }
+
+    /**
+     * @return the latency of the translation service calls to the given language
+     */
+    public static Timer translateLatency(String destLang) {
+        return registry.timer(name("translation", "latency").tagged("language", destLang));
+    }
+
+    /**
+     * @return the number of characters sent to the translation service for the given language
+     */
+    public static Counter translatedCharacters(String destLang) {
+        return registry.counter(name("translation", "characters").tagged("language", destLang));
+    }
+
+    /**
+     * @return the number of records routed to the given lane stream
+     */
+    public static Counter laneRecords(String lane) {
+        return registry.counter(name("pipes", "lane", "records").tagged("lane", lane));
+    }
+
+    /**
+     * @return the time spent waiting for the cluster-wide limits of an AWS resource
+     */
+    public static Timer governorWait(String resource) {
+        return registry.timer(name("governor", "wait").tagged("resource", resource));
+    }
+
+    /**
+     * Counts a Transcribe job submitted and not terminated yet.
+     */
+    public static void jobStarted() {
+        IN_FLIGHT_JOBS.incrementAndGet();
+    }
+
+    public static void jobEnded() {
+        IN_FLIGHT_JOBS.decrementAndGet();
+    }
+
+    public static int getInFlightJobs() {
+        return IN_FLIGHT_JOBS.get();
+    }
+
+    private static MetricName name(String... names) {
+        return MetricName.build("nuxeo", "ai", "ext").append(MetricName.build(names));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.pipes;
+
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.labs.ai.audio.AudioExtractor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Like {@link MediaConversion2Stream}, but the selected videos are replaced by their mono audio track, which is all
+ * a transcription needs. A video whose audio cannot be extracted is sent as is.
+ */
+public class AudioExtraction2Stream extends MediaConversion2Stream {
+
+    public static final String AUDIO_TYPE = "audio";
+
+    protected AudioExtractor audioExtractor;
+
+    @Override
+    public void init(Map<String, String> options) {
+        audioExtractor = AudioExtractor.fromOptions(options);
+        super.init(options);
+    }
+
+    @Override
+    protected BlobTextFromDocument prepare(BlobTextFromDocument item) {
+        Map<String, ManagedBlob> audios = new HashMap<>();
+        item.getBlobs().forEach((name, blob) -> {
+            String mimeType = blob.getMimeType();
+            if (mimeType == null || mimeType.startsWith("video/")) {
+                ManagedBlob audio = audioExtractor.extract(blob);
+                if (audio != null) {
+                    audios.put(name, audio);
+                }
+            }
+        });
+        audios.forEach((name, audio) -> item.addBlob(name, AUDIO_TYPE, audio));
+        return item;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.pipes;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CloseableFile;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.platform.commandline.executor.api.CmdParameters;
+import org.nuxeo.ecm.platform.commandline.executor.api.CommandLineExecutorService;
+import org.nuxeo.ecm.platform.commandline.executor.api.ExecResult;
+import org.nuxeo.ecm.platform.video.TranscodedVideo;
+import org.nuxeo.ecm.platform.video.VideoDocument;
+import org.nuxeo.ecm.platform.video.VideoInfo;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.labs.ai.transcribe.PollingPolicy;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Routes the records of long media to their own streams, so that a batch of long recordings does not delay the short
+ * clips: each lane stream is consumed by its own enrichment processor, with its own concurrency and retry policy.
+ * <p>
+ * The records of the media shorter than the first lane threshold stay in the stream of the pipe. The duration comes
+ * from the video info of the rendition, or from ffprobe for an audio file, and otherwise is estimated from the size of
+ * the blob with the bitrate of its media type.
+ */
+public class DurationLanes {
+
+    /** Comma-separated {@code threshold:stream} entries, the threshold being a duration in seconds. */
+    public static final String LANES_OPTION = "lanes";
+
+    /** Bitrate in bytes per second used to estimate the duration of a video without video info. */
+    public static final String BYTES_PER_SECOND_OPTION = "laneBytesPerSecond";
+
+    /** Bitrate in bytes per second used to estimate the duration of an audio file that cannot be probed. */
+    public static final String AUDIO_BYTES_PER_SECOND_OPTION = "laneAudioBytesPerSecond";
+
+    public static final long DEFAULT_BYTES_PER_SECOND = 250000;
+
+    public static final String DEFAULT_LANE = "default";
+
+    protected static final String PROBE_COMMAND = "ai-ext-media-duration";
+
+    private static final Logger log = LogManager.getLogger(DurationLanes.class);
+
+    protected final NavigableMap<Double, String> lanes;
+
+    protected final long bytesPerSecond;
+
+    protected final long audioBytesPerSecond;
+
+    /**
+     * @param lanes the lane streams by minimum duration in seconds
+     */
+    public DurationLanes(Map<Double, String> lanes, long bytesPerSecond, long audioBytesPerSecond) {
+        this.lanes = new TreeMap<>(lanes);
+        this.bytesPerSecond = Math.max(1, bytesPerSecond);
+        this.audioBytesPerSecond = Math.max(1, audioBytesPerSecond);
+    }
+
+    /**
+     * @return the lanes configured by the pipe options, or {@code null} if all the records go to the pipe stream
+     */
+    public static DurationLanes fromOptions(Map<String, String> options) {
+        String value = options.getOrDefault(LANES_OPTION, "");
+        if (value.isBlank()) {
+            return null;
+        }
+        Map<Double, String> lanes = new TreeMap<>();
+        for (String lane : value.split(",")) {
+            String[] parts = lane.trim().split(":", 2);
+            if (parts.length != 2 || parts[1].isBlank()) {
+                throw new IllegalArgumentException("Invalid lane: " + lane + ", expected threshold:stream");
+            }
+            lanes.put(Double.parseDouble(parts[0].trim()), parts[1].trim());
+        }
+        return new DurationLanes(lanes,
+                Long.parseLong(options.getOrDefault(BYTES_PER_SECOND_OPTION, String.valueOf(DEFAULT_BYTES_PER_SECOND))),
+                Long.parseLong(options.getOrDefault(AUDIO_BYTES_PER_SECOND_OPTION,
+                        String.valueOf(PollingPolicy.DEFAULT_BYTES_PER_SECOND))));
+    }
+
+    /**
+     * @return the lane stream of a media of the given duration in seconds, or {@code null} for the pipe stream
+     */
+    public String route(double duration) {
+        Map.Entry<Double, String> lane = lanes.floorEntry(duration);
+        return lane == null ? null : lane.getValue();
+    }
+
+    /**
+     * @return the duration in seconds of the longest media of the item
+     */
+    public double getDuration(DocumentModel doc, BlobTextFromDocument item) {
+        VideoDocument video = doc != null && doc.hasFacet("Video") ? doc.getAdapter(VideoDocument.class, true) : null;
+        double duration = 0;
+        for (Map.Entry<String, ManagedBlob> entry : item.getBlobs().entrySet()) {
+            duration = Math.max(duration, getDuration(video, entry.getKey(), entry.getValue()));
+        }
+        return duration;
+    }
+
+    protected double getDuration(VideoDocument video, String name, Blob blob) {
+        if (video != null) {
+            TranscodedVideo transcodedVideo = video.getTranscodedVideo(name);
+            VideoInfo info = transcodedVideo != null ? transcodedVideo.getVideoInfo() : video.getVideoInfo();
+            if (info != null && info.getDuration() > 0) {
+                return info.getDuration();
+            }
+        }
+        boolean audio = blob.getMimeType() != null && blob.getMimeType().startsWith("audio/");
+        if (audio) {
+            double duration = probe(blob);
+            if (duration > 0) {
+                return duration;
+            }
+        }
+        long length = blob.getLength();
+        return length <= 0 ? 0 : (double) length / (audio ? audioBytesPerSecond : bytesPerSecond);
+    }
+
+    /**
+     * @return the duration in seconds read by ffprobe from the header of the media, 0 if unknown
+     */
+    protected double probe(Blob blob) {
+        CommandLineExecutorService cles = Framework.getService(CommandLineExecutorService.class);
+        if (!cles.getCommandAvailability(PROBE_COMMAND).isAvailable()) {
+            return 0;
+        }
+        try (CloseableFile file = blob.getCloseableFile()) {
+            CmdParameters params = cles.getDefaultCmdParameters();
+            params.addNamedParameter("inFilePath", file.getFile().getAbsolutePath());
+            ExecResult result = cles.execCommand(PROBE_COMMAND, params);
+            return result.isSuccessful() ? parseDuration(result.getOutput()) : 0;
+        } catch (IOException e) {
+            log.debug("Could not probe the duration of {}", blob.getFilename(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * @return the duration in seconds printed by ffprobe, 0 if there is none
+     */
+    public static double parseDuration(List<String> output) {
+        for (String line : output) {
+            try {
+                return Math.max(0, Double.parseDouble(line.trim()));
+            } catch (NumberFormatException e) {
+                // "N/A" or a warning
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sends the record of the item to its lane.
+     *
+     * @return {@code true} if the record was sent to a lane stream, {@code false} if it belongs to the pipe stream
+     */
+    public boolean dispatch(DocumentModel doc, BlobTextFromDocument item, Record record) {
+        String stream = route(getDuration(doc, item));
+        AIExtMetrics.laneRecords(stream == null ? DEFAULT_LANE : stream).inc();
+        if (stream == null) {
+            return false;
+        }
+        Framework.getService(StreamService.class).getStreamManager().append(stream, record);
+        return true;
+    }
+}
@@ -21,22 +21,72 @@ package org.nuxeo.labs.ai.pipes;
 
 import org.nuxeo.ai.pipes.functions.PropertiesToStream;
 import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.labs.ai.dedup.PictureDeduplication;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
 import org.nuxeo.lib.stream.computation.Record;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
-import static java.util.stream.Collectors.toList;
 import static org.nuxeo.ai.pipes.services.JacksonUtil.toRecord;
 
 public class MediaConversion2Stream extends PropertiesToStream {
 
+    public static final String SINGLE_RECORD_OPTION = "singleRecord";
+
+    protected boolean singleRecord;
+
+    protected RenditionSelectionPolicy selectionPolicy;
+
+    protected DurationLanes lanes;
+
+    protected PictureDeduplication deduplication;
+
     @Override
-    protected Function<Event, Collection<Record>> setupTransformation() {
-        Function<Event, Collection<BlobTextFromDocument>> func = new MediaDocEvent2Stream(blobProperties, textProperties, customProperties);
-        return func.andThen(items -> items.stream().map(i -> toRecord(i.getKey(), i)).collect(toList()));
+    public void init(Map<String, String> options) {
+        // read before the transformation is set up by the parent
+        singleRecord = Boolean.parseBoolean(options.getOrDefault(SINGLE_RECORD_OPTION, "false"));
+        selectionPolicy = RenditionSelectionPolicy.fromOptions(options);
+        lanes = DurationLanes.fromOptions(options);
+        deduplication = PictureDeduplication.fromOptions(options);
+        super.init(options);
     }
 
+    @Override
+    protected Function<Event, Collection<Record>> setupTransformation() {
+        Function<Event, Collection<BlobTextFromDocument>> func = new MediaDocEvent2Stream(blobProperties,
+                textProperties, customProperties, singleRecord, selectionPolicy);
+        return event -> {
+            Collection<BlobTextFromDocument> items = func.apply(event);
+            AIExtMetrics.RECORDS_PER_EVENT.update(items.size());
+            DocumentModel doc = event.getContext() instanceof DocumentEventContext docCtx
+                    ? docCtx.getSourceDocument() : null;
+            List<Record> records = new ArrayList<>();
+            for (BlobTextFromDocument item : items) {
+                if (deduplication != null && doc != null && deduplication.reuse(doc, item)) {
+                    continue;
+                }
+                BlobTextFromDocument prepared = prepare(item);
+                Record record = toRecord(prepared.getKey(), prepared);
+                // the records of long media are sent to their lane, the others to the pipe stream
+                if (lanes == null || !lanes.dispatch(doc, prepared, record)) {
+                    records.add(record);
+                }
+            }
+            return records;
+        };
+    }
 
+    /**
+     * Last change to an item before it is sent to the stream.
+     */
+    protected BlobTextFromDocument prepare(BlobTextFromDocument item) {
+        return item;
+    }
 }
@@ -19,59 +19,180 @@
 
 package org.nuxeo.labs.ai.pipes;
 
+import io.dropwizard.metrics5.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.nuxeo.ai.pipes.events.DocEventToStream;
 import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
 import org.nuxeo.ai.sdk.objects.PropertyType;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.platform.picture.api.PictureView;
 import org.nuxeo.ecm.platform.picture.api.adapters.MultiviewPicture;
+import org.nuxeo.ecm.platform.video.TranscodedVideo;
 import org.nuxeo.ecm.platform.video.VideoDocument;
+import org.nuxeo.ecm.platform.video.VideoInfo;
+import org.nuxeo.labs.ai.pipes.RenditionSelectionPolicy.Rendition;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.nuxeo.ai.pipes.functions.PropertyUtils.getPropertyValue;
 
+/**
+ * Serializes the selected picture views, transcoded videos and text properties of a document.
+ * <p>
+ * By default each of them gives its own item. In single record mode, all of them are carried by a single item so that
+ * the document is processed in one pass by the providers accepting several blobs.
+ */
 public class MediaDocEvent2Stream extends DocEventToStream {
 
+    private static final Logger log = LogManager.getLogger(MediaDocEvent2Stream.class);
+
+    protected final boolean singleRecord;
+
+    protected final RenditionSelectionPolicy selectionPolicy;
+
     public MediaDocEvent2Stream(List<PropertyType> blobProperties, List<String> textProperties, List<String> customProperties) {
+        this(blobProperties, textProperties, customProperties, false, null);
+    }
+
+    /**
+     * @param selectionPolicy the policy picking the rendition of each type, or {@code null} to take the renditions
+     *            named by the blob properties
+     */
+    public MediaDocEvent2Stream(List<PropertyType> blobProperties, List<String> textProperties,
+            List<String> customProperties, boolean singleRecord, RenditionSelectionPolicy selectionPolicy) {
         super(blobProperties, textProperties, customProperties);
+        this.singleRecord = singleRecord;
+        this.selectionPolicy = selectionPolicy;
     }
 
     @Override
     public Collection<BlobTextFromDocument> docSerialize(DocumentModel doc) {
+        try (Timer.Context ignored = AIExtMetrics.SERIALIZE.time()) {
+            return serialize(doc);
+        }
+    }
+
+    protected Collection<BlobTextFromDocument> serialize(DocumentModel doc) {
         List<BlobTextFromDocument> items = new ArrayList<>();
-        blobProperties.forEach(property -> {
-            Blob blob = null;
-            if ("video".equals(property.getType())) {
-                VideoDocument videoDocument = doc.getAdapter(VideoDocument.class,true);
-                blob = videoDocument.getTranscodedVideo(property.getName()).getBlob();
-            } else if ("img".equals(property.getType())) {
-                MultiviewPicture multiviewPicture = doc.getAdapter(MultiviewPicture.class, true);
-                blob = multiviewPicture.getView(property.getName()).getBlob();
-            }
-            if (blob instanceof ManagedBlob) {
-                BlobTextFromDocument blobTextFromDoc = getBlobText(doc);
-                blobTextFromDoc.addBlob(property.getName(), property.getType(), (ManagedBlob) blob);
-                items.add(blobTextFromDoc);
+        BlobTextFromDocument single = singleRecord ? getBlobText(doc) : null;
+        MediaAdapters adapters = new MediaAdapters(doc);
+        for (PropertyType property : getSelectedProperties(adapters)) {
+            Blob blob = adapters.getBlob(property);
+            if (blob instanceof ManagedBlob managedBlob) {
+                BlobTextFromDocument blobTextFromDoc = single != null ? single : getBlobText(doc);
+                blobTextFromDoc.addBlob(property.getName(), property.getType(), managedBlob);
+                if (single == null || items.isEmpty()) {
+                    items.add(blobTextFromDoc);
+                }
+            } else {
+                log.debug("No {} rendition {} for document id = {}", property.getType(), property.getName(),
+                        doc.getId());
             }
-        });
+        }
 
-        textProperties.forEach(propName -> {
+        for (String propName : textProperties) {
             String text = getPropertyValue(doc, propName, String.class);
             if (text != null) {
-                BlobTextFromDocument blobTextFromDoc = getBlobText(doc);
+                BlobTextFromDocument blobTextFromDoc = single != null ? single : getBlobText(doc);
                 blobTextFromDoc.addProperty(propName, text);
-                items.add(blobTextFromDoc);
+                if (single == null || items.isEmpty()) {
+                    items.add(blobTextFromDoc);
+                }
             }
-        });
+        }
 
         if (items.isEmpty() && !customProperties.isEmpty()) {
-            items.add(getBlobText(doc));
+            items.add(single != null ? single : getBlobText(doc));
         }
 
         return items;
     }
+
+    /**
+     * @return the blob properties, or with a selection policy, the rendition selected for each type of the blob
+     *         properties, the renditions they name being the fallback in that order
+     */
+    protected List<PropertyType> getSelectedProperties(MediaAdapters adapters) {
+        if (selectionPolicy == null) {
+            return blobProperties;
+        }
+        Map<String, List<String>> fallbacks = new LinkedHashMap<>();
+        blobProperties.forEach(property -> fallbacks.computeIfAbsent(property.getType(), k -> new ArrayList<>())
+                                                    .add(property.getName()));
+        List<PropertyType> selected = new ArrayList<>();
+        fallbacks.forEach((type, names) -> selectionPolicy.select(adapters.getRenditions(type), names)
+                                                          .ifPresent(rendition -> selected.add(
+                                                                  new PropertyType(rendition.getName(), type))));
+        return selected;
+    }
+
+    /**
+     * Resolves the picture and video adapters of a document once, on first use.
+     */
+    protected static class MediaAdapters {
+
+        protected final DocumentModel doc;
+
+        protected VideoDocument videoDocument;
+
+        protected MultiviewPicture multiviewPicture;
+
+        protected MediaAdapters(DocumentModel doc) {
+            this.doc = doc;
+        }
+
+        protected Blob getBlob(PropertyType property) {
+            if ("video".equals(property.getType())) {
+                TranscodedVideo transcodedVideo = getVideoDocument().getTranscodedVideo(property.getName());
+                return transcodedVideo == null ? null : transcodedVideo.getBlob();
+            } else if ("img".equals(property.getType())) {
+                PictureView view = getMultiviewPicture().getView(property.getName());
+                return view == null ? null : view.getBlob();
+            }
+            return null;
+        }
+
+        protected List<Rendition> getRenditions(String type) {
+            List<Rendition> renditions = new ArrayList<>();
+            if ("video".equals(type)) {
+                for (TranscodedVideo video : getVideoDocument().getTranscodedVideos()) {
+                    VideoInfo info = video.getVideoInfo() == null ? VideoInfo.EMPTY_INFO : video.getVideoInfo();
+                    if (video.getBlob() != null) {
+                        renditions.add(new Rendition(video.getName(), video.getBlob(), info.getWidth(),
+                                info.getHeight(), info.getDuration()));
+                    }
+                }
+            } else if ("img".equals(type)) {
+                for (PictureView view : getMultiviewPicture().getViews()) {
+                    if (view.getBlob() != null) {
+                        renditions.add(new Rendition(view.getTitle(), view.getBlob(), view.getWidth(),
+                                view.getHeight(), 0));
+                    }
+                }
+            }
+            return renditions;
+        }
+
+        protected VideoDocument getVideoDocument() {
+            if (videoDocument == null) {
+                videoDocument = doc.getAdapter(VideoDocument.class, true);
+            }
+            return videoDocument;
+        }
+
+        protected MultiviewPicture getMultiviewPicture() {
+            if (multiviewPicture == null) {
+                multiviewPicture = doc.getAdapter(MultiviewPicture.class, true);
+            }
+            return multiviewPicture;
+        }
+    }
 }
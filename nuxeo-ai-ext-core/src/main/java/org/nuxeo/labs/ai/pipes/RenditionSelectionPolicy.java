@@ -0,0 +1,176 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.pipes;
+
+import org.nuxeo.ecm.core.api.Blob;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Picks the smallest rendition of a document that is good enough for the provider: at least the minimum resolution
+ * and bitrate, and at most the maximum size. If none qualifies, the renditions listed in the pipe are tried in order,
+ * keeping only the size limit.
+ */
+public class RenditionSelectionPolicy {
+
+    public static final String SELECTION_OPTION = "renditionSelection";
+
+    public static final String SMALLEST_SELECTION = "smallest";
+
+    public static final String MIN_WIDTH_OPTION = "minWidth";
+
+    public static final String MIN_HEIGHT_OPTION = "minHeight";
+
+    public static final String MIN_BITRATE_OPTION = "minBitrate";
+
+    public static final String MAX_SIZE_OPTION = "maxSize";
+
+    protected final long minWidth;
+
+    protected final long minHeight;
+
+    protected final long minBitrate;
+
+    protected final long maxSize;
+
+    /**
+     * @param minBitrate in kbit/s, only checked for renditions having a duration
+     * @param maxSize in bytes, {@code 0} for no limit
+     */
+    public RenditionSelectionPolicy(long minWidth, long minHeight, long minBitrate, long maxSize) {
+        this.minWidth = minWidth;
+        this.minHeight = minHeight;
+        this.minBitrate = minBitrate;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the policy configured by the pipe options, or {@code null} for the fixed renditions of the pipe
+     */
+    public static RenditionSelectionPolicy fromOptions(Map<String, String> options) {
+        if (!SMALLEST_SELECTION.equals(options.get(SELECTION_OPTION))) {
+            return null;
+        }
+        return new RenditionSelectionPolicy(Long.parseLong(options.getOrDefault(MIN_WIDTH_OPTION, "0")),
+                Long.parseLong(options.getOrDefault(MIN_HEIGHT_OPTION, "0")),
+                Long.parseLong(options.getOrDefault(MIN_BITRATE_OPTION, "0")),
+                Long.parseLong(options.getOrDefault(MAX_SIZE_OPTION, "0")));
+    }
+
+    /**
+     * @param candidates the renditions of the document
+     * @param fallback the rendition names to try in order when no candidate qualifies
+     */
+    public Optional<Rendition> select(List<Rendition> candidates, List<String> fallback) {
+        Optional<Rendition> selected = candidates.stream()
+                                                 .filter(this::fitsSize)
+                                                 .filter(this::meetsQuality)
+                                                 .min(Comparator.comparingLong(Rendition::getLength)
+                                                                .thenComparing(Rendition::getName));
+        if (selected.isPresent()) {
+            return selected;
+        }
+        for (String name : fallback) {
+            Optional<Rendition> rendition = candidates.stream()
+                                                      .filter(candidate -> name.equals(candidate.getName()))
+                                                      .filter(this::fitsSize)
+                                                      .findFirst();
+            if (rendition.isPresent()) {
+                return rendition;
+            }
+        }
+        return Optional.empty();
+    }
+
+    protected boolean fitsSize(Rendition rendition) {
+        return maxSize <= 0 || rendition.getLength() <= maxSize;
+    }
+
+    protected boolean meetsQuality(Rendition rendition) {
+        if (rendition.getWidth() < minWidth || rendition.getHeight() < minHeight) {
+            return false;
+        }
+        return minBitrate <= 0 || rendition.getDuration() <= 0 || rendition.getBitrate() >= minBitrate;
+    }
+
+    /**
+     * A picture view or a transcoded video with its dimensions.
+     */
+    public static class Rendition {
+
+        protected final String name;
+
+        protected final Blob blob;
+
+        protected final long width;
+
+        protected final long height;
+
+        protected final double duration;
+
+        /**
+         * @param duration in seconds, {@code 0} for pictures
+         */
+        public Rendition(String name, Blob blob, long width, long height, double duration) {
+            this.name = name;
+            this.blob = blob;
+            this.width = width;
+            this.height = height;
+            this.duration = duration;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Blob getBlob() {
+            return blob;
+        }
+
+        public long getWidth() {
+            return width;
+        }
+
+        public long getHeight() {
+            return height;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return the length of the blob, {@link Long#MAX_VALUE} if unknown so that it comes last
+         */
+        public long getLength() {
+            long length = blob.getLength();
+            return length < 0 ? Long.MAX_VALUE : length;
+        }
+
+        /**
+         * @return the average bitrate in kbit/s
+         */
+        public double getBitrate() {
+            return duration <= 0 ? 0 : getLength() * 8 / duration / 1000;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import com.amazonaws.services.transcribe.model.TranscriptionJob;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A Transcribe job submitted by an enrichment provider and not completed yet.
+ */
+public class PendingTranscription {
+
+    protected final String providerName;
+
+    protected final String jobName;
+
+    protected final BlobTextFromDocument blobTextFromDocument;
+
+    protected final long submitTime;
+
+    protected final long mediaDuration;
+
+    protected final PollingPolicy policy;
+
+    protected volatile long nextCheck;
+
+    protected volatile int polls;
+
+    protected volatile int overduePolls;
+
+    protected volatile boolean completing;
+
+    protected volatile int completionAttempts;
+
+    // set when a caller waits for the job instead of letting the job service complete the enrichment
+    protected volatile CompletableFuture<TranscriptionJob> result;
+
+    public PendingTranscription(String providerName, String jobName, BlobTextFromDocument blobTextFromDocument,
+            long mediaDuration, PollingPolicy policy) {
+        this(providerName, jobName, blobTextFromDocument, mediaDuration, policy, System.currentTimeMillis());
+    }
+
+    public PendingTranscription(String providerName, String jobName, BlobTextFromDocument blobTextFromDocument,
+            long mediaDuration, PollingPolicy policy, long submitTime) {
+        this.providerName = providerName;
+        this.jobName = jobName;
+        this.blobTextFromDocument = blobTextFromDocument;
+        this.mediaDuration = mediaDuration;
+        this.policy = policy;
+        this.submitTime = submitTime;
+        this.nextCheck = submitTime + policy.nextDelay(mediaDuration, 0, 0);
+    }
+
+    /**
+     * Records a status check that found the job still running and schedules the next one.
+     */
+    public void polled(long now) {
+        long timeSpent = now - submitTime;
+        polls++;
+        if (timeSpent >= policy.expectedProcessingTime(mediaDuration)) {
+            overduePolls++;
+        }
+        nextCheck = now + policy.nextDelay(mediaDuration, timeSpent, overduePolls);
+    }
+
+    /**
+     * Records that the job terminated and that its enrichment is being completed, so that it is not checked meanwhile.
+     */
+    public void completing() {
+        completing = true;
+    }
+
+    /**
+     * Records a failed completion and schedules the next attempt.
+     *
+     * @return the number of failed completions
+     */
+    public int completionFailed(long now, long delay) {
+        nextCheck = now + delay;
+        completing = false;
+        return ++completionAttempts;
+    }
+
+    public boolean isDue(long now) {
+        return !completing && now >= nextCheck;
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public BlobTextFromDocument getBlobTextFromDocument() {
+        return blobTextFromDocument;
+    }
+
+    public String getDocId() {
+        return blobTextFromDocument.getId();
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public long getMediaDuration() {
+        return mediaDuration;
+    }
+
+    public long getNextCheck() {
+        return nextCheck;
+    }
+
+    public int getPolls() {
+        return polls;
+    }
+
+    public int getCompletionAttempts() {
+        return completionAttempts;
+    }
+
+    public CompletableFuture<TranscriptionJob> getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PendingTranscription{" + "jobName='" + jobName + '\'' + ", docId='" + getDocId() + '\''
+                + ", providerName='" + providerName + '\'' + '}';
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Computes when the status of a pending Transcribe job should be checked next.
+ * <p>
+ * The first check is scheduled around the expected completion time, derived from the media duration. Once that time
+ * has passed, checks back off exponentially from the minimum interval up to the maximum one. A random jitter is
+ * applied so that jobs submitted together are not checked together.
+ */
+public class PollingPolicy {
+
+    public static final String POLL_MIN_INTERVAL_OPTION = "pollMinInterval";
+
+    public static final String POLL_MAX_INTERVAL_OPTION = "pollMaxInterval";
+
+    public static final String POLL_BACKOFF_FACTOR_OPTION = "pollBackoffFactor";
+
+    public static final String POLL_JITTER_OPTION = "pollJitter";
+
+    public static final String POLL_REALTIME_FACTOR_OPTION = "pollRealtimeFactor";
+
+    public static final String POLL_BYTES_PER_SECOND_OPTION = "pollBytesPerSecond";
+
+    public static final long DEFAULT_MIN_INTERVAL = 1000 * 5; // 5s
+
+    public static final long DEFAULT_MAX_INTERVAL = 1000 * 60 * 5; // 5min
+
+    public static final double DEFAULT_BACKOFF_FACTOR = 1.5;
+
+    public static final double DEFAULT_JITTER = 0.2;
+
+    // Transcribe usually processes media in a fraction of its duration
+    public static final double DEFAULT_REALTIME_FACTOR = 0.3;
+
+    // ~256 kbit/s, used to estimate the duration of media when it is not known
+    public static final long DEFAULT_BYTES_PER_SECOND = 32000;
+
+    protected final long minInterval;
+
+    protected final long maxInterval;
+
+    protected final double backoffFactor;
+
+    protected final double jitter;
+
+    protected final double realtimeFactor;
+
+    protected final long bytesPerSecond;
+
+    public PollingPolicy(long minInterval, long maxInterval, double backoffFactor, double jitter,
+            double realtimeFactor, long bytesPerSecond) {
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+        this.backoffFactor = Math.max(1.0, backoffFactor);
+        this.jitter = Math.min(1.0, Math.max(0.0, jitter));
+        this.realtimeFactor = realtimeFactor;
+        this.bytesPerSecond = Math.max(1, bytesPerSecond);
+    }
+
+    public static PollingPolicy defaults() {
+        return fromOptions(Map.of());
+    }
+
+    public static PollingPolicy fromOptions(Map<String, String> options) {
+        return new PollingPolicy(
+                Long.parseLong(options.getOrDefault(POLL_MIN_INTERVAL_OPTION, String.valueOf(DEFAULT_MIN_INTERVAL))),
+                Long.parseLong(options.getOrDefault(POLL_MAX_INTERVAL_OPTION, String.valueOf(DEFAULT_MAX_INTERVAL))),
+                Double.parseDouble(
+                        options.getOrDefault(POLL_BACKOFF_FACTOR_OPTION, String.valueOf(DEFAULT_BACKOFF_FACTOR))),
+                Double.parseDouble(options.getOrDefault(POLL_JITTER_OPTION, String.valueOf(DEFAULT_JITTER))),
+                Double.parseDouble(
+                        options.getOrDefault(POLL_REALTIME_FACTOR_OPTION, String.valueOf(DEFAULT_REALTIME_FACTOR))),
+                Long.parseLong(
+                        options.getOrDefault(POLL_BYTES_PER_SECOND_OPTION, String.valueOf(DEFAULT_BYTES_PER_SECOND))));
+    }
+
+    /**
+     * @return the estimated duration in milliseconds of a media of the given size
+     */
+    public long estimateDuration(long length) {
+        return length <= 0 ? 0 : length * 1000 / bytesPerSecond;
+    }
+
+    /**
+     * @return the expected processing time in milliseconds of a media of the given duration
+     */
+    public long expectedProcessingTime(long mediaDuration) {
+        return (long) (mediaDuration * realtimeFactor);
+    }
+
+    /**
+     * @param mediaDuration the media duration in milliseconds
+     * @param timeSpent the time already spent since the job was submitted in milliseconds
+     * @param polls the number of checks already done after the expected completion time
+     * @return the delay in milliseconds before the next check
+     */
+    public long nextDelay(long mediaDuration, long timeSpent, int polls) {
+        long expected = expectedProcessingTime(mediaDuration);
+        long delay;
+        if (timeSpent < expected) {
+            delay = expected - timeSpent;
+        } else {
+            delay = (long) (minInterval * Math.pow(backoffFactor, polls));
+        }
+        delay = Math.min(maxInterval, Math.max(minInterval, delay));
+        if (jitter > 0) {
+            double random = ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+            delay += (long) (delay * random);
+        }
+        return Math.max(minInterval / 2, delay);
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import com.amazonaws.services.transcribe.model.TranscriptionJob;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Follows the Transcribe jobs submitted in asynchronous mode and completes the enrichment once they are done, so that
+ * no stream computation thread is held while AWS is working.
+ */
+public interface TranscribeJobService {
+
+    /**
+     * Registers a submitted job; the enrichment is completed by the service when the job terminates.
+     */
+    void track(PendingTranscription pending);
+
+    /**
+     * Registers a submitted job whose terminated state is handed back to the caller instead of completing the
+     * enrichment, so that the jobs awaited synchronously are checked in bulk with the other ones.
+     *
+     * @return a future completed with the terminated job, or completed exceptionally when the job reaches the timeout
+     */
+    CompletableFuture<TranscriptionJob> watch(PendingTranscription pending);
+
+    /**
+     * @return the number of jobs currently followed on this node
+     */
+    int getPendingJobCount();
+
+    /**
+     * @return {@code true} if the job is followed on this node for the document
+     */
+    boolean isTracked(String jobName, String docId);
+
+    /**
+     * @return the identifier of this node as owner of the jobs in the {@link TranscriptionJobRegistry}
+     */
+    String getNodeId();
+
+    TranscriptionJobRegistry getRegistry();
+
+}
@@ -0,0 +1,420 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.transcribe.model.GetTranscriptionJobRequest;
+import com.amazonaws.services.transcribe.model.ListTranscriptionJobsRequest;
+import com.amazonaws.services.transcribe.model.ListTranscriptionJobsResult;
+import com.amazonaws.services.transcribe.model.TranscriptionJob;
+import com.amazonaws.services.transcribe.model.TranscriptionJobStatus;
+import com.amazonaws.services.transcribe.model.TranscriptionJobSummary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.enrichment.EnrichmentMetadata;
+import org.nuxeo.ai.enrichment.EnrichmentProvider;
+import org.nuxeo.ai.services.AIComponent;
+import org.nuxeo.ai.services.DocMetadataService;
+import org.nuxeo.ai.transcribe.TranscribeService;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.labs.ai.enricher.TranscribeEnrichmentProviderExt;
+import org.nuxeo.labs.ai.governor.AWSGovernor;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.cluster.ClusterService;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.COMPLETED;
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.FAILED;
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.IN_PROGRESS;
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.QUEUED;
+
+public class TranscribeJobServiceImpl extends DefaultComponent implements TranscribeJobService {
+
+    private static final Logger log = LogManager.getLogger(TranscribeJobServiceImpl.class);
+
+    protected static final long TIMEOUT = 1000 * 60 * 60 * 2; // 2h
+
+    protected static final long TICK = 1000; // 1s
+
+    protected static final int COMPLETION_THREADS = 4;
+
+    /** Delay in milliseconds before retrying a failed completion, doubled on each attempt. */
+    public static final String COMPLETION_RETRY_DELAY_PROPERTY = "nuxeo.ai.ext.transcribe.completion.retryDelay";
+
+    protected static final int MAX_COMPLETION_ATTEMPTS = 5;
+
+    protected static final int PAGE_SIZE = 100;
+
+    // up to this number of jobs due, each job is searched by name instead of listing all the recent jobs
+    protected static final int FILTERED_LISTING_MAX_JOBS = 5;
+
+    // jobs are created slightly before being registered
+    protected static final long CREATION_TIME_MARGIN = 1000 * 60; // 1min
+
+    // the registry is swept, and the node heartbeat refreshed, at this interval
+    protected static final long SWEEP_INTERVAL = 1000 * 60; // 1min
+
+    protected static final long HEARTBEAT_TTL = 3 * SWEEP_INTERVAL / 1000; // in seconds
+
+    // jobs are named after the blob, so the same job can be pending for several documents
+    protected final Map<String, PendingTranscription> pendingJobs = new ConcurrentHashMap<>();
+
+    protected final TranscriptionJobRegistry registry = new TranscriptionJobRegistry();
+
+    protected ScheduledExecutorService scheduler;
+
+    protected ExecutorService completionExecutor;
+
+    protected String nodeId;
+
+    protected long startTime;
+
+    @Override
+    public void start(ComponentContext context) {
+        nodeId = Framework.getService(ClusterService.class).getNodeId();
+        startTime = System.currentTimeMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("ai-transcribe-poller"));
+        completionExecutor = Executors.newFixedThreadPool(COMPLETION_THREADS, threadFactory("ai-transcribe-completion"));
+        scheduler.scheduleWithFixedDelay(this::pollDueJobs, TICK, TICK, TimeUnit.MILLISECONDS);
+        // the first sweep adopts the jobs left over by the previous run of this node
+        scheduler.scheduleWithFixedDelay(this::sweep, 10 * TICK, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+        scheduler.shutdownNow();
+        completionExecutor.shutdown();
+        if (!completionExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            completionExecutor.shutdownNow();
+        }
+        if (!pendingJobs.isEmpty()) {
+            log.warn("Stopping with {} Transcribe jobs still pending; they will be adopted after restart",
+                    pendingJobs.size());
+        }
+        for (PendingTranscription pending : List.copyOf(pendingJobs.values())) {
+            untrack(pending);
+            if (pending.getResult() != null) {
+                pending.getResult().completeExceptionally(new NuxeoException("Stopping; Job: " + pending.getJobName()));
+            }
+        }
+    }
+
+    @Override
+    public void track(PendingTranscription pending) {
+        if (pendingJobs.put(key(pending.getJobName(), pending.getDocId()), pending) == null) {
+            AIExtMetrics.jobStarted();
+        }
+    }
+
+    @Override
+    public CompletableFuture<TranscriptionJob> watch(PendingTranscription pending) {
+        pending.result = new CompletableFuture<>();
+        track(pending);
+        return pending.result;
+    }
+
+    /**
+     * @return {@code true} if the job was still tracked
+     */
+    protected boolean untrack(PendingTranscription pending) {
+        if (!pendingJobs.remove(key(pending.getJobName(), pending.getDocId()), pending)) {
+            return false;
+        }
+        AIExtMetrics.jobEnded();
+        return true;
+    }
+
+    protected static String key(String jobName, String docId) {
+        return docId + ":" + jobName;
+    }
+
+    @Override
+    public int getPendingJobCount() {
+        return pendingJobs.size();
+    }
+
+    @Override
+    public boolean isTracked(String jobName, String docId) {
+        return pendingJobs.containsKey(key(jobName, docId));
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public TranscriptionJobRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Refreshes the heartbeat of this node, then goes through the jobs in flight in the cluster: the jobs left over by
+     * the previous run of this node or owned by a node that stopped are adopted, and the jobs that reached the timeout
+     * without being completed are collected.
+     * <p>
+     * Jobs awaited by an enrichment are adopted too when their owner is gone, as the enrichment may never be retried,
+     * except the jobs of the segments of a media, which only the enrichment merging them can complete.
+     */
+    protected void sweep() {
+        try {
+            registry.heartbeat(nodeId, HEARTBEAT_TTL);
+            long now = System.currentTimeMillis();
+            for (TranscriptionJobRegistry.Entry entry : registry.list()) {
+                if (isTracked(entry.jobName, entry.docId)) {
+                    continue;
+                }
+                if (now - entry.submitTime > TIMEOUT + SWEEP_INTERVAL) {
+                    log.warn("Collecting orphaned Transcribe job: {} Document Id: {} Owner: {}", entry.jobName,
+                            entry.docId, entry.owner);
+                    registry.remove(entry.jobName, entry.docId);
+                    AIExtMetrics.ORPHANED_JOBS.inc();
+                } else if (entry.segment) {
+                    // a retried enrichment finds its segment jobs by name, the sweep only collects them
+                    continue;
+                } else if (nodeId.equals(entry.owner) ? entry.submitTime < startTime
+                        : !registry.isAlive(entry.owner) && registry.claim(entry, nodeId)) {
+                    adopt(entry);
+                }
+            }
+        } catch (RuntimeException e) {
+            // never let an exception cancel the periodic task
+            log.error("Unexpected error while sweeping the Transcribe jobs", e);
+        }
+    }
+
+    protected void adopt(TranscriptionJobRegistry.Entry entry) {
+        EnrichmentProvider provider = Framework.getService(AIComponent.class)
+                                               .getEnrichmentProvider(entry.providerName);
+        if (!(provider instanceof TranscribeEnrichmentProviderExt transcribeProvider)) {
+            log.warn("Provider {} cannot adopt Transcribe job {}", entry.providerName, entry.jobName);
+            return;
+        }
+        log.info("Adopting Transcribe job: {} Document Id: {} Previous owner: {}", entry.jobName, entry.docId,
+                entry.owner);
+        track(registry.toPending(entry, transcribeProvider.getPollingPolicy()));
+        AIExtMetrics.ADOPTED_JOBS.inc();
+    }
+
+    public static boolean isRunning(TranscriptionJob job) {
+        String status = job.getTranscriptionJobStatus();
+        return IN_PROGRESS.name().equals(status) || QUEUED.name().equals(status);
+    }
+
+    /**
+     * Checks all the jobs due for a status check with a few {@code ListTranscriptionJobs} calls instead of one
+     * {@code GetTranscriptionJob} call per job. The details of a job are only fetched once it is terminated.
+     */
+    protected void pollDueJobs() {
+        long now = System.currentTimeMillis();
+        List<PendingTranscription> due = pendingJobs.values().stream().filter(pending -> pending.isDue(now)).toList();
+        if (due.isEmpty()) {
+            return;
+        }
+
+        try {
+            TranscribeService ts = Framework.getService(TranscribeService.class);
+            long oldestSubmit = due.stream().mapToLong(PendingTranscription::getSubmitTime).min().orElse(now);
+            Set<String> jobNames = due.stream().map(PendingTranscription::getJobName).collect(Collectors.toSet());
+            Set<String> terminated = new HashSet<>();
+            for (TranscriptionJobStatus status : List.of(COMPLETED, FAILED)) {
+                if (jobNames.size() <= FILTERED_LISTING_MAX_JOBS) {
+                    for (String jobName : jobNames) {
+                        if (!terminated.contains(jobName)) {
+                            listTerminatedJobs(ts, status, jobName, jobNames, oldestSubmit, terminated);
+                        }
+                    }
+                } else {
+                    listTerminatedJobs(ts, status, null, jobNames, oldestSubmit, terminated);
+                }
+            }
+
+            Map<String, TranscriptionJob> jobs = new HashMap<>();
+            for (PendingTranscription pending : due) {
+                String jobName = pending.getJobName();
+                CompletableFuture<TranscriptionJob> result = pending.getResult();
+                if (result != null && result.isDone()) {
+                    // the caller gave up waiting
+                    untrack(pending);
+                } else if (terminated.contains(jobName)) {
+                    // the same job can be pending for several documents
+                    TranscriptionJob job = jobs.computeIfAbsent(jobName, name -> getJob(ts, name));
+                    if (pending.getCompletionAttempts() == 0) {
+                        AIExtMetrics.JOB_DURATION.update(now - pending.getSubmitTime(), TimeUnit.MILLISECONDS);
+                        AIExtMetrics.JOB_POLLS.update(pending.getPolls() + 1L);
+                    }
+                    if (result != null) {
+                        // the caller completes the enrichment, and releases the job
+                        untrack(pending);
+                        result.complete(job);
+                    } else {
+                        // the job stays tracked and registered until its enrichment is saved
+                        pending.completing();
+                        completionExecutor.execute(() -> complete(pending, job));
+                    }
+                } else if (now - pending.getSubmitTime() > TIMEOUT) {
+                    log.error("Work reached timeout; Job name: {} Document Id: {}", jobName, pending.getDocId());
+                    if (result != null) {
+                        untrack(pending);
+                        result.completeExceptionally(new NuxeoException(
+                                "Work reached timeout; Job name: " + jobName + " Document Id: " + pending.getDocId()));
+                    } else {
+                        finish(pending);
+                    }
+                } else {
+                    pending.polled(now);
+                }
+            }
+        } catch (AmazonClientException e) {
+            log.warn("Could not check the status of {} Transcribe jobs; will retry", due.size(), e);
+            due.forEach(pending -> pending.polled(now));
+        } catch (RuntimeException e) {
+            // never let an exception cancel the periodic task
+            log.error("Unexpected error while polling Transcribe jobs", e);
+        }
+    }
+
+    protected TranscriptionJob getJob(TranscribeService ts, String jobName) {
+        GetTranscriptionJobRequest request = new GetTranscriptionJobRequest().withTranscriptionJobName(jobName);
+        return ts.getClient().getTranscriptionJob(request).getTranscriptionJob();
+    }
+
+    /**
+     * Pages through the jobs having the given status, most recent first, until all the searched jobs are found or the
+     * jobs listed are older than the oldest searched one. The listing is not capped: it is bounded by the submission
+     * time of the oldest job.
+     *
+     * @param nameFilter a job name to search, or {@code null} to list all the jobs
+     */
+    protected void listTerminatedJobs(TranscribeService ts, TranscriptionJobStatus status, String nameFilter,
+            Set<String> jobNames, long oldestSubmit, Set<String> terminated) {
+        long limit = oldestSubmit - CREATION_TIME_MARGIN;
+        String nextToken = null;
+        do {
+            ListTranscriptionJobsRequest request = new ListTranscriptionJobsRequest().withStatus(status)
+                                                                                     .withJobNameContains(nameFilter)
+                                                                                     .withMaxResults(PAGE_SIZE)
+                                                                                     .withNextToken(nextToken);
+            ListTranscriptionJobsResult result = ts.getClient().listTranscriptionJobs(request);
+            boolean olderThanLimit = false;
+            for (TranscriptionJobSummary summary : result.getTranscriptionJobSummaries()) {
+                if (jobNames.contains(summary.getTranscriptionJobName())) {
+                    terminated.add(summary.getTranscriptionJobName());
+                }
+                Date creationTime = summary.getCreationTime();
+                if (creationTime != null && creationTime.getTime() < limit) {
+                    olderThanLimit = true;
+                }
+            }
+            if (olderThanLimit || terminated.containsAll(jobNames)
+                    || nameFilter != null && terminated.contains(nameFilter)) {
+                return;
+            }
+            nextToken = result.getNextToken();
+        } while (nextToken != null);
+    }
+
+    /**
+     * Saves the enrichment of a terminated job. A failed completion (download, parsing, save) is retried with a
+     * growing delay, the job being checked again before each attempt.
+     */
+    protected void complete(PendingTranscription pending, TranscriptionJob job) {
+        try {
+            if (FAILED.name().equals(job.getTranscriptionJobStatus())) {
+                log.error("Transcribe job failed with reason: {}; Job: {} Document Id: {}", job.getFailureReason(),
+                        pending.getJobName(), pending.getDocId());
+            } else {
+                AIComponent aiComponent = Framework.getService(AIComponent.class);
+                EnrichmentProvider provider = aiComponent.getEnrichmentProvider(pending.getProviderName());
+                if (provider instanceof TranscribeEnrichmentProviderExt transcribeProvider) {
+                    EnrichmentMetadata metadata = transcribeProvider.complete(pending.getBlobTextFromDocument(), job);
+                    save(pending.getBlobTextFromDocument().getRepositoryName(), metadata);
+                } else {
+                    log.error("Provider {} cannot complete {}", pending.getProviderName(), pending);
+                }
+            }
+            finish(pending);
+        } catch (RuntimeException e) {
+            // whatever the failure, the job must not stay in completion
+            long delay = getCompletionRetryDelay() << Math.min(pending.getCompletionAttempts(), 10);
+            int attempts = pending.completionFailed(System.currentTimeMillis(), delay);
+            if (attempts >= MAX_COMPLETION_ATTEMPTS) {
+                log.error("Could not complete {} after {} attempts", pending, attempts, e);
+                finish(pending);
+            } else {
+                log.warn("Could not complete {}; will retry in {}ms", pending, delay, e);
+            }
+        }
+    }
+
+    /**
+     * Stops following the job once its enrichment is saved, or given up.
+     */
+    protected void finish(PendingTranscription pending) {
+        if (untrack(pending)) {
+            Framework.getService(AWSGovernor.class)
+                     .releaseJob(AWSGovernor.TRANSCRIBE, pending.getJobName(), pending.getDocId());
+        }
+        registry.remove(pending.getJobName(), pending.getDocId());
+    }
+
+    protected long getCompletionRetryDelay() {
+        return Long.parseLong(Framework.getProperty(COMPLETION_RETRY_DELAY_PROPERTY, "10000"));
+    }
+
+    protected void save(String repositoryName, EnrichmentMetadata metadata) {
+        TransactionHelper.runInTransaction(() -> CoreInstance.doPrivileged(repositoryName, session -> {
+            DocumentModel doc = Framework.getService(DocMetadataService.class).saveEnrichment(session, metadata);
+            if (doc != null) {
+                session.saveDocument(doc);
+            }
+        }));
+    }
+
+    protected static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
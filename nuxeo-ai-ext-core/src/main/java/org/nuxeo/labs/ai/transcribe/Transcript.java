@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import java.util.List;
+
+/**
+ * Compact representation of an AWS Transcribe result: the items are stored in parallel primitive arrays instead of
+ * one object graph per item.
+ *
+ * @see TranscriptParser
+ */
+public class Transcript {
+
+    public static final byte PRONUNCIATION = 0;
+
+    public static final byte PUNCTUATION = 1;
+
+    protected final String languageCode;
+
+    protected final List<String> transcripts;
+
+    protected final int size;
+
+    protected final long[] startMillis;
+
+    protected final long[] endMillis;
+
+    protected final byte[] types;
+
+    protected final String[] contents;
+
+    public Transcript(String languageCode, List<String> transcripts, int size, long[] startMillis, long[] endMillis,
+            byte[] types, String[] contents) {
+        this.languageCode = languageCode;
+        this.transcripts = transcripts;
+        this.size = size;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.types = types;
+        this.contents = contents;
+    }
+
+    public String getLanguageCode() {
+        return languageCode;
+    }
+
+    public List<String> getTranscripts() {
+        return transcripts;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getStart(int i) {
+        return startMillis[i];
+    }
+
+    public long getEnd(int i) {
+        return endMillis[i];
+    }
+
+    public byte getType(int i) {
+        return types[i];
+    }
+
+    public boolean isPronunciation(int i) {
+        return types[i] == PRONUNCIATION;
+    }
+
+    public String getContent(int i) {
+        return contents[i];
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Cluster-wide cache of the raw transcripts, keyed by the digest of the transcribed blob and the language options.
+ * <p>
+ * The transcript itself is stored once as the raw enrichment blob; the cache only maps the key to the raw blob key.
+ */
+public class TranscriptCache {
+
+    private static final Logger log = LogManager.getLogger(TranscriptCache.class);
+
+    public static final String CACHE_OPTION = "cache";
+
+    public static final String CACHE_TTL_OPTION = "cacheTTL";
+
+    public static final String KV_STORE_NAME = "aiTranscribeExt";
+
+    public static final String KEY_PREFIX = "transcript:";
+
+    public static final long DEFAULT_TTL = 60 * 60 * 24 * 30; // 30 days, in seconds
+
+    protected static final MetricRegistry registry = SharedMetricRegistries.getOrCreate(
+            MetricsService.class.getName());
+
+    protected static final Counter HITS = registry.counter(
+            MetricName.build("nuxeo", "ai", "ext", "transcribe", "cache", "hits"));
+
+    protected static final Counter MISSES = registry.counter(
+            MetricName.build("nuxeo", "ai", "ext", "transcribe", "cache", "misses"));
+
+    protected final boolean enabled;
+
+    protected final long ttl;
+
+    protected final String blobProviderId;
+
+    public TranscriptCache(boolean enabled, long ttl, String blobProviderId) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.blobProviderId = blobProviderId;
+    }
+
+    public static TranscriptCache fromOptions(Map<String, String> options, String blobProviderId) {
+        return new TranscriptCache(Boolean.parseBoolean(options.getOrDefault(CACHE_OPTION, "true")),
+                Long.parseLong(options.getOrDefault(CACHE_TTL_OPTION, String.valueOf(DEFAULT_TTL))), blobProviderId);
+    }
+
+    /**
+     * @return the cache key of the given blob transcribed with the given language options, or {@code null} if the blob
+     *         has no digest
+     */
+    public String getKey(Blob blob, String[] languages) {
+        String digest = blob.getDigest();
+        if (StringUtils.isBlank(digest) && blob instanceof ManagedBlob managedBlob) {
+            digest = managedBlob.getKey();
+        }
+        if (StringUtils.isBlank(digest)) {
+            return null;
+        }
+        String languageOptions = Arrays.stream(languages)
+                                       .filter(StringUtils::isNotBlank)
+                                       .map(String::trim)
+                                       .sorted()
+                                       .collect(Collectors.joining(","));
+        return KEY_PREFIX + digest + ":" + languageOptions;
+    }
+
+    /**
+     * @return the key of the raw transcript saved for the given cache key, or {@code null} on a cache miss
+     */
+    public String getRawKey(String key) {
+        if (!enabled || key == null) {
+            return null;
+        }
+        String rawKey = getStore().getString(key);
+        if (rawKey == null) {
+            MISSES.inc();
+        } else {
+            HITS.inc();
+        }
+        return rawKey;
+    }
+
+    /**
+     * The raw transcript is only referenced by the enrichments, so it is deleted by the orphan blob GC once they are
+     * gone: the entry of a transcript that cannot be read anymore is evicted, and the lookup is a miss.
+     *
+     * @return the raw transcript saved with the given key, or {@code null} if it cannot be read anymore
+     */
+    public Blob getRawBlob(String key, String rawKey) {
+        BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider(blobProviderId);
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = rawKey;
+        blobInfo.mimeType = "application/json";
+        blobInfo.encoding = "UTF-8";
+        try {
+            Blob blob = blobProvider.readBlob(blobInfo);
+            try (InputStream in = blob.getStream()) {
+                if (in != null) {
+                    return blob;
+                }
+            }
+            log.debug("Cached transcript {} is gone; evicting it", rawKey);
+        } catch (IOException e) {
+            log.warn("Could not read cached transcript {}; evicting it", rawKey, e);
+        }
+        getStore().put(key, (String) null);
+        HITS.dec();
+        MISSES.inc();
+        return null;
+    }
+
+    public void put(String key, String rawKey) {
+        if (enabled && key != null) {
+            getStore().put(key, rawKey, ttl);
+        }
+    }
+
+    public static long getHits() {
+        return HITS.getCount();
+    }
+
+    public static long getMisses() {
+        return MISSES.getCount();
+    }
+
+    protected KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(KV_STORE_NAME);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import io.dropwizard.metrics5.Timer;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Downloads Transcribe results with a pooled, keep-alive HTTP client shared by all the documents.
+ * <p>
+ * The transcript is streamed to a temporary file blob so that it is never held in memory as a whole.
+ */
+public class TranscriptClient implements Closeable {
+
+    private static final Logger log = LogManager.getLogger(TranscriptClient.class);
+
+    public static final String HTTP_MAX_CONNECTIONS_OPTION = "httpMaxConnections";
+
+    public static final String HTTP_CONNECT_TIMEOUT_OPTION = "httpConnectTimeout";
+
+    public static final String HTTP_SOCKET_TIMEOUT_OPTION = "httpSocketTimeout";
+
+    public static final String HTTP_MAX_RETRIES_OPTION = "httpMaxRetries";
+
+    public static final String HTTP_RETRY_DELAY_OPTION = "httpRetryDelay";
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 1000 * 10; // 10s
+
+    public static final int DEFAULT_SOCKET_TIMEOUT = 1000 * 60; // 1min
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    public static final long DEFAULT_RETRY_DELAY = 1000; // 1s
+
+    protected final CloseableHttpClient httpClient;
+
+    protected final int maxRetries;
+
+    protected final long retryDelay;
+
+    public TranscriptClient(int maxConnections, int connectTimeout, int socketTimeout, int maxRetries,
+            long retryDelay) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        RequestConfig requestConfig = RequestConfig.custom()
+                                                   .setConnectTimeout(connectTimeout)
+                                                   .setConnectionRequestTimeout(connectTimeout)
+                                                   .setSocketTimeout(socketTimeout)
+                                                   .build();
+        this.httpClient = HttpClients.custom()
+                                     .setConnectionManager(connectionManager)
+                                     .setDefaultRequestConfig(requestConfig)
+                                     .disableAutomaticRetries()
+                                     .build();
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryDelay = retryDelay;
+    }
+
+    public static TranscriptClient fromOptions(Map<String, String> options) {
+        return new TranscriptClient(
+                Integer.parseInt(
+                        options.getOrDefault(HTTP_MAX_CONNECTIONS_OPTION, String.valueOf(DEFAULT_MAX_CONNECTIONS))),
+                Integer.parseInt(
+                        options.getOrDefault(HTTP_CONNECT_TIMEOUT_OPTION, String.valueOf(DEFAULT_CONNECT_TIMEOUT))),
+                Integer.parseInt(
+                        options.getOrDefault(HTTP_SOCKET_TIMEOUT_OPTION, String.valueOf(DEFAULT_SOCKET_TIMEOUT))),
+                Integer.parseInt(options.getOrDefault(HTTP_MAX_RETRIES_OPTION, String.valueOf(DEFAULT_MAX_RETRIES))),
+                Long.parseLong(options.getOrDefault(HTTP_RETRY_DELAY_OPTION, String.valueOf(DEFAULT_RETRY_DELAY))));
+    }
+
+    /**
+     * Downloads the resource at the given URI to a temporary JSON blob, retrying with an exponential backoff on I/O
+     * errors, throttling and server errors. Any other HTTP status, such as the one of an expired pre-signed URI, fails
+     * at once.
+     */
+    public Blob download(String uri) throws IOException {
+        try (Timer.Context ignored = AIExtMetrics.DOWNLOAD.time()) {
+            Blob blob = downloadWithRetries(uri);
+            AIExtMetrics.DOWNLOAD_BYTES.update(blob.getLength());
+            return blob;
+        }
+    }
+
+    protected Blob downloadWithRetries(String uri) throws IOException {
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                backoff(attempt);
+            }
+            try {
+                return doDownload(uri);
+            } catch (UnexpectedStatusException e) {
+                throw e;
+            } catch (RetryableException e) {
+                lastError = e;
+                log.debug("Attempt {} to download {} failed: {}", attempt + 1, uri, e.getMessage());
+            } catch (IOException e) {
+                lastError = e;
+                log.debug("Attempt {} to download {} failed", attempt + 1, uri, e);
+            }
+        }
+        throw lastError;
+    }
+
+    protected Blob doDownload(String uri) throws IOException {
+        HttpGet request = new HttpGet(uri);
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status != HttpStatus.SC_OK) {
+                // consume the entity so that the connection goes back to the pool
+                EntityUtils.consume(entity);
+                if (status == 429 || status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                    throw new RetryableException("HTTP status " + status);
+                }
+                throw new UnexpectedStatusException(status);
+            }
+            Blob blob = Blobs.createBlobWithExtension(".json");
+            blob.setMimeType("application/json");
+            blob.setEncoding(StandardCharsets.UTF_8.name());
+            try (InputStream in = entity.getContent()) {
+                Files.copy(in, blob.getFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return blob;
+        }
+    }
+
+    protected void backoff(int attempt) throws IOException {
+        try {
+            Thread.sleep(retryDelay * (1L << (attempt - 1)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    protected static class RetryableException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public RetryableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * An HTTP status that retrying does not change.
+     */
+    public static class UnexpectedStatusException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final int status;
+
+        public UnexpectedStatusException(int status) {
+            super("Unexpected HTTP status " + status);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+}
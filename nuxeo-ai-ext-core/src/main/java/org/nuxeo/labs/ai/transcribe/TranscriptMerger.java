@@ -0,0 +1,169 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.transcribe;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the raw Transcribe outputs of consecutive segments of a media into the output of the whole media: the item
+ * times are shifted by the offset of their segment and the items keep the order of the segments.
+ * <p>
+ * The items are streamed from each segment output to the merged output, token by token, so that the items of a long
+ * media are never held in memory; the merged results list their items before the transcript and the language.
+ */
+public class TranscriptMerger {
+
+    protected static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private TranscriptMerger() {
+        // utility class
+    }
+
+    /**
+     * @param transcripts the raw outputs of the segments, in order
+     * @param offsets the start of each segment in the media, in seconds
+     */
+    public static Blob merge(String jobName, List<Blob> transcripts, List<Double> offsets) throws IOException {
+        Blob blob = Blobs.createBlobWithExtension(".json");
+        StringBuilder text = new StringBuilder();
+        Map<String, Integer> languages = new LinkedHashMap<>();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(blob.getFile(), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("jobName", jobName);
+            generator.writeStringField("status", "COMPLETED");
+            generator.writeObjectFieldStart("results");
+            generator.writeArrayFieldStart("items");
+            int id = 0;
+            for (int i = 0; i < transcripts.size(); i++) {
+                try (InputStream in = transcripts.get(i).getStream();
+                        JsonParser parser = JSON_FACTORY.createParser(in)) {
+                    id = copySegment(parser, generator, BigDecimal.valueOf(offsets.get(i)), id, text, languages);
+                }
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("transcripts");
+            generator.writeStartObject();
+            generator.writeStringField("transcript", text.toString());
+            generator.writeEndObject();
+            generator.writeEndArray();
+            // segments may be identified in different languages; the language of most segments wins
+            String language = languages.entrySet()
+                                       .stream()
+                                       .max(Map.Entry.comparingByValue())
+                                       .map(Map.Entry::getKey)
+                                       .orElse(null);
+            if (language != null) {
+                generator.writeStringField("language_code", language);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        blob.setMimeType("application/json");
+        blob.setEncoding("UTF-8");
+        blob.setFilename(jobName + ".json");
+        return blob;
+    }
+
+    /**
+     * Copies the items of a segment output to the merged items, and collects its transcript and language.
+     *
+     * @return the id of the next item
+     */
+    protected static int copySegment(JsonParser parser, JsonGenerator generator, BigDecimal offset, int id,
+            StringBuilder text, Map<String, Integer> languages) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Transcript is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT || !"results".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("language_code".equals(name) && token == JsonToken.VALUE_STRING) {
+                    languages.merge(parser.getText(), 1, Integer::sum);
+                } else if ("transcripts".equals(name) && token == JsonToken.START_ARRAY) {
+                    readTranscripts(parser, text);
+                } else if ("items".equals(name) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        copyItem(parser, generator, offset, id++);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return id;
+    }
+
+    protected static void readTranscripts(JsonParser parser, StringBuilder text) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                String segmentText = "transcript".equals(name) ? parser.getValueAsString("") : "";
+                if (!segmentText.isEmpty()) {
+                    text.append(text.length() == 0 ? "" : " ").append(segmentText);
+                }
+                parser.skipChildren();
+            }
+        }
+    }
+
+    protected static void copyItem(JsonParser parser, JsonGenerator generator, BigDecimal offset, int id)
+            throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("id".equals(field)) {
+                generator.writeNumberField("id", id);
+            } else if (("start_time".equals(field) || "end_time".equals(field)) && token == JsonToken.VALUE_STRING
+                    && !parser.getText().isEmpty()) {
+                generator.writeStringField(field, shift(parser.getText(), offset));
+            } else {
+                generator.writeFieldName(field);
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    protected static String shift(String time, BigDecimal offset) {
+        return new BigDecimal(time).add(offset).setScale(3, RoundingMode.HALF_UP).toPlainString();
+    }
+}
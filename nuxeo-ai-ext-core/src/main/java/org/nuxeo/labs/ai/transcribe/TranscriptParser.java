@@ -0,0 +1,229 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser of the AWS Transcribe JSON result.
+ * <p>
+ * The JSON is read token by token into a {@link Transcript}: times are converted to milliseconds straight from the
+ * token characters and identical contents share the same {@code String} instance.
+ */
+public class TranscriptParser {
+
+    protected static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    protected static final int INITIAL_CAPACITY = 1024;
+
+    private TranscriptParser() {
+        // utility class
+    }
+
+    public static Transcript parse(InputStream in) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            Builder builder = new Builder();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Transcript is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("results".equals(field) && token == JsonToken.START_OBJECT) {
+                    parseResults(parser, builder);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return builder.build();
+        }
+    }
+
+    protected static void parseResults(JsonParser parser, Builder builder) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+            case "language_code" -> builder.languageCode = parser.getValueAsString();
+            case "transcripts" -> {
+                if (token != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    break;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        if ("transcript".equals(name)) {
+                            builder.transcripts.add(parser.getValueAsString());
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
+            case "items" -> {
+                if (token != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    break;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseItem(parser, builder);
+                }
+            }
+            default -> parser.skipChildren();
+            }
+        }
+    }
+
+    protected static void parseItem(JsonParser parser, Builder builder) throws IOException {
+        long start = 0;
+        long end = 0;
+        byte type = Transcript.PRONUNCIATION;
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+            case "start_time" -> start = parseMillis(parser);
+            case "end_time" -> end = parseMillis(parser);
+            case "type" -> type = "punctuation".equals(parser.getText()) ? Transcript.PUNCTUATION
+                    : Transcript.PRONUNCIATION;
+            case "alternatives" -> {
+                if (token != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    break;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        if (content == null && "content".equals(name)) {
+                            content = builder.pool(parser.getText());
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
+            default -> parser.skipChildren();
+            }
+        }
+        if (type == Transcript.PUNCTUATION) {
+            start = 0;
+            end = 0;
+        }
+        builder.add(start, end, type, content);
+    }
+
+    /**
+     * Parses a decimal number of seconds such as {@code "12.345"} into milliseconds, ignoring sub-millisecond
+     * digits.
+     */
+    protected static long parseMillis(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return (long) (parser.getDoubleValue() * 1000);
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            return 0;
+        }
+        return parseMillis(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    protected static long parseMillis(char[] chars, int offset, int length) {
+        long seconds = 0;
+        long millis = 0;
+        int decimals = -1;
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c == '.') {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimals < 0) {
+                    seconds = seconds * 10 + (c - '0');
+                } else if (decimals < 3) {
+                    millis = millis * 10 + (c - '0');
+                    decimals++;
+                }
+            } else {
+                throw new NumberFormatException("Invalid time: " + new String(chars, offset, length));
+            }
+        }
+        for (int d = Math.max(decimals, 0); d < 3; d++) {
+            millis *= 10;
+        }
+        return seconds * 1000 + millis;
+    }
+
+    protected static class Builder {
+
+        protected String languageCode;
+
+        protected final List<String> transcripts = new ArrayList<>(1);
+
+        protected final Map<String, String> contentPool = new HashMap<>();
+
+        protected int size;
+
+        protected long[] startMillis = new long[INITIAL_CAPACITY];
+
+        protected long[] endMillis = new long[INITIAL_CAPACITY];
+
+        protected byte[] types = new byte[INITIAL_CAPACITY];
+
+        protected String[] contents = new String[INITIAL_CAPACITY];
+
+        protected String pool(String content) {
+            String pooled = contentPool.putIfAbsent(content, content);
+            return pooled == null ? content : pooled;
+        }
+
+        protected void add(long start, long end, byte type, String content) {
+            if (size == types.length) {
+                int capacity = size * 2;
+                startMillis = Arrays.copyOf(startMillis, capacity);
+                endMillis = Arrays.copyOf(endMillis, capacity);
+                types = Arrays.copyOf(types, capacity);
+                contents = Arrays.copyOf(contents, capacity);
+            }
+            startMillis[size] = start;
+            endMillis[size] = end;
+            types[size] = type;
+            contents[size] = content == null ? "" : content;
+            size++;
+        }
+
+        protected Transcript build() {
+            return new Transcript(languageCode, transcripts, size, startMillis, endMillis, types, contents);
+        }
+    }
+}
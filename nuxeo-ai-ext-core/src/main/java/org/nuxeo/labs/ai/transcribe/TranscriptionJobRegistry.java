@@ -0,0 +1,281 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.transcribe;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.codec.CodecService;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cluster-wide registry of the Transcribe jobs in flight, stored in the key/value store so that a job outlives the
+ * node waiting for it: a retried enrichment adopts its job instead of starting over, and the jobs of a node that
+ * stopped are adopted by the other nodes.
+ * <p>
+ * Each node refreshes a heartbeat in the store; the jobs owned by a node without heartbeat are orphans. The keys of the
+ * jobs in flight are kept in index entries, so that listing them does not need a scan of the store, which not all the
+ * key/value stores support. The keys are spread over {@value #INDEX_BUCKETS} index entries by hash, so that the nodes
+ * registering jobs concurrently seldom update the same entry.
+ */
+public class TranscriptionJobRegistry {
+
+    public static final String KV_STORE_NAME = "aiTranscribeJobs";
+
+    protected static final String JOB_PREFIX = "job:";
+
+    protected static final String NODE_PREFIX = "node:";
+
+    protected static final String INDEX_PREFIX = "index:";
+
+    protected static final int INDEX_BUCKETS = 64;
+
+    // longer than the job timeout, entries are removed explicitly
+    protected static final long TTL = 60 * 60 * 24; // 1 day, in seconds
+
+    protected static final String CODEC = "avro";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * A job in flight, with what is needed to complete its enrichment on any node.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+
+        public String jobName;
+
+        public String providerName;
+
+        public String repository;
+
+        public String docId;
+
+        public long submitTime;
+
+        public long mediaDuration;
+
+        /**
+         * The job is followed by the job service of its owner rather than awaited by the enrichment, so it is completed
+         * as long as the owner is alive.
+         */
+        public boolean async;
+
+        /**
+         * The job transcribes a segment of the media: only the enrichment merging the segments can complete it, so it
+         * is never adopted.
+         */
+        public boolean segment;
+
+        public String owner;
+
+        /** The encoded enrichment input. */
+        public String document;
+    }
+
+    public Entry register(PendingTranscription pending, boolean async, String owner) {
+        return register(pending, async, false, owner);
+    }
+
+    public Entry register(PendingTranscription pending, boolean async, boolean segment, String owner) {
+        BlobTextFromDocument blobTextFromDocument = pending.getBlobTextFromDocument();
+        Entry entry = new Entry();
+        entry.jobName = pending.getJobName();
+        entry.providerName = pending.getProviderName();
+        entry.repository = blobTextFromDocument.getRepositoryName();
+        entry.docId = pending.getDocId();
+        entry.submitTime = pending.getSubmitTime();
+        entry.mediaDuration = pending.getMediaDuration();
+        entry.async = async;
+        entry.segment = segment;
+        entry.owner = owner;
+        entry.document = Base64.getEncoder().encodeToString(getCodec().encode(blobTextFromDocument));
+        String key = key(entry.jobName, entry.docId);
+        getStore().put(key, toJson(entry), TTL);
+        updateIndex(indexKey(key), keys -> keys.add(key));
+        return entry;
+    }
+
+    /**
+     * @return the job in flight with this name for the document, or {@code null} if there is none
+     */
+    public Entry get(String jobName, String docId) {
+        String json = getStore().getString(key(jobName, docId));
+        return json == null ? null : fromJson(json);
+    }
+
+    public void remove(String jobName, String docId) {
+        String key = key(jobName, docId);
+        getStore().put(key, (String) null);
+        updateIndex(indexKey(key), keys -> keys.remove(key));
+    }
+
+    /**
+     * Makes the given node the owner of the job, unless the job was claimed or removed in the meantime.
+     *
+     * @return {@code true} if the job was claimed
+     */
+    public boolean claim(Entry entry, String owner) {
+        String key = key(entry.jobName, entry.docId);
+        String expected = getStore().getString(key);
+        if (expected == null || !Objects.equals(fromJson(expected).owner, entry.owner)) {
+            return false;
+        }
+        Entry claimed = fromJson(expected);
+        claimed.owner = owner;
+        if (!getStore().compareAndSet(key, expected, toJson(claimed), TTL)) {
+            return false;
+        }
+        entry.owner = owner;
+        return true;
+    }
+
+    public List<Entry> list() {
+        Set<String> keys = getIndex();
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        Map<String, String> values = getStore().getStrings(keys);
+        List<Entry> entries = new ArrayList<>();
+        List<String> expired = new ArrayList<>();
+        for (String key : keys) {
+            String json = values.get(key);
+            if (json == null) {
+                expired.add(key);
+            } else {
+                entries.add(fromJson(json));
+            }
+        }
+        expired.stream()
+               .collect(Collectors.groupingBy(TranscriptionJobRegistry::indexKey))
+               .forEach((indexKey, bucket) -> updateIndex(indexKey, index -> bucket.forEach(index::remove)));
+        return entries;
+    }
+
+    /**
+     * @return the keys of the jobs in flight, from all the index entries
+     */
+    protected Set<String> getIndex() {
+        List<String> indexKeys = IntStream.range(0, INDEX_BUCKETS).mapToObj(i -> INDEX_PREFIX + i).toList();
+        Set<String> keys = new TreeSet<>();
+        for (String json : getStore().getStrings(indexKeys).values()) {
+            if (json != null) {
+                keys.addAll(readIndex(json));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Updates an index entry of the jobs in flight, concurrently with the other nodes.
+     */
+    protected void updateIndex(String indexKey, Consumer<Set<String>> update) {
+        KeyValueStore store = getStore();
+        try {
+            for (;;) {
+                String current = store.getString(indexKey);
+                Set<String> keys = current == null ? new TreeSet<>() : readIndex(current);
+                update.accept(keys);
+                String value = keys.isEmpty() ? null : OBJECT_MAPPER.writeValueAsString(keys);
+                if (Objects.equals(current, value) || store.compareAndSet(indexKey, current, value, TTL)) {
+                    return;
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new NuxeoException("Could not update the registry index", e);
+        }
+    }
+
+    protected Set<String> readIndex(String json) {
+        try {
+            return OBJECT_MAPPER.readValue(json, new TypeReference<TreeSet<String>>() {});
+        } catch (JsonProcessingException e) {
+            throw new NuxeoException("Could not read the registry index", e);
+        }
+    }
+
+    protected static String indexKey(String key) {
+        return INDEX_PREFIX + Math.floorMod(key.hashCode(), INDEX_BUCKETS);
+    }
+
+    /**
+     * Signals that the node is alive for the given number of seconds.
+     */
+    public void heartbeat(String nodeId, long ttl) {
+        getStore().put(NODE_PREFIX + nodeId, String.valueOf(System.currentTimeMillis()), ttl);
+    }
+
+    public boolean isAlive(String nodeId) {
+        return nodeId != null && getStore().getString(NODE_PREFIX + nodeId) != null;
+    }
+
+    public PendingTranscription toPending(Entry entry, PollingPolicy policy) {
+        BlobTextFromDocument blobTextFromDocument = getCodec().decode(Base64.getDecoder().decode(entry.document));
+        return new PendingTranscription(entry.providerName, entry.jobName, blobTextFromDocument, entry.mediaDuration,
+                policy, entry.submitTime);
+    }
+
+    /**
+     * Jobs are named after the blob, so the same job can be in flight for several documents.
+     */
+    protected static String key(String jobName, String docId) {
+        return JOB_PREFIX + docId + ":" + jobName;
+    }
+
+    protected String toJson(Entry entry) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new NuxeoException("Could not write the registry entry of job " + entry.jobName, e);
+        }
+    }
+
+    protected Entry fromJson(String json) {
+        try {
+            return OBJECT_MAPPER.readValue(json, Entry.class);
+        } catch (JsonProcessingException e) {
+            throw new NuxeoException("Could not read a registry entry", e);
+        }
+    }
+
+    protected Codec<BlobTextFromDocument> getCodec() {
+        return Framework.getService(CodecService.class).getCodec(CODEC, BlobTextFromDocument.class);
+    }
+
+    protected KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(KV_STORE_NAME);
+    }
+}
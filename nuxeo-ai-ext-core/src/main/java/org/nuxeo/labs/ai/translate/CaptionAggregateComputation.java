@@ -0,0 +1,173 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.translate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.metadata.Caption;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.labs.ai.captions.CaptionWriter.Format;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves the captions of a job on the document, once all the languages are translated or when the translation timeout
+ * is reached. The records of a document all go to the same partition, so a job is aggregated by a single thread.
+ * <p>
+ * The deadline of a job is kept in the {@link CaptionJobStore}: it is checked on each record of the job, and the open
+ * jobs are swept periodically, so that a job whose language records were dropped is completed even after a restart or
+ * a rebalance. A job is marked done once in the cluster before being saved.
+ */
+public class CaptionAggregateComputation extends AbstractComputation {
+
+    private static final Logger log = LogManager.getLogger(CaptionAggregateComputation.class);
+
+    public static final String NAME = "aiCaptionAggregate";
+
+    protected final ExtendedDocumentTranscribed captions = new ExtendedDocumentTranscribed();
+
+    protected static final String SWEEP_TIMER = "sweep";
+
+    protected final CaptionJobStore store = new CaptionJobStore();
+
+    protected final long sweepInterval;
+
+    /**
+     * @param sweepInterval the interval in milliseconds between two sweeps of the overdue jobs
+     */
+    public CaptionAggregateComputation(long sweepInterval) {
+        super(NAME, 1, 0);
+        this.sweepInterval = sweepInterval;
+    }
+
+    @Override
+    public void init(ComputationContext context) {
+        context.setTimer(SWEEP_TIMER, System.currentTimeMillis() + sweepInterval);
+    }
+
+    @Override
+    public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+        CaptionMessage message = CaptionStreams.fromRecord(record);
+        String jobId = message.getJobId();
+        CaptionMessage job = store.getJob(jobId);
+        if (job != null && !store.isDone(jobId)) {
+            if (job.getLanguages().stream().allMatch(lang -> store.getTranslation(jobId, lang) != null)) {
+                complete(job);
+            } else if (store.isOverdue(jobId, System.currentTimeMillis())) {
+                timedOut(job);
+            }
+        }
+        context.askForCheckpoint();
+    }
+
+    @Override
+    public void processTimer(ComputationContext context, String key, long timestamp) {
+        sweep(System.currentTimeMillis());
+        context.setTimer(SWEEP_TIMER, System.currentTimeMillis() + sweepInterval);
+        context.askForCheckpoint();
+    }
+
+    /**
+     * Completes the open jobs of the cluster whose deadline is passed. The index of the open jobs is only read, it is
+     * updated when a job is completed or found expired.
+     */
+    protected void sweep(long now) {
+        store.getOpenJobs().forEach((jobId, deadline) -> {
+            if (now < deadline) {
+                return;
+            }
+            CaptionMessage job = store.getJob(jobId);
+            if (job == null || store.isDone(jobId)) {
+                // expired, or done by a computation that failed to remove it
+                store.removeOpenJob(jobId);
+                return;
+            }
+            try {
+                timedOut(job);
+            } catch (RuntimeException e) {
+                log.error("Could not complete caption job {} of document id = {}", jobId, job.getDocId(), e);
+            }
+        });
+    }
+
+    protected void timedOut(CaptionMessage job) {
+        log.warn("Caption translations timed out for document id = {}; saving the available languages",
+                job.getDocId());
+        complete(job);
+    }
+
+    protected void complete(CaptionMessage job) {
+        String jobId = job.getJobId();
+        if (!store.markDone(jobId)) {
+            log.debug("Caption job {} of document id = {} is already done", jobId, job.getDocId());
+            return;
+        }
+        try {
+            List<Caption> sourceCaptions = store.getSource(jobId);
+            if (sourceCaptions != null) {
+                TransactionHelper.runInTransaction(() -> CoreInstance.doPrivileged(job.getRepository(), session -> {
+                    IdRef ref = new IdRef(job.getDocId());
+                    if (session.exists(ref)) {
+                        save(session.getDocument(ref), job, sourceCaptions);
+                    }
+                }));
+            }
+        } catch (RuntimeException e) {
+            store.clearDone(jobId);
+            throw e;
+        }
+        store.removeOpenJob(jobId);
+    }
+
+    protected void save(DocumentModel doc, CaptionMessage job, List<Caption> sourceCaptions) {
+        Map<String, Map<String, Serializable>> existing = captions.getExistingCaptions(doc);
+        List<Map<String, Serializable>> allCaptions = new ArrayList<>();
+        Map<String, Map<Format, Blob>> captionFiles = new HashMap<>();
+        if (job.isSourceUnchanged()) {
+            allCaptions.addAll(existing.values());
+        } else {
+            allCaptions.add(captions.newCaption(job.getSrcLang(), captions.write(sourceCaptions), captionFiles));
+        }
+        for (String destLang : job.getLanguages()) {
+            List<String> lines = store.getTranslation(job.getJobId(), destLang);
+            if (lines == null) {
+                log.warn("Translation to {} is missing for document id = {}", destLang, doc.getId());
+                continue;
+            }
+            List<Caption> translatedCaptions = captions.translate(sourceCaptions, lines);
+            allCaptions.add(captions.newCaption(destLang, captions.write(translatedCaptions), captionFiles));
+        }
+        if (job.isSourceUnchanged() && allCaptions.size() == existing.size()) {
+            log.debug("No new caption language for document id = {}", doc.getId());
+            return;
+        }
+        captions.saveCaptions(doc, allCaptions, captionFiles);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.translate;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.nuxeo.ai.metadata.Caption;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * State of the caption jobs shared by the caption computations of the cluster: the job itself, the source captions
+ * and the translated lines of each language.
+ * <p>
+ * The deadline of each open job is kept in its own entry, and the ids of the open jobs are spread over
+ * {@value #OPEN_BUCKETS} index entries by hash, so that any aggregate computation of the cluster can complete a job
+ * whose translations were lost, even after a restart or a rebalance of the partitions, without all the jobs of the
+ * cluster updating the same entry.
+ */
+public class CaptionJobStore {
+
+    public static final String KV_STORE_NAME = "aiCaptions";
+
+    protected static final long TTL = 86400; // 1 day
+
+    protected static final String OPEN_PREFIX = "open:";
+
+    protected static final int OPEN_BUCKETS = 64;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * @param deadline the time in milliseconds after which the job is completed with the available translations
+     */
+    public void putJob(CaptionMessage job, long deadline) {
+        put(job.getJobId() + ":job", job);
+        getStore().put(job.getJobId() + ":deadline", String.valueOf(deadline), TTL);
+        updateOpenJobs(openKey(job.getJobId()), jobIds -> jobIds.add(job.getJobId()));
+    }
+
+    public CaptionMessage getJob(String jobId) {
+        return get(jobId + ":job", new TypeReference<>() {});
+    }
+
+    public void putSource(String jobId, List<Caption> captions) {
+        put(jobId + ":src", captions.stream()
+                                    .map(caption -> Map.of("start", caption.getStart(), "end", caption.getEnd(),
+                                            "lines", caption.getLines()))
+                                    .toList());
+    }
+
+    public List<Caption> getSource(String jobId) {
+        List<Map<String, Object>> captions = get(jobId + ":src", new TypeReference<>() {});
+        if (captions == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        List<Caption> result = captions.stream()
+                                       .map(caption -> new Caption(((Number) caption.get("start")).longValue(),
+                                               ((Number) caption.get("end")).longValue(),
+                                               (List<String>) caption.get("lines")))
+                                       .toList();
+        return result;
+    }
+
+    public void putTranslation(String jobId, String destLang, List<String> lines) {
+        put(jobId + ":lang:" + destLang, lines);
+    }
+
+    public List<String> getTranslation(String jobId, String destLang) {
+        return get(jobId + ":lang:" + destLang, new TypeReference<>() {});
+    }
+
+    /**
+     * @return the deadline of the open jobs by job id; the jobs whose entries expired are dropped from the index
+     */
+    public Map<String, Long> getOpenJobs() {
+        KeyValueStore store = getStore();
+        List<String> openKeys = IntStream.range(0, OPEN_BUCKETS).mapToObj(i -> OPEN_PREFIX + i).toList();
+        Set<String> jobIds = new HashSet<>();
+        store.get(openKeys).values().forEach(value -> jobIds.addAll(readJobIds(value)));
+        if (jobIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> deadlines = store.getStrings(jobIds.stream().map(jobId -> jobId + ":deadline").toList());
+        Map<String, Long> jobs = new HashMap<>();
+        List<String> expired = new ArrayList<>();
+        for (String jobId : jobIds) {
+            String deadline = deadlines.get(jobId + ":deadline");
+            if (deadline == null) {
+                expired.add(jobId);
+            } else {
+                jobs.put(jobId, Long.valueOf(deadline));
+            }
+        }
+        expired.stream()
+               .collect(Collectors.groupingBy(CaptionJobStore::openKey))
+               .forEach((openKey, bucket) -> updateOpenJobs(openKey, ids -> bucket.forEach(ids::remove)));
+        return jobs;
+    }
+
+    /**
+     * @return {@code true} if the job is open and its deadline is passed
+     */
+    public boolean isOverdue(String jobId, long now) {
+        String deadline = getStore().getString(jobId + ":deadline");
+        return deadline != null && now >= Long.parseLong(deadline);
+    }
+
+    public void removeOpenJob(String jobId) {
+        getStore().put(jobId + ":deadline", (String) null);
+        updateOpenJobs(openKey(jobId), jobIds -> jobIds.remove(jobId));
+    }
+
+    /**
+     * Marks the job as done, once in the cluster.
+     *
+     * @return {@code false} if the job was already done
+     */
+    public boolean markDone(String jobId) {
+        return getStore().compareAndSet(jobId + ":done", null, "true", TTL);
+    }
+
+    /**
+     * Reverts {@link #markDone(String)} when the job could not be completed, so that it is retried.
+     */
+    public void clearDone(String jobId) {
+        getStore().put(jobId + ":done", (String) null);
+    }
+
+    public boolean isDone(String jobId) {
+        return getStore().getString(jobId + ":done") != null;
+    }
+
+    protected void put(String key, Object value) {
+        try {
+            getStore().put(key, OBJECT_MAPPER.writeValueAsBytes(value), TTL);
+        } catch (IOException e) {
+            throw new NuxeoException("Could not write caption job entry " + key, e);
+        }
+    }
+
+    /**
+     * Updates an index entry of the open jobs, concurrently with the other computations.
+     */
+    protected void updateOpenJobs(String openKey, Consumer<Set<String>> update) {
+        KeyValueStore store = getStore();
+        try {
+            for (;;) {
+                byte[] current = store.get(openKey);
+                Set<String> jobIds = readJobIds(current);
+                update.accept(jobIds);
+                byte[] value = jobIds.isEmpty() ? null : OBJECT_MAPPER.writeValueAsBytes(jobIds);
+                if (Arrays.equals(current, value) || store.compareAndSet(openKey, current, value, TTL)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Could not update the open caption jobs", e);
+        }
+    }
+
+    protected Set<String> readJobIds(byte[] value) {
+        if (value == null) {
+            return new HashSet<>();
+        }
+        try {
+            return OBJECT_MAPPER.readValue(value, new TypeReference<HashSet<String>>() {});
+        } catch (IOException e) {
+            throw new NuxeoException("Could not read the open caption jobs", e);
+        }
+    }
+
+    protected static String openKey(String jobId) {
+        return OPEN_PREFIX + Math.floorMod(jobId.hashCode(), OPEN_BUCKETS);
+    }
+
+    protected <T> T get(String key, TypeReference<T> type) {
+        byte[] value = getStore().get(key);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(value, type);
+        } catch (IOException e) {
+            throw new NuxeoException("Could not read caption job entry " + key, e);
+        }
+    }
+
+    protected KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(KV_STORE_NAME);
+    }
+}
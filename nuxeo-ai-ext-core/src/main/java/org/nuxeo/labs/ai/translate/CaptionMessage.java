@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.translate;
+
+import java.util.List;
+
+/**
+ * Payload of the records of the caption streams. The source record only holds the document and the provider; the
+ * caption job and the languages are set by the segment computation.
+ */
+public class CaptionMessage {
+
+    protected String repository;
+
+    protected String docId;
+
+    protected String provider;
+
+    protected String jobId;
+
+    protected String srcLang;
+
+    protected String destLang;
+
+    protected List<String> languages;
+
+    protected boolean sourceUnchanged;
+
+    public CaptionMessage() {
+        // for JSON deserialization
+    }
+
+    public CaptionMessage(String repository, String docId, String provider) {
+        this.repository = repository;
+        this.docId = docId;
+        this.provider = provider;
+    }
+
+    public CaptionMessage withJob(String jobId, String srcLang, List<String> languages, boolean sourceUnchanged) {
+        CaptionMessage message = copy();
+        message.jobId = jobId;
+        message.srcLang = srcLang;
+        message.languages = languages;
+        message.sourceUnchanged = sourceUnchanged;
+        return message;
+    }
+
+    public CaptionMessage withDestLang(String destLang) {
+        CaptionMessage message = copy();
+        message.destLang = destLang;
+        return message;
+    }
+
+    protected CaptionMessage copy() {
+        CaptionMessage message = new CaptionMessage(repository, docId, provider);
+        message.jobId = jobId;
+        message.srcLang = srcLang;
+        message.destLang = destLang;
+        message.languages = languages;
+        message.sourceUnchanged = sourceUnchanged;
+        return message;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public String getDocId() {
+        return docId;
+    }
+
+    public void setDocId(String docId) {
+        this.docId = docId;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getSrcLang() {
+        return srcLang;
+    }
+
+    public void setSrcLang(String srcLang) {
+        this.srcLang = srcLang;
+    }
+
+    public String getDestLang() {
+        return destLang;
+    }
+
+    public void setDestLang(String destLang) {
+        this.destLang = destLang;
+    }
+
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    public void setLanguages(List<String> languages) {
+        this.languages = languages;
+    }
+
+    public boolean isSourceUnchanged() {
+        return sourceUnchanged;
+    }
+
+    public void setSourceUnchanged(boolean sourceUnchanged) {
+        this.sourceUnchanged = sourceUnchanged;
+    }
+}
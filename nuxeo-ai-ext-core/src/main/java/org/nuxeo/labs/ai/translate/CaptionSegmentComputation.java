@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.translate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.metadata.Caption;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.labs.ai.captions.CaptionWriter.Format;
+import org.nuxeo.labs.ai.transcribe.Transcript;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.nuxeo.ai.metadata.Caption.VTT_KEY_PROP;
+
+/**
+ * Builds the source captions of a transcribed document and emits one record per language to translate.
+ */
+public class CaptionSegmentComputation extends AbstractComputation {
+
+    private static final Logger log = LogManager.getLogger(CaptionSegmentComputation.class);
+
+    public static final String NAME = "aiCaptionSegment";
+
+    protected final ExtendedDocumentTranscribed captions = new ExtendedDocumentTranscribed();
+
+    protected final CaptionJobStore store = new CaptionJobStore();
+
+    public CaptionSegmentComputation() {
+        super(NAME, 1, 2);
+    }
+
+    @Override
+    public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+        CaptionMessage message = CaptionStreams.fromRecord(record);
+        CaptionMessage job = TransactionHelper.runInTransaction(
+                () -> CoreInstance.doPrivileged(message.getRepository(), session -> {
+                    IdRef ref = new IdRef(message.getDocId());
+                    return session.exists(ref) ? segment(session.getDocument(ref), message) : null;
+                }));
+        if (job != null) {
+            for (String destLang : job.getLanguages()) {
+                CaptionMessage translation = job.withDestLang(destLang);
+                context.produceRecord(OUTPUT_1, CaptionStreams.toRecord(job.getDocId() + ":" + destLang, translation));
+            }
+            // starts the aggregation, which also saves the source captions when there is nothing to translate
+            context.produceRecord(OUTPUT_2, CaptionStreams.toRecord(job.getDocId(), job));
+        }
+        context.askForCheckpoint();
+    }
+
+    /**
+     * @return the caption job, or {@code null} if the captions of the document are up to date
+     */
+    protected CaptionMessage segment(DocumentModel doc, CaptionMessage message) {
+        Transcript transcript = captions.readTranscript(doc, message.getProvider());
+        if (transcript == null) {
+            return null;
+        }
+        String srcLang = captions.getSourceLanguage(transcript);
+        if (srcLang == null) {
+            log.debug("No language code in RAW transcription for document id = {}", doc.getId());
+            return null;
+        }
+        List<Caption> sourceCaptions = captions.buildSourceCaptions(transcript);
+
+        Blob sourceCaptionsFile = captions.write(sourceCaptions, List.of(Format.VTT)).get(Format.VTT);
+        Map<String, Map<String, Serializable>> existing = captions.getExistingCaptions(doc);
+        boolean sourceUnchanged = existing.containsKey(srcLang)
+                && captions.sameContent(sourceCaptionsFile, (Blob) existing.get(srcLang).get(VTT_KEY_PROP));
+        List<String> languages = captions.getTargetLanguages(srcLang, existing, sourceUnchanged);
+        if (sourceUnchanged && languages.isEmpty()) {
+            log.debug("Captions are up to date for document id = {}", doc.getId());
+            return null;
+        }
+
+        CaptionMessage job = message.withJob(UUID.randomUUID().toString(), srcLang, languages, sourceUnchanged);
+        store.putSource(job.getJobId(), sourceCaptions);
+        store.putJob(job, System.currentTimeMillis() + captions.getTranslationTimeout());
+        return job;
+    }
+}
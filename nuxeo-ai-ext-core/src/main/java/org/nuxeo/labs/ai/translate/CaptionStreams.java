@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.translate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+import org.nuxeo.runtime.stream.StreamService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_2;
+
+/**
+ * Builds and translates the captions of transcribed documents with stream computations instead of the listener:
+ * <ul>
+ * <li>the segment computation builds the source captions and emits one record per target language</li>
+ * <li>the translate computations translate the captions to one language, spread over the cluster by partition</li>
+ * <li>the aggregate computation saves all the captions on the document at once, when all the languages are
+ * translated or when the translation timeout is reached</li>
+ * </ul>
+ */
+public class CaptionStreams implements StreamProcessorTopology {
+
+    public static final String ENABLED_PROPERTY = "nuxeo.ai.ext.captions.stream.enabled";
+
+    public static final String SOURCE_STREAM = "aiext/captions";
+
+    public static final String TRANSLATE_STREAM = "aiext/captions-translate";
+
+    public static final String AGGREGATE_STREAM = "aiext/captions-aggregate";
+
+    /** Interval in milliseconds between two sweeps of the overdue caption jobs. */
+    public static final String SWEEP_INTERVAL_OPTION = "sweepInterval";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        long sweepInterval = Long.parseLong(options.getOrDefault(SWEEP_INTERVAL_OPTION, "60000"));
+        return Topology.builder()
+                       .addComputation(CaptionSegmentComputation::new,
+                               List.of(INPUT_1 + ":" + SOURCE_STREAM, OUTPUT_1 + ":" + TRANSLATE_STREAM,
+                                       OUTPUT_2 + ":" + AGGREGATE_STREAM))
+                       .addComputation(CaptionTranslateComputation::new,
+                               List.of(INPUT_1 + ":" + TRANSLATE_STREAM, OUTPUT_1 + ":" + AGGREGATE_STREAM))
+                       .addComputation(() -> new CaptionAggregateComputation(sweepInterval),
+                               List.of(INPUT_1 + ":" + AGGREGATE_STREAM))
+                       .build();
+    }
+
+    public static boolean isEnabled() {
+        return Framework.isBooleanPropertyTrue(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Appends a transcribed document to the source stream.
+     */
+    public static void submit(CaptionMessage message) {
+        Framework.getService(StreamService.class)
+                 .getStreamManager()
+                 .append(SOURCE_STREAM, toRecord(message.getDocId(), message));
+    }
+
+    public static Record toRecord(String key, CaptionMessage message) {
+        try {
+            return Record.of(key, OBJECT_MAPPER.writeValueAsBytes(message));
+        } catch (IOException e) {
+            throw new NuxeoException("Could not write caption message of document id = " + message.getDocId(), e);
+        }
+    }
+
+    public static CaptionMessage fromRecord(Record record) {
+        try {
+            return OBJECT_MAPPER.readValue(record.getData(), CaptionMessage.class);
+        } catch (IOException e) {
+            throw new NuxeoException("Could not read caption message " + record.getKey(), e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.translate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.metadata.Caption;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.runtime.api.Framework;
+
+import java.util.List;
+
+/**
+ * Translates the captions of a job to one language. A failure is retried for this language only, following the policy
+ * of the computation.
+ */
+public class CaptionTranslateComputation extends AbstractComputation {
+
+    private static final Logger log = LogManager.getLogger(CaptionTranslateComputation.class);
+
+    public static final String NAME = "aiCaptionTranslate";
+
+    protected final ExtendedDocumentTranscribed captions = new ExtendedDocumentTranscribed();
+
+    protected final CaptionJobStore store = new CaptionJobStore();
+
+    public CaptionTranslateComputation() {
+        super(NAME, 1, 1);
+    }
+
+    @Override
+    public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+        CaptionMessage message = CaptionStreams.fromRecord(record);
+        List<Caption> sourceCaptions = store.getSource(message.getJobId());
+        if (sourceCaptions == null || store.isDone(message.getJobId())) {
+            log.debug("Caption job {} of document id = {} is over, skipping {}", message.getJobId(),
+                    message.getDocId(), message.getDestLang());
+        } else {
+            List<String> lines = Framework.getService(TranslationMemoryService.class)
+                                          .translateLines(captions.getLines(sourceCaptions), message.getSrcLang(),
+                                                  message.getDestLang());
+            store.putTranslation(message.getJobId(), message.getDestLang(), lines);
+            context.produceRecord(OUTPUT_1, CaptionStreams.toRecord(message.getDocId(), message));
+        }
+        context.askForCheckpoint();
+    }
+}
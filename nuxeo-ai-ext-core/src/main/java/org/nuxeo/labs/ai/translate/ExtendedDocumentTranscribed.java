@@ -19,7 +19,8 @@
 
 package org.nuxeo.labs.ai.translate;
 
-import com.amazonaws.services.translate.model.TranslateTextResult;
+import io.dropwizard.metrics5.Timer;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -27,23 +28,34 @@ import org.nuxeo.ai.enrichment.EnrichmentProvider;
 import org.nuxeo.ai.listeners.DocumentTranscribed;
 import org.nuxeo.ai.metadata.Caption;
 import org.nuxeo.ai.services.AIComponent;
-import org.nuxeo.ai.services.CaptionService;
 import org.nuxeo.ai.transcribe.AudioTranscription;
-import org.nuxeo.ai.translate.TranslateService;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.model.Property;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventContext;
+import org.nuxeo.ecm.core.event.PostCommitFilteringEventListener;
 import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
-import org.nuxeo.labs.ai.enricher.TranscribeEnrichmentProviderExt;
+import org.nuxeo.labs.ai.captions.CaptionWriter;
+import org.nuxeo.labs.ai.captions.CaptionWriter.Format;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.labs.ai.transcribe.Transcript;
+import org.nuxeo.labs.ai.transcribe.TranscriptParser;
 import org.nuxeo.runtime.api.Framework;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -55,126 +67,358 @@ import static org.nuxeo.ai.listeners.VideoAboutToChange.CAPTIONABLE_FACET;
 import static org.nuxeo.ai.metadata.Caption.CAPTIONS_PROP;
 import static org.nuxeo.ai.metadata.Caption.VTT_KEY_PROP;
 import static org.nuxeo.ai.transcribe.AudioTranscription.Type.PRONUNCIATION;
+import static org.nuxeo.ai.transcribe.AudioTranscription.Type.PUNCTUATION;
 import static org.nuxeo.ecm.core.event.impl.DocumentEventContext.COMMENT_PROPERTY_KEY;
 
-public class ExtendedDocumentTranscribed extends DocumentTranscribed {
+public class ExtendedDocumentTranscribed extends DocumentTranscribed implements PostCommitFilteringEventListener {
 
     public static final String CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES = "closed.caption.ai.translation.languages";
+
+    public static final String CLOSED_CAPTION_AI_TRANSLATION_TIMEOUT = "closed.caption.ai.translation.timeout";
+
+    /** Caption formats written besides VTT, comma separated among {@code srt} and {@code ttml}. */
+    public static final String CLOSED_CAPTION_FORMATS = "nuxeo.ai.ext.captions.formats";
+
+    public static final String CAPTION_FORMATS_FACET = "CaptionFormats";
+
+    public static final String CAPTION_FORMATS_PROP = "capf:files";
+
+    protected static final String FORMAT_KEY = "format";
+
+    protected static final String CONTENT_KEY = "content";
+
+    protected static final String MODEL_PROPERTY = "model";
+
+    protected static final String RAW_PROPERTY = "raw";
+
     private static final Logger log = LogManager.getLogger(ExtendedDocumentTranscribed.class);
 
+    /**
+     * Keeps only the enrichments of transcription providers, from the event context alone, so that the enrichments of
+     * all the other providers are not queued for the asynchronous listener.
+     */
+    @Override
+    public boolean acceptEvent(Event event) {
+        return event.getContext() instanceof DocumentEventContext docCtx && isTranscription(getProviderName(docCtx));
+    }
+
     @Override
     protected void handleEvent(Event event) {
         EventContext ctx = event.getContext();
         if (!(ctx instanceof DocumentEventContext docCtx)) {
             return;
         }
+        String providerName = getProviderName(docCtx);
+        if (!isTranscription(providerName)) {
+            return;
+        }
+
         DocumentModel doc = docCtx.getSourceDocument();
         if (!doc.hasFacet(CAPTIONABLE_FACET) || !doc.hasFacet(ENRICHMENT_FACET)) {
             return;
         }
 
+        if (CaptionStreams.isEnabled()) {
+            // the captions are built and translated by the stream computations of the cluster
+            CaptionStreams.submit(new CaptionMessage(doc.getRepositoryName(), doc.getId(), providerName));
+            return;
+        }
 
-        String providerName =docCtx.getProperty(COMMENT_PROPERTY_KEY).toString();
-
-        if (StringUtils.isEmpty(providerName)) {
+        Transcript transcript = readTranscript(doc, providerName);
+        if (transcript == null) {
             return;
         }
+        String srcLang = getSourceLanguage(transcript);
+        if (srcLang == null) {
+            log.debug("No language code in RAW transcription for document id = " + doc.getId());
+            return;
+        }
+
+        List<Caption> captions = buildSourceCaptions(transcript);
 
-        AIComponent aiComponent = Framework.getService(AIComponent.class);
-        EnrichmentProvider provider = aiComponent.getEnrichmentProvider(providerName);
+        List<String> captionsText = getLines(captions);
 
+        TranslationMemoryService translationMemory = Framework.getService(TranslationMemoryService.class);
 
-        if (!PROVIDER_KIND.equals(provider.getKind())) {
+        // captions already on the document are kept as long as the source transcript did not change
+        Map<Format, Blob> sourceCaptionsFiles = write(captions);
+        Map<String, Map<String, Serializable>> existing = getExistingCaptions(doc);
+        boolean sourceUnchanged = existing.containsKey(srcLang)
+                && sameContent(sourceCaptionsFiles.get(Format.VTT), (Blob) existing.get(srcLang).get(VTT_KEY_PROP));
+
+        List<Map<String, Serializable>> allCaptions = new ArrayList<>();
+        Map<String, Map<Format, Blob>> captionFiles = new HashMap<>();
+        if (sourceUnchanged) {
+            allCaptions.addAll(existing.values());
+        } else {
+            allCaptions.add(newCaption(srcLang, sourceCaptionsFiles, captionFiles));
+        }
+
+        // all the languages are translated concurrently, then the captions are assembled in the configured order.
+        // When the transcript changed, the translation memory only sends the changed caption lines to AWS.
+        // Each language has its own timeout, running from the start of its translation.
+        long timeout = getTranslationTimeout();
+        Map<String, CompletableFuture<List<String>>> translations = new LinkedHashMap<>();
+        for (String destLang : getTargetLanguages(srcLang, existing, sourceUnchanged)) {
+            translations.put(destLang,
+                    translationMemory.translateLinesAsync(captionsText, srcLang, destLang, timeout));
+        }
+
+        if (sourceUnchanged && translations.isEmpty()) {
+            log.debug("Captions are up to date for document id = {}", doc.getId());
             return;
         }
 
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> enrichments = (List<Map<String, Object>>) doc.getProperty(ENRICHMENT_SCHEMA_NAME,
-                ENRICHMENT_ITEMS);
-        List<Blob> raws = enrichments.stream()
-                .filter(en -> providerName.equals(en.getOrDefault("model", "none")))
-                .map(en -> (Blob) en.get("raw"))
-                .toList();
+        // the languages waiting for a translation thread are covered as well
+        long deadline = System.currentTimeMillis() + timeout * translations.size();
+        for (Map.Entry<String, CompletableFuture<List<String>>> entry : translations.entrySet()) {
+            String destLang = entry.getKey();
+            List<String> lines;
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                lines = entry.getValue().get(remaining, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                log.warn("Translation to {} timed out for document id = {}", destLang, doc.getId());
+                continue;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    log.warn("Translation to {} timed out for document id = {}", destLang, doc.getId());
+                } else {
+                    log.warn("Translation to {} failed for document id = {}", destLang, doc.getId(), e.getCause());
+                }
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException("Interrupted while translating captions of document id = " + doc.getId(), e);
+            }
 
-        if (raws.isEmpty()) {
-            log.debug("Could not find RAW transcription for document id = " + doc.getId());
+            allCaptions.add(newCaption(destLang, write(translate(captions, lines)), captionFiles));
+        }
+
+        if (sourceUnchanged && allCaptions.size() == existing.size()) {
+            log.debug("No new caption language for document id = {}", doc.getId());
             return;
         }
-        Blob json = raws.get(0);
+
+        saveCaptions(doc, allCaptions, captionFiles);
+    }
+
+    protected String getProviderName(DocumentEventContext docCtx) {
+        Serializable providerName = docCtx.getProperty(COMMENT_PROPERTY_KEY);
+        return providerName == null ? null : providerName.toString();
+    }
+
+    protected boolean isTranscription(String providerName) {
+        if (StringUtils.isEmpty(providerName)) {
+            return false;
+        }
+        EnrichmentProvider provider = Framework.getService(AIComponent.class).getEnrichmentProvider(providerName);
+        return provider != null && PROVIDER_KIND.equals(provider.getKind());
+    }
+
+    /**
+     * @return the transcript of the provider saved as a raw enrichment on the document, or {@code null} if there is
+     *         none
+     */
+    protected Transcript readTranscript(DocumentModel doc, String providerName) {
+        Blob json = getRawBlob(doc, providerName);
         if (json == null) {
-            return;
+            log.debug("Could not find RAW transcription for document id = " + doc.getId());
+            return null;
         }
 
-        AudioTranscription at;
-        try {
-            at = OBJECT_MAPPER.readValue(json.getString(), AudioTranscription.class);
+        try (InputStream in = json.getStream()) {
+            return TranscriptParser.parse(in);
         } catch (IOException e) {
             log.error(e);
-            return;
+            return null;
         }
+    }
 
-        String srcLang = at.getResults().getLanguageCode();
-        if (srcLang.length() > 2) {
-            srcLang = srcLang.substring(0, 2);
+    /**
+     * @return the two-letter language of the transcript, or {@code null} if unknown
+     */
+    protected String getSourceLanguage(Transcript transcript) {
+        String srcLang = transcript.getLanguageCode();
+        if (StringUtils.isEmpty(srcLang)) {
+            return null;
         }
+        return srcLang.length() > 2 ? srcLang.substring(0, 2) : srcLang;
+    }
 
-        List<Element> elements = at.getResults().getItems().stream().map(item -> {
-            float st = 0L;
-            float et = 0L;
-            AudioTranscription.Type type = item.getType();
-            if (PRONUNCIATION.equals(type)) {
-                st = Float.parseFloat(item.getStartTime());
-                et = Float.parseFloat(item.getEndTime());
+    /**
+     * @return the raw blob of the first enrichment of the model; only the model of the other enrichments is read, not
+     *         their suggestions
+     */
+    protected Blob getRawBlob(DocumentModel doc, String model) {
+        Property items = doc.getPropertyObject(ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS);
+        if (items == null) {
+            return null;
+        }
+        for (Property item : items) {
+            if (model.equals(item.get(MODEL_PROPERTY).getValue())) {
+                return (Blob) item.get(RAW_PROPERTY).getValue();
             }
+        }
+        return null;
+    }
 
-            String content = item.getContent();
-            return new Element((long) (st * 1000), (long) (et * 1000), type, content);
-        }).collect(Collectors.toList());
+    protected List<Caption> buildSourceCaptions(Transcript transcript) {
+        try (Timer.Context ignored = AIExtMetrics.CAPTIONS_BUILD.time()) {
+            return buildCaptions(toElements(transcript));
+        }
+    }
 
-        List<Caption> captions = buildCaptions(elements);
+    /**
+     * @return the configured languages to translate the captions to, skipping the ones still valid on the document
+     */
+    protected List<String> getTargetLanguages(String srcLang, Map<String, Map<String, Serializable>> existing,
+            boolean sourceUnchanged) {
+        String[] languages = Framework.getProperty(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES, "").split(",");
+        List<String> targets = new ArrayList<>();
+        for (String destLang : languages) {
+            destLang = destLang.trim();
+            if (destLang.isEmpty() || destLang.equals(srcLang) || targets.contains(destLang)
+                    || sourceUnchanged && existing.containsKey(destLang)) {
+                continue;
+            }
+            targets.add(destLang);
+        }
+        return targets;
+    }
 
-        List<String> captionsText = captions.stream().map(
-                caption -> caption.getLines().get(0)).collect(Collectors.toList()
-        );
+    protected long getTranslationTimeout() {
+        return Long.parseLong(Framework.getProperty(CLOSED_CAPTION_AI_TRANSLATION_TIMEOUT, "300")) * 1000;
+    }
 
-        TranslateService translateService = Framework.getService(TranslateService.class);
-        CaptionService cs = Framework.getService(CaptionService.class);
+    protected List<String> getLines(List<Caption> captions) {
+        return captions.stream().map(caption -> caption.getLines().get(0)).collect(Collectors.toList());
+    }
 
-        String[] languages = Framework.getProperty(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES, "").split(",");
+    /**
+     * @return the captions with the timing of the source captions and the translated lines
+     */
+    protected List<Caption> translate(List<Caption> captions, List<String> lines) {
+        return IntStream
+                .range(0, lines.size())
+                .mapToObj(i -> {
+                    Caption srcCaption = captions.get(i);
+                    return new Caption(srcCaption.getStart(), srcCaption.getEnd(), List.of(lines.get(i)));
+                })
+                .collect(Collectors.toList());
+    }
 
-        List<Map<String, Serializable>> allCaptions = new ArrayList<>();
-        Map<String, Serializable> original = new HashMap<>();
-        original.put(LANGUAGE_KEY, srcLang);
-        original.put(VTT_KEY_PROP, (Serializable) cs.write(captions));
-        allCaptions.add(original);
+    /**
+     * @param captionFiles collects the files of the formats other than VTT, by language
+     * @return the caption entry of the language
+     */
+    protected Map<String, Serializable> newCaption(String lang, Map<Format, Blob> files,
+            Map<String, Map<Format, Blob>> captionFiles) {
+        Map<String, Serializable> caption = new HashMap<>();
+        caption.put(LANGUAGE_KEY, lang);
+        caption.put(VTT_KEY_PROP, (Serializable) files.get(Format.VTT));
+        captionFiles.put(lang, files);
+        return caption;
+    }
 
-        for (String destLang : languages) {
-            if (destLang.equals(srcLang)) {
-                continue;
+    /**
+     * Saves the captions, and the files of the other formats when configured. The files of the other formats of the
+     * languages kept from the document are kept as well.
+     */
+    protected void saveCaptions(DocumentModel doc, List<Map<String, Serializable>> allCaptions,
+            Map<String, Map<Format, Blob>> captionFiles) {
+        doc.setPropertyValue(CAPTIONS_PROP, (Serializable) allCaptions);
+        if (getFormats().size() > 1) {
+            List<Map<String, Serializable>> formatFiles = new ArrayList<>();
+            for (Map<String, Serializable> caption : allCaptions) {
+                String lang = (String) caption.get(LANGUAGE_KEY);
+                Map<Format, Blob> files = captionFiles.get(lang);
+                if (files == null) {
+                    formatFiles.addAll(getExistingFormatFiles(doc, lang));
+                    continue;
+                }
+                files.forEach((format, blob) -> {
+                    if (format != Format.VTT) {
+                        formatFiles.add(Map.of(LANGUAGE_KEY, lang, FORMAT_KEY, format.getExtension(), CONTENT_KEY,
+                                (Serializable) blob));
+                    }
+                });
+            }
+            if (!doc.hasFacet(CAPTION_FORMATS_FACET)) {
+                doc.addFacet(CAPTION_FORMATS_FACET);
             }
+            doc.setPropertyValue(CAPTION_FORMATS_PROP, (Serializable) formatFiles);
+        }
+        try (Timer.Context ignored = AIExtMetrics.CAPTIONS_SAVE.time()) {
+            doc.getCoreSession().saveDocument(doc);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<Map<String, Serializable>> getExistingFormatFiles(DocumentModel doc, String lang) {
+        if (!doc.hasFacet(CAPTION_FORMATS_FACET)) {
+            return List.of();
+        }
+        List<Map<String, Serializable>> files = (List<Map<String, Serializable>>) doc.getPropertyValue(
+                CAPTION_FORMATS_PROP);
+        return files == null ? List.of() : files.stream().filter(file -> lang.equals(file.get(LANGUAGE_KEY))).toList();
+    }
+
+    /**
+     * @return the configured caption formats, VTT first
+     */
+    protected List<Format> getFormats() {
+        return Format.parse(Framework.getProperty(CLOSED_CAPTION_FORMATS, "vtt"));
+    }
 
-            TranslateTextResult result = translateService.translateText(String.join("\n", captionsText), srcLang, destLang);
-            String text = result.getTranslatedText();
-            List<String> lines = List.of(text.split("\n"));
-            List<Caption> translatedCaptions = IntStream
-                    .range(0, lines.size())
-                    .mapToObj(i -> {
-                        Caption srcCaption = captions.get(i);
-                        return new Caption(srcCaption.getStart(), srcCaption.getEnd(), List.of(lines.get(i)));
-                    })
-                    .collect(Collectors.toList());
+    protected Map<Format, Blob> write(List<Caption> captions) {
+        return write(captions, getFormats());
+    }
 
-            Blob translatedCaptionsFile = cs.write(translatedCaptions);
+    /**
+     * Writes the captions to temporary files in a single pass over the captions.
+     */
+    protected Map<Format, Blob> write(List<Caption> captions, List<Format> formats) {
+        try (Timer.Context ignored = AIExtMetrics.CAPTIONS_WRITE.time()) {
+            return CaptionWriter.write(captions, formats);
+        } catch (IOException e) {
+            throw new NuxeoException("Could not write captions", e);
+        }
+    }
 
-            Map<String, Serializable> translation = new HashMap<>();
-            translation.put(LANGUAGE_KEY, destLang);
-            translation.put(VTT_KEY_PROP, (Serializable) translatedCaptionsFile);
+    @SuppressWarnings("unchecked")
+    protected Map<String, Map<String, Serializable>> getExistingCaptions(DocumentModel doc) {
+        Map<String, Map<String, Serializable>> existing = new LinkedHashMap<>();
+        List<Map<String, Serializable>> captions = (List<Map<String, Serializable>>) doc.getPropertyValue(
+                CAPTIONS_PROP);
+        if (captions != null) {
+            captions.stream()
+                    .filter(caption -> caption.get(LANGUAGE_KEY) != null && caption.get(VTT_KEY_PROP) != null)
+                    .forEach(caption -> existing.putIfAbsent((String) caption.get(LANGUAGE_KEY), caption));
+        }
+        return existing;
+    }
 
-            allCaptions.add(translation);
+    protected boolean sameContent(Blob blob, Blob other) {
+        if (blob.getLength() >= 0 && other.getLength() >= 0 && blob.getLength() != other.getLength()) {
+            return false;
         }
+        try (InputStream in = blob.getStream(); InputStream otherIn = other.getStream()) {
+            return DigestUtils.sha256Hex(in).equals(DigestUtils.sha256Hex(otherIn));
+        } catch (IOException e) {
+            log.debug("Could not compare captions", e);
+            return false;
+        }
+    }
 
-        doc.setPropertyValue(CAPTIONS_PROP, (Serializable) allCaptions);
-        doc.getCoreSession().saveDocument(doc);
+    protected List<Element> toElements(Transcript transcript) {
+        List<Element> elements = new ArrayList<>(transcript.size());
+        for (int i = 0; i < transcript.size(); i++) {
+            AudioTranscription.Type type = transcript.isPronunciation(i) ? PRONUNCIATION : PUNCTUATION;
+            elements.add(new Element(transcript.getStart(i), transcript.getEnd(i), type, transcript.getContent(i)));
+        }
+        return elements;
     }
 
 }
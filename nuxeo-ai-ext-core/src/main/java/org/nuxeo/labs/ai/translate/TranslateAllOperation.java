@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.translate;
+
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.StringList;
+
+/**
+ * Batch counterpart of {@code Translate.translateAll} for chains.
+ */
+@Operation(id = TranslateAllOperation.ID, category = "AI", label = "Translate all",
+        description = "Translates a list of texts with a few concurrent requests, returning the translations in order.")
+public class TranslateAllOperation {
+
+    public static final String ID = "AI.TranslateAll";
+
+    @Context
+    protected TranslationMemoryService translationMemory;
+
+    @Param(name = "sourceLanguage")
+    protected String sourceLanguage;
+
+    @Param(name = "targetLanguage")
+    protected String targetLanguage;
+
+    @OperationMethod
+    public StringList run(StringList texts) {
+        return new StringList(translationMemory.translateAll(texts, sourceLanguage, targetLanguage));
+    }
+
+}
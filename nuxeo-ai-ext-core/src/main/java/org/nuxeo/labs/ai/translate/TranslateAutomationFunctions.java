@@ -19,19 +19,53 @@
 
 package org.nuxeo.labs.ai.translate;
 
-import com.amazonaws.services.translate.model.TranslateTextResult;
-import org.nuxeo.ai.translate.TranslateService;
 import org.nuxeo.ecm.automation.context.ContextHelper;
 import org.nuxeo.runtime.api.Framework;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 public class TranslateAutomationFunctions implements ContextHelper {
 
+    protected volatile TranslationMemoryService translationMemory;
+
     public TranslateAutomationFunctions() {}
 
     public String translate(String src, String srcLang, String destLang) {
-        TranslateService translateService = Framework.getService(TranslateService.class);
-        TranslateTextResult result = translateService.translateText(src, srcLang, destLang);
-        return result.getTranslatedText();
+        return getTranslationMemory().translate(src, srcLang, destLang);
+    }
+
+    /**
+     * Translates all the texts with a few concurrent requests.
+     *
+     * @return the translations, in the order of the texts
+     */
+    public List<String> translateAll(List<String> texts, String srcLang, String destLang) {
+        return getTranslationMemory().translateAll(texts, srcLang, destLang);
+    }
+
+    /**
+     * Translates the text to each language concurrently.
+     *
+     * @return the translations by language
+     */
+    public Map<String, String> translateTo(String text, String srcLang, List<String> destLangs) {
+        return getTranslationMemory().translateTo(text, srcLang, destLangs);
+    }
+
+    /**
+     * Same as {@link #translateTo(String, String, List)} with comma separated languages.
+     */
+    public Map<String, String> translateTo(String text, String srcLang, String destLangs) {
+        return translateTo(text, srcLang, Arrays.asList(destLangs.split(",")));
+    }
+
+    protected TranslationMemoryService getTranslationMemory() {
+        if (translationMemory == null) {
+            translationMemory = Framework.getService(TranslationMemoryService.class);
+        }
+        return translationMemory;
     }
 
 }
@@ -0,0 +1,158 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.translate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs lines into chunks whose UTF-8 size, separators included, stays under the size limit of a translation request.
+ * Each chunk holds the indices of its lines so that translations can be put back in place.
+ */
+public class TranslationChunker {
+
+    private TranslationChunker() {
+        // utility class
+    }
+
+    /**
+     * @return the chunks as arrays of line indices, in line order; a line larger than the limit gets a chunk of its own,
+     *         to be {@link #split(String, int) split}
+     */
+    public static List<int[]> chunk(List<String> lines, int maxBytes) {
+        List<int[]> chunks = new ArrayList<>();
+        int[] current = new int[16];
+        int count = 0;
+        int size = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            int lineSize = utf8Length(lines.get(i));
+            int newSize = count == 0 ? lineSize : size + 1 + lineSize;
+            if (count > 0 && newSize > maxBytes) {
+                chunks.add(Arrays.copyOf(current, count));
+                count = 0;
+                newSize = lineSize;
+            }
+            if (count == current.length) {
+                current = Arrays.copyOf(current, count * 2);
+            }
+            current[count++] = i;
+            size = newSize;
+        }
+        if (count > 0) {
+            chunks.add(Arrays.copyOf(current, count));
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits a line larger than the limit into pieces under the limit, preferably after the end of a sentence, else at
+     * a space, else between two characters. The pieces are trimmed, so that they can be joined back with a space.
+     */
+    public static List<String> split(String line, int maxBytes) {
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < line.length()) {
+            if (Character.isWhitespace(line.charAt(start))) {
+                start++;
+                continue;
+            }
+            int end = fit(line, start, maxBytes);
+            if (end < line.length()) {
+                int cut = lastBoundary(line, start, end);
+                if (cut > start) {
+                    end = cut;
+                }
+            }
+            String piece = line.substring(start, end).trim();
+            if (!piece.isEmpty()) {
+                pieces.add(piece);
+            }
+            start = end;
+        }
+        return pieces;
+    }
+
+    /**
+     * @return the end of the longest text from start under the limit, at least one character, never inside a
+     *         surrogate pair
+     */
+    protected static int fit(String line, int start, int maxBytes) {
+        int size = 0;
+        int i = start;
+        while (i < line.length()) {
+            int next = Character.isHighSurrogate(line.charAt(i)) && i + 1 < line.length() ? i + 2 : i + 1;
+            size += utf8Length(line.subSequence(i, next));
+            if (size > maxBytes && i > start) {
+                break;
+            }
+            i = next;
+        }
+        return i;
+    }
+
+    /**
+     * @return the position of the last sentence end in the second half of the text, else of the last space, else
+     *         {@code -1}
+     */
+    protected static int lastBoundary(String line, int start, int end) {
+        int space = -1;
+        for (int i = end; i > start; i--) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                if (isSentenceEnd(line.charAt(i - 1)) && i - start > (end - start) / 2) {
+                    return i;
+                }
+                if (space < 0) {
+                    space = i;
+                }
+            } else if (isCJKSentenceEnd(line.charAt(i - 1)) && i - start > (end - start) / 2) {
+                // no space after the end of a sentence in Chinese and Japanese
+                return i;
+            }
+        }
+        return space;
+    }
+
+    protected static boolean isSentenceEnd(char c) {
+        return c == '.' || c == '!' || c == '?' || isCJKSentenceEnd(c);
+    }
+
+    protected static boolean isCJKSentenceEnd(char c) {
+        return c == '\u3002' || c == '\uFF01' || c == '\uFF1F';
+    }
+
+    public static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.translate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Translation memory in front of {@link org.nuxeo.ai.translate.TranslateService}: translations are looked up in a
+ * bounded in-heap cache, then in a cluster-wide key/value store, before calling AWS.
+ */
+public interface TranslationMemoryService {
+
+    /**
+     * Translates the text, reusing a previous translation of the same text when available. When segment granularity
+     * is enabled, each line of a multi-line text is looked up on its own and only the missing lines are translated.
+     */
+    String translate(String text, String srcLang, String destLang);
+
+    /**
+     * Same as {@link #translate(String, String, String)}, run on the bounded translation executor.
+     */
+    CompletableFuture<String> translateAsync(String text, String srcLang, String destLang);
+
+    /**
+     * Translates each line, packing the lines into requests close to the request size limit which are run
+     * concurrently on the translation executor.
+     *
+     * @return the translations, one per line and in the same order
+     */
+    CompletableFuture<List<String>> translateLinesAsync(List<String> lines, String srcLang, String destLang);
+
+    /**
+     * Same as {@link #translateLinesAsync(List, String, String)}, failing with a
+     * {@link java.util.concurrent.TimeoutException} when the translation takes more than the timeout. The timeout runs
+     * from the first request, so that a translation waiting for a thread keeps its whole budget. A translation that
+     * times out, or whose future is cancelled, interrupts its running requests.
+     *
+     * @param timeout the timeout in milliseconds, {@code 0} for none
+     */
+    CompletableFuture<List<String>> translateLinesAsync(List<String> lines, String srcLang, String destLang,
+            long timeout);
+
+    /**
+     * Same as {@link #translateLinesAsync(List, String, String)}, waiting for the result.
+     */
+    List<String> translateLines(List<String> lines, String srcLang, String destLang);
+
+    /**
+     * Translates each text, multi-line texts included, packing all their lines into requests like
+     * {@link #translateLinesAsync(List, String, String)}. Blank lines and {@code null} texts are kept as is.
+     *
+     * @return the translations, one per text and in the same order
+     */
+    CompletableFuture<List<String>> translateAllAsync(List<String> texts, String srcLang, String destLang);
+
+    /**
+     * Same as {@link #translateAllAsync(List, String, String)}, waiting for the result.
+     */
+    List<String> translateAll(List<String> texts, String srcLang, String destLang);
+
+    /**
+     * Translates the text to each language concurrently.
+     *
+     * @return the translations by language, in the order of the languages
+     */
+    Map<String, String> translateTo(String text, String srcLang, List<String> destLangs);
+
+    /**
+     * @return the ratio of lookups served by the translation memory since startup
+     */
+    double getHitRate();
+
+}
@@ -0,0 +1,464 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.translate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.translate.TranslateService;
+import org.nuxeo.labs.ai.governor.AWSGovernor;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+public class TranslationMemoryServiceImpl extends DefaultComponent implements TranslationMemoryService {
+
+    private static final Logger log = LogManager.getLogger(TranslationMemoryServiceImpl.class);
+
+    public static final String ENABLED_PROPERTY = "nuxeo.ai.ext.translation.memory.enabled";
+
+    public static final String HEAP_SIZE_PROPERTY = "nuxeo.ai.ext.translation.memory.heap.size";
+
+    public static final String HEAP_TTL_PROPERTY = "nuxeo.ai.ext.translation.memory.heap.ttl";
+
+    public static final String STORE_TTL_PROPERTY = "nuxeo.ai.ext.translation.memory.store.ttl";
+
+    public static final String SEGMENT_PROPERTY = "nuxeo.ai.ext.translation.memory.segment";
+
+    public static final String CONCURRENCY_PROPERTY = "nuxeo.ai.ext.translation.concurrency";
+
+    public static final String CHUNK_MAX_BYTES_PROPERTY = "nuxeo.ai.ext.translation.chunk.maxBytes";
+
+    public static final String KV_STORE_NAME = "aiTranslationMemory";
+
+    protected static final String SEGMENT_SEPARATOR = "\n";
+
+    protected static final int QUEUE_CAPACITY = 1000;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter heapHits = registry.counter(
+            MetricName.build("nuxeo", "ai", "ext", "translation", "memory", "hits", "heap"));
+
+    protected final Counter storeHits = registry.counter(
+            MetricName.build("nuxeo", "ai", "ext", "translation", "memory", "hits", "store"));
+
+    protected final Counter misses = registry.counter(
+            MetricName.build("nuxeo", "ai", "ext", "translation", "memory", "misses"));
+
+    protected boolean enabled;
+
+    protected boolean segmentGranularity;
+
+    protected long storeTTL;
+
+    protected int chunkMaxBytes;
+
+    protected Cache<String, String> heapCache;
+
+    protected ThreadPoolExecutor executor;
+
+    protected ScheduledExecutorService timer;
+
+    @Override
+    public void start(ComponentContext context) {
+        enabled = Boolean.parseBoolean(Framework.getProperty(ENABLED_PROPERTY, "true"));
+        segmentGranularity = Boolean.parseBoolean(Framework.getProperty(SEGMENT_PROPERTY, "true"));
+        storeTTL = Long.parseLong(Framework.getProperty(STORE_TTL_PROPERTY, "7776000")); // 90 days
+        // TranslateText accepts up to 10,000 bytes per request
+        chunkMaxBytes = Integer.parseInt(Framework.getProperty(CHUNK_MAX_BYTES_PROPERTY, "9000"));
+        heapCache = CacheBuilder.newBuilder()
+                                .maximumSize(Long.parseLong(Framework.getProperty(HEAP_SIZE_PROPERTY, "10000")))
+                                .expireAfterAccess(Long.parseLong(Framework.getProperty(HEAP_TTL_PROPERTY, "3600")),
+                                        TimeUnit.SECONDS)
+                                .build();
+        int concurrency = Integer.parseInt(Framework.getProperty(CONCURRENCY_PROPERTY, "4"));
+        // when the queue is full the translation fails right away instead of running on the caller thread, where no
+        // timeout applies
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY), threadFactory("ai-translation"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                threadFactory("ai-translation-timer"));
+        // a cancelled timeout leaves the queue right away instead of holding its translation until it was due
+        scheduler.setRemoveOnCancelPolicy(true);
+        timer = scheduler;
+    }
+
+    protected static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+        timer.shutdownNow();
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        heapCache.invalidateAll();
+    }
+
+    @Override
+    public CompletableFuture<String> translateAsync(String text, String srcLang, String destLang) {
+        return submit(() -> translate(text, srcLang, destLang));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> translateLinesAsync(List<String> lines, String srcLang, String destLang) {
+        return translateLinesAsync(lines, srcLang, destLang, 0);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> translateLinesAsync(List<String> lines, String srcLang, String destLang,
+            long timeout) {
+        String[] translations = new String[lines.size()];
+        CompletableFuture<List<String>> result = new CompletableFuture<>();
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicReference<Future<?>> timeoutTask = new AtomicReference<>();
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int[] chunk : TranslationChunker.chunk(lines, chunkMaxBytes)) {
+            chunks.add(submit(() -> {
+                if (timeout > 0 && started.compareAndSet(false, true)) {
+                    // the budget starts with the first request, not while waiting for a thread
+                    timeoutTask.set(timer.schedule(() -> result.completeExceptionally(new TimeoutException(
+                            "Translation to " + destLang + " took more than " + timeout + "ms")), timeout,
+                            TimeUnit.MILLISECONDS));
+                    if (result.isDone()) {
+                        // completed before the task was published, whenComplete could not see it
+                        timeoutTask.get().cancel(false);
+                    }
+                }
+                translateChunk(lines, chunk, translations, srcLang, destLang);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).whenComplete((v, e) -> {
+            if (e == null) {
+                result.complete(Arrays.asList(translations));
+            } else {
+                result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            }
+        });
+        // a translation that timed out, failed or was cancelled stops its other requests
+        result.whenComplete((v, e) -> {
+            Future<?> timeoutFuture = timeoutTask.get();
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+            if (e != null) {
+                chunks.forEach(chunk -> chunk.cancel(true));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the task on the translation executor. Unlike the cancellation of a {@link CompletableFuture}, the
+     * cancellation of the returned future interrupts the running task.
+     */
+    protected <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                try {
+                    future.complete(task.get());
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.whenComplete((v, e) -> {
+            if (future.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public List<String> translateLines(List<String> lines, String srcLang, String destLang) {
+        return join(translateLinesAsync(lines, srcLang, destLang));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> translateAllAsync(List<String> texts, String srcLang, String destLang) {
+        String[][] segments = new String[texts.size()][];
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < segments.length; i++) {
+            String text = texts.get(i);
+            if (text == null) {
+                continue;
+            }
+            segments[i] = text.split(SEGMENT_SEPARATOR, -1);
+            Arrays.stream(segments[i]).filter(StringUtils::isNotBlank).forEach(lines::add);
+        }
+        return translateLinesAsync(lines, srcLang, destLang).thenApply(translations -> {
+            Iterator<String> translated = translations.iterator();
+            List<String> result = new ArrayList<>(segments.length);
+            for (String[] textSegments : segments) {
+                if (textSegments == null) {
+                    result.add(null);
+                    continue;
+                }
+                String[] translatedSegments = new String[textSegments.length];
+                for (int j = 0; j < textSegments.length; j++) {
+                    translatedSegments[j] = StringUtils.isBlank(textSegments[j]) ? textSegments[j]
+                            : translated.next();
+                }
+                result.add(String.join(SEGMENT_SEPARATOR, translatedSegments));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<String> translateAll(List<String> texts, String srcLang, String destLang) {
+        return join(translateAllAsync(texts, srcLang, destLang));
+    }
+
+    @Override
+    public Map<String, String> translateTo(String text, String srcLang, List<String> destLangs) {
+        Map<String, CompletableFuture<List<String>>> futures = new LinkedHashMap<>();
+        for (String destLang : destLangs) {
+            destLang = destLang.trim();
+            if (destLang.isEmpty() || futures.containsKey(destLang)) {
+                continue;
+            }
+            futures.put(destLang, destLang.equals(srcLang) ? CompletableFuture.completedFuture(
+                    Collections.singletonList(text))
+                    : translateAllAsync(Collections.singletonList(text), srcLang, destLang));
+        }
+        Map<String, String> translations = new LinkedHashMap<>();
+        futures.forEach((destLang, future) -> translations.put(destLang, join(future).get(0)));
+        return translations;
+    }
+
+    protected <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    /**
+     * Translates the lines of a chunk in one request. If the service merges or splits lines, the lines of the chunk are
+     * translated one by one so that each translation stays aligned with its line. A line larger than a request is
+     * translated in pieces.
+     */
+    protected void translateChunk(List<String> lines, int[] chunk, String[] translations, String srcLang,
+            String destLang) {
+        if (chunk.length == 1 && TranslationChunker.utf8Length(lines.get(chunk[0])) > chunkMaxBytes) {
+            translations[chunk[0]] = translateLargeLine(toSegment(lines.get(chunk[0])), srcLang, destLang);
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < chunk.length; i++) {
+            if (i > 0) {
+                text.append(SEGMENT_SEPARATOR);
+            }
+            text.append(toSegment(lines.get(chunk[i])));
+        }
+        String[] translated = translate(text.toString(), srcLang, destLang).split(SEGMENT_SEPARATOR, -1);
+        if (translated.length == chunk.length) {
+            for (int i = 0; i < chunk.length; i++) {
+                translations[chunk[i]] = translated[i];
+            }
+            return;
+        }
+        log.debug("Translation returned {} lines for a chunk of {} lines; translating them one by one",
+                translated.length, chunk.length);
+        for (int index : chunk) {
+            translations[index] = translate(toSegment(lines.get(index)), srcLang, destLang);
+        }
+    }
+
+    protected String translateLargeLine(String line, String srcLang, String destLang) {
+        List<String> pieces = TranslationChunker.split(line, chunkMaxBytes);
+        log.debug("Translating a line of {} bytes in {} pieces", TranslationChunker.utf8Length(line), pieces.size());
+        List<String> translated = new ArrayList<>(pieces.size());
+        for (String piece : pieces) {
+            translated.add(translate(piece, srcLang, destLang));
+        }
+        return String.join(" ", translated);
+    }
+
+    protected String toSegment(String line) {
+        return line.replace(SEGMENT_SEPARATOR, " ");
+    }
+
+    @Override
+    public String translate(String text, String srcLang, String destLang) {
+        if (!enabled || StringUtils.isBlank(text)) {
+            return request(text, srcLang, destLang);
+        }
+        if (segmentGranularity && text.contains(SEGMENT_SEPARATOR)) {
+            return translateSegments(text, srcLang, destLang);
+        }
+        String key = getKey(text, srcLang, destLang);
+        String translation = lookup(key);
+        if (translation == null) {
+            translation = request(text, srcLang, destLang);
+            store(key, translation);
+        }
+        return translation;
+    }
+
+    /**
+     * Looks up each line on its own and translates the missing ones in a single call. Falls back to the translation of
+     * the whole text if the service does not return one line per missing line.
+     */
+    protected String translateSegments(String text, String srcLang, String destLang) {
+        String[] segments = text.split(SEGMENT_SEPARATOR, -1);
+        String[] keys = new String[segments.length];
+        String[] translations = new String[segments.length];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < segments.length; i++) {
+            if (StringUtils.isBlank(segments[i])) {
+                translations[i] = segments[i];
+                continue;
+            }
+            keys[i] = getKey(segments[i], srcLang, destLang);
+            translations[i] = lookup(keys[i]);
+            if (translations[i] == null) {
+                missing.add(i);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<String> missingSegments = missing.stream().map(i -> segments[i]).toList();
+            String translated = request(String.join(SEGMENT_SEPARATOR, missingSegments), srcLang, destLang);
+            String[] lines = translated.split(SEGMENT_SEPARATOR, -1);
+            if (lines.length != missing.size()) {
+                log.debug("Translation returned {} lines for {} segments; translating the whole text", lines.length,
+                        missing.size());
+                return request(text, srcLang, destLang);
+            }
+            for (int j = 0; j < lines.length; j++) {
+                int i = missing.get(j);
+                translations[i] = lines[j];
+                store(keys[i], lines[j]);
+            }
+        }
+        return String.join(SEGMENT_SEPARATOR, translations);
+    }
+
+    protected String lookup(String key) {
+        String translation = heapCache.getIfPresent(key);
+        if (translation != null) {
+            heapHits.inc();
+            return translation;
+        }
+        translation = getStore().getString(key);
+        if (translation != null) {
+            storeHits.inc();
+            heapCache.put(key, translation);
+            return translation;
+        }
+        misses.inc();
+        return null;
+    }
+
+    protected void store(String key, String translation) {
+        if (translation == null) {
+            return;
+        }
+        heapCache.put(key, translation);
+        getStore().put(key, translation, storeTTL);
+    }
+
+    /**
+     * Calls the translation service within the cluster-wide rate, recording the latency and the characters
+     * translated per language.
+     */
+    protected String request(String text, String srcLang, String destLang) {
+        Framework.getService(AWSGovernor.class).acquire(AWSGovernor.TRANSLATE);
+        AIExtMetrics.translatedCharacters(destLang).inc(text == null ? 0 : text.length());
+        try (Timer.Context ignored = AIExtMetrics.translateLatency(destLang).time()) {
+            return callService(text, srcLang, destLang);
+        }
+    }
+
+    protected String callService(String text, String srcLang, String destLang) {
+        TranslateService translateService = Framework.getService(TranslateService.class);
+        return translateService.translateText(text, srcLang, destLang).getTranslatedText();
+    }
+
+    protected String getKey(String text, String srcLang, String destLang) {
+        return srcLang + ":" + destLang + ":" + DigestUtils.sha256Hex(text);
+    }
+
+    protected KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(KV_STORE_NAME);
+    }
+
+    @Override
+    public double getHitRate() {
+        long hits = heapHits.getCount() + storeHits.getCount();
+        long total = hits + misses.getCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+
+import java.util.Map;
+
+public class TestAudioExtractor {
+
+    @Test
+    public void testKeyDependsOnEncoding() {
+        Blob video = Blobs.createBlob("some video", "video/mp4");
+        video.setFilename("interview.mp4");
+        video.setDigest("0123456789abcdef");
+
+        AudioExtractor flac = AudioExtractor.fromOptions(Map.of());
+        AudioExtractor opus = AudioExtractor.fromOptions(Map.of("audioCodec", "opus", "audioSampleRate", "16000"));
+        AudioExtractor flac8k = AudioExtractor.fromOptions(Map.of("audioSampleRate", "8000"));
+
+        Assert.assertEquals("audio:0123456789abcdef:flac:16000", flac.getKey(video));
+        Assert.assertNotEquals(flac.getKey(video), opus.getKey(video));
+        Assert.assertNotEquals(flac.getKey(video), flac8k.getKey(video));
+
+        Assert.assertEquals("interview.flac", flac.getFilename(video));
+        Assert.assertEquals("interview.ogg", opus.getFilename(video));
+    }
+
+    @Test
+    public void testNoKeyWithoutDigest() {
+        Blob video = Blobs.createBlob("some video", "video/mp4");
+        Assert.assertNull(AudioExtractor.fromOptions(Map.of()).getKey(video));
+        Assert.assertEquals("audio.flac", AudioExtractor.fromOptions(Map.of()).getFilename(video));
+    }
+}
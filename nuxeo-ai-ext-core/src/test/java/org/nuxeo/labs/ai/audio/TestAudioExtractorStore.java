@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy({
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.aws.aws-core"
+})
+public class TestAudioExtractorStore {
+
+    /**
+     * Extractor converting without ffmpeg.
+     */
+    protected static class CountingExtractor extends AudioExtractor {
+
+        protected final AtomicInteger conversions = new AtomicInteger();
+
+        protected CountingExtractor() {
+            super(Codec.FLAC, 16000, DEFAULT_TTL, DEFAULT_BLOB_PROVIDER);
+        }
+
+        @Override
+        protected Blob convert(Blob video) {
+            conversions.incrementAndGet();
+            Blob audio = Blobs.createBlob("audio of " + video.getDigest(), Codec.FLAC.mimeType);
+            audio.setFilename(getFilename(video));
+            return audio;
+        }
+    }
+
+    protected Blob newVideo() {
+        Blob video = Blobs.createBlob("some video", "video/mp4");
+        video.setFilename("interview.mp4");
+        video.setDigest(UUID.randomUUID().toString());
+        return video;
+    }
+
+    @Test
+    public void testStoredAudioIsReused() throws IOException {
+        CountingExtractor extractor = new CountingExtractor();
+        Blob video = newVideo();
+
+        ManagedBlob audio = extractor.extract(video);
+        Assert.assertNotNull(audio);
+        Assert.assertEquals(AudioExtractor.DEFAULT_BLOB_PROVIDER, audio.getProviderId());
+        Assert.assertEquals("interview.flac", audio.getFilename());
+
+        ManagedBlob reused = extractor.extract(video);
+        Assert.assertEquals(1, extractor.conversions.get());
+        Assert.assertEquals(audio.getKey(), reused.getKey());
+        Assert.assertEquals("audio of " + video.getDigest(), reused.getString());
+    }
+
+    @Test
+    public void testDeletedAudioIsExtractedAgain() throws IOException {
+        CountingExtractor extractor = new CountingExtractor();
+        Blob video = newVideo();
+
+        ManagedBlob audio = extractor.extract(video);
+        File stored = audio.getFile();
+        Assert.assertNotNull(stored);
+        Assert.assertTrue(stored.delete());
+
+        // the key/value entry outlived the audio, as when the storage expired it
+        ManagedBlob extracted = extractor.extract(video);
+        Assert.assertEquals(2, extractor.conversions.get());
+        Assert.assertNotNull(extracted);
+        Assert.assertEquals("audio of " + video.getDigest(), extracted.getString());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TestAudioSegmenter {
+
+    protected static final List<String> OUTPUT = List.of(
+            "Input #0, flac, from '/tmp/audio.flac':",
+            "  Duration: 01:00:00.50, start: 0.000000, bitrate: 250 kb/s",
+            "[silencedetect @ 0x55d5] silence_start: -0.01",
+            "[silencedetect @ 0x55d5] silence_end: 1.2 | silence_duration: 1.21",
+            "[silencedetect @ 0x55d5] silence_start: 880",
+            "[silencedetect @ 0x55d5] silence_end: 881 | silence_duration: 1",
+            "[silencedetect @ 0x55d5] silence_start: 905.5",
+            "[silencedetect @ 0x55d5] silence_end: 906.5 | silence_duration: 1",
+            "size=N/A time=01:00:00.50 bitrate=N/A speed= 900x");
+
+    @Test
+    public void testParseOutput() {
+        Assert.assertEquals(3600.5, AudioSegmenter.parseDuration(OUTPUT), 0.001);
+        List<double[]> silences = AudioSegmenter.parseSilences(OUTPUT);
+        Assert.assertEquals(3, silences.size());
+        Assert.assertEquals(0, silences.get(0)[0], 0.001);
+        Assert.assertEquals(906.5, silences.get(2)[1], 0.001);
+    }
+
+    @Test
+    public void testCutsAreMadeInTheClosestSilence() {
+        List<Double> cuts = AudioSegmenter.cutPoints(3600.5, AudioSegmenter.parseSilences(OUTPUT), 900, 60);
+        // the silence at 906s is closer to the target than the one at 880.5s, the next cuts have no silence around
+        // and the last segment is kept under a segment and a half
+        Assert.assertEquals(List.of(0d, 906d, 1806d, 2706d, 3600.5), cuts);
+    }
+
+    @Test
+    public void testShortMediaIsNotCut() {
+        Assert.assertEquals(List.of(0d, 1200d), AudioSegmenter.cutPoints(1200, List.of(), 900, 60));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.bulk;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.lib.stream.log.LogLag;
+import org.nuxeo.lib.stream.log.Name;
+import org.nuxeo.runtime.stream.StreamService;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import javax.inject.Inject;
+import java.time.Duration;
+
+import static org.nuxeo.ecm.core.bulk.message.BulkStatus.State.COMPLETED;
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.ACTION_NAME;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy({
+        "org.nuxeo.ecm.core.bulk",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.aws.aws-core"
+})
+public class TestEnrichmentBackfillAction {
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected BulkService bulkService;
+
+    @Inject
+    protected StreamService streamService;
+
+    protected void createFiles(String folder, int count) {
+        for (int i = 0; i < count; i++) {
+            DocumentModel doc = session.createDocumentModel("/" + folder, "file" + i, "File");
+            doc.setPropertyValue("dc:title", "File " + i);
+            session.createDocument(doc);
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+    }
+
+    protected BulkCommand.Builder command(String folder, String stream) {
+        return new BulkCommand.Builder(ACTION_NAME, "SELECT * FROM File WHERE ecm:path STARTSWITH '/" + folder + "'",
+                session.getPrincipal().getName()).repository(session.getRepositoryName())
+                                                 .param("provider", "aws.transcribeExt")
+                                                 .param("stream", stream)
+                                                 .param("textProperties", "dc:title");
+    }
+
+    protected BulkStatus run(BulkCommand command) throws InterruptedException {
+        String commandId = bulkService.submit(command);
+        Assert.assertTrue(bulkService.await(commandId, Duration.ofSeconds(30)));
+        return bulkService.getStatus(commandId);
+    }
+
+    protected long getRecordCount(String stream) {
+        LogLag lag = streamService.getLogManager().getLag(Name.ofUrn(stream), Name.ofUrn("test/backfill-group"));
+        return lag.lag();
+    }
+
+    @Test
+    public void testRecordsAreAppendedToTheEnrichmentStream() throws InterruptedException {
+        session.createDocument(session.createDocumentModel("/", "files", "Folder"));
+        createFiles("files", 3);
+
+        BulkStatus status = run(command("files", "test/backfill").build());
+        Assert.assertEquals(COMPLETED, status.getState());
+        Assert.assertEquals(3, status.getProcessed());
+        Assert.assertEquals(0, status.getErrorCount());
+        // the bulk action does not call the provider, its enrichment processor consumes the records
+        Assert.assertEquals(3, getRecordCount("test/backfill"));
+    }
+
+    @Test
+    public void testErrorsAreReportedInTheStatus() throws InterruptedException {
+        session.createDocument(session.createDocumentModel("/", "others", "Folder"));
+        createFiles("others", 2);
+
+        // File documents have no video adapter to read transcoded videos from
+        BulkStatus status = run(command("others", "test/backfill-error").param("blobProperties", "MP4")
+                                                                          .param("blobPropertiesType", "video")
+                                                                          .build());
+        Assert.assertEquals(COMPLETED, status.getState());
+        Assert.assertEquals(2, status.getProcessed());
+        Assert.assertEquals(2, status.getErrorCount());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.bulk;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import java.util.List;
+
+import static org.nuxeo.labs.ai.bulk.EnrichmentBackfillAction.ACTION_NAME;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy({
+        "org.nuxeo.ecm.core.bulk",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.aws.aws-core"
+})
+public class TestEnrichmentBackfillValidation {
+
+    protected final EnrichmentBackfillValidation validation = new EnrichmentBackfillValidation();
+
+    protected BulkCommand.Builder command() {
+        return new BulkCommand.Builder(ACTION_NAME, "SELECT * FROM Picture", "Administrator");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProviderIsRequired() {
+        validation.validate(command().build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownProviderIsRejected() {
+        validation.validate(command().param("provider", "unknown").build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamIsRequired() {
+        validation.validate(command().param("provider", "aws.transcribeExt").build());
+    }
+
+    @Test
+    public void testSplit() {
+        Assert.assertEquals(0, EnrichmentBackfillAction.EnrichmentBackfillComputation.split(" ").size());
+        Assert.assertEquals(List.of("file:content", "picture:views"),
+                EnrichmentBackfillAction.EnrichmentBackfillComputation.split("file:content, picture:views"));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.captions;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ai.metadata.Caption;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.labs.ai.captions.CaptionWriter.Format;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(FeaturesRunner.class)
+@Features({ RuntimeFeature.class })
+public class TestCaptionWriter {
+
+    protected final List<Caption> captions = List.of(new Caption(0, 1500, List.of("Hello")),
+            new Caption(3_725_040, 3_727_000, List.of("Fish & chips", "<b>twice</b>")));
+
+    @Test
+    public void testFormatsAlwaysIncludeVtt() {
+        Assert.assertEquals(List.of(Format.VTT), Format.parse(""));
+        Assert.assertEquals(List.of(Format.VTT, Format.SRT, Format.TTML), Format.parse("srt, ttml,vtt"));
+    }
+
+    @Test
+    public void testAllFormatsInOnePass() throws IOException {
+        Map<Format, Blob> blobs = CaptionWriter.write(captions, Format.parse("srt,ttml"));
+
+        Blob vtt = blobs.get(Format.VTT);
+        Assert.assertEquals("text/vtt", vtt.getMimeType());
+        Assert.assertEquals("""
+                WEBVTT
+
+                00:00:00.000 --> 00:00:01.500
+                Hello
+
+                01:02:05.040 --> 01:02:07.000
+                Fish & chips
+                <b>twice</b>
+
+                """, vtt.getString());
+
+        Assert.assertEquals("""
+                1
+                00:00:00,000 --> 00:00:01,500
+                Hello
+
+                2
+                01:02:05,040 --> 01:02:07,000
+                Fish & chips
+                <b>twice</b>
+
+                """, blobs.get(Format.SRT).getString());
+
+        String ttml = blobs.get(Format.TTML).getString();
+        Assert.assertTrue(ttml.startsWith("<?xml"));
+        Assert.assertTrue(ttml.contains(
+                "<p begin=\"01:02:05.040\" end=\"01:02:07.000\">Fish &amp; chips<br/>&lt;b&gt;twice&lt;/b&gt;</p>"));
+        Assert.assertTrue(ttml.endsWith("</tt>\n"));
+    }
+}
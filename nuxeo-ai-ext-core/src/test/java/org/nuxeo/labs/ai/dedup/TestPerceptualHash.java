@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.dedup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+public class TestPerceptualHash {
+
+    protected static BufferedImage picture(int width, int height, boolean inverted) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(inverted ? Color.BLACK : Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(inverted ? Color.WHITE : Color.BLACK);
+        graphics.fillOval(width / 8, height / 8, width / 2, height / 2);
+        graphics.fillRect(width / 2, height * 2 / 3, width / 3, height / 4);
+        graphics.dispose();
+        return image;
+    }
+
+    protected static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+    }
+
+    @Test
+    public void testResizedPictureIsNearDuplicate() {
+        BufferedImage original = picture(640, 480, false);
+        long hash = PerceptualHash.hash(original);
+        Assert.assertEquals(hash, PerceptualHash.hash(picture(640, 480, false)));
+        Assert.assertTrue(PerceptualHash.distance(hash, PerceptualHash.hash(resize(original, 200, 150))) <= 4);
+    }
+
+    @Test
+    public void testDifferentPictureIsFar() {
+        long hash = PerceptualHash.hash(picture(640, 480, false));
+        Assert.assertTrue(PerceptualHash.distance(hash, PerceptualHash.hash(picture(640, 480, true))) > 20);
+    }
+
+    @Test
+    public void testSmallPicture() {
+        // smaller than the hash grid
+        BufferedImage tiny = picture(16, 12, false);
+        PerceptualHash.hash(tiny);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.dedup;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.test.TransactionalFeature;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_FACET;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_ITEMS;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_SCHEMA_NAME;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy({
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.aws.aws-core"
+})
+public class TestPictureDeduplication {
+
+    protected static final String INPUT = "picture:views/2/content";
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    protected PictureDeduplication newDeduplication() {
+        return new PictureDeduplication(new PictureHashIndex(6, 100), Set.of("aws.imageLabels", "aws.textDetection"));
+    }
+
+    protected Map<String, Serializable> enrichment(String model, String input) {
+        return Map.of("model", model, "inputProperties", (Serializable) List.of(input));
+    }
+
+    protected DocumentModel createDocument(String name, List<Map<String, Serializable>> enrichments) {
+        DocumentModel doc = session.createDocumentModel("/", name, "File");
+        if (enrichments != null) {
+            doc.addFacet(ENRICHMENT_FACET);
+            doc.setProperty(ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS, enrichments);
+        }
+        doc = session.createDocument(doc);
+        txFeature.nextTransaction();
+        return doc;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<String> getModels(DocumentModel doc) {
+        txFeature.nextTransaction();
+        DocumentModel current = session.getDocument(doc.getRef());
+        if (!current.hasFacet(ENRICHMENT_FACET)) {
+            return List.of();
+        }
+        List<Map<String, Serializable>> enrichments = (List<Map<String, Serializable>>) current.getProperty(
+                ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS);
+        return enrichments.stream().map(en -> (String) en.get("model")).sorted().toList();
+    }
+
+    @Test
+    public void testCopiesOnlyTheModelsOfThePipe() {
+        DocumentModel source = createDocument("source",
+                List.of(enrichment("aws.imageLabels", INPUT), enrichment("aws.textDetection", INPUT),
+                        enrichment("aws.textDetection", "file:content"), enrichment("aws.transcribe", INPUT)));
+        DocumentModel target = createDocument("target", List.of(enrichment("aws.imageLabels", "file:content")));
+
+        Assert.assertTrue(newDeduplication().copyEnrichments(session.getRepositoryName(), source.getId(),
+                target.getId(), INPUT));
+        // the enrichment of another input property is kept, the one of a model fed by another pipe is not copied
+        Assert.assertEquals(List.of("aws.imageLabels", "aws.imageLabels", "aws.textDetection"), getModels(target));
+    }
+
+    @Test
+    public void testMissingEnrichmentIsNotCopied() {
+        DocumentModel source = createDocument("partial",
+                List.of(enrichment("aws.imageLabels", INPUT), enrichment("aws.textDetection", "file:content")));
+        DocumentModel target = createDocument("unenriched", null);
+
+        // the record is sent so that the text is detected, the labels are computed again with it
+        Assert.assertFalse(newDeduplication().copyEnrichments(session.getRepositoryName(), source.getId(),
+                target.getId(), INPUT));
+        Assert.assertEquals(List.of(), getModels(target));
+    }
+
+    @Test
+    public void testModelsAreRequired() {
+        Assert.assertNull(PictureDeduplication.fromOptions(Map.of()));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> PictureDeduplication.fromOptions(Map.of("dedup", "phash")));
+        Assert.assertNotNull(
+                PictureDeduplication.fromOptions(Map.of("dedup", "phash", "dedupModels", "aws.imageLabels")));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.dedup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPictureHashIndex {
+
+    protected static final long HASH = 0x5A5A_F0F0_1234_ABCDL;
+
+    @Test
+    public void testFindsNearDuplicates() {
+        PictureHashIndex index = new PictureHashIndex(6, 100);
+        index.add("default", "doc1", HASH);
+        // one flipped bit in 6 of the 7 bands
+        long near = HASH ^ 0x8000_0400_0020_0001L ^ (1L << 45) ^ (1L << 15);
+        Assert.assertEquals(6, PerceptualHash.distance(HASH, near));
+
+        PictureHashIndex.Match match = index.find("default", "doc2", near);
+        Assert.assertNotNull(match);
+        Assert.assertEquals("doc1", match.docId());
+        Assert.assertEquals(6, match.distance());
+
+        Assert.assertNull(index.find("default", "doc2", HASH ^ 0x7F));
+        // a document is not the duplicate of itself, nor of another repository
+        Assert.assertNull(index.find("default", "doc1", HASH));
+        Assert.assertNull(index.find("other", "doc2", HASH));
+    }
+
+    @Test
+    public void testFindsNearest() {
+        PictureHashIndex index = new PictureHashIndex(4, 100);
+        index.add("default", "far", HASH ^ 0b111);
+        index.add("default", "close", HASH ^ 0b1);
+        Assert.assertEquals("close", index.find("default", "doc", HASH).docId());
+    }
+
+    @Test
+    public void testEvictsOldestEntries() {
+        PictureHashIndex index = new PictureHashIndex(2, 2);
+        index.add("default", "doc1", HASH);
+        index.add("default", "doc2", ~HASH);
+        index.add("default", "doc3", HASH ^ 0xFFFF_0000L);
+        Assert.assertEquals(2, index.size());
+        Assert.assertNull(index.find("default", "doc", HASH));
+
+        index.remove("default", "doc2");
+        Assert.assertEquals(1, index.size());
+        Assert.assertNull(index.find("default", "doc", ~HASH));
+    }
+}
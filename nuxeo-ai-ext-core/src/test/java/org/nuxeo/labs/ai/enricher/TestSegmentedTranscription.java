@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.enricher;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ai.enrichment.EnrichmentMetadata;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ai.services.AIComponent;
+import org.nuxeo.ai.transcribe.TranscribeService;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.test.TransactionalFeature;
+import org.nuxeo.labs.ai.audio.AudioExtractor;
+import org.nuxeo.labs.ai.audio.AudioSegmenter;
+import org.nuxeo.labs.ai.simulator.Latency;
+import org.nuxeo.labs.ai.simulator.SimulatorFeature;
+import org.nuxeo.labs.ai.transcribe.TranscribeJobService;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segments of a long media transcribed against the simulated Transcribe, without ffmpeg: the segments are written to
+ * the audio blob provider as the segmenter does.
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ SimulatorFeature.class })
+@Deploy({
+        "org.nuxeo.ecm.platform.tag",
+        "org.nuxeo.ecm.default.config",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.nuxeo-ai-pipes",
+        "org.nuxeo.ai.aws.aws-core",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core:OSGI-INF/test-transcribe-contrib.xml",
+})
+public class TestSegmentedTranscription {
+
+    protected static final String SEGMENTED_PROVIDER = "aws.transcribeExt.segmented";
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    @Inject
+    protected SimulatorFeature simulator;
+
+    @Inject
+    protected AIComponent aiComponent;
+
+    @Inject
+    protected TranscribeJobService jobService;
+
+    @Inject
+    protected TranscribeService transcribeService;
+
+    @Test
+    public void testSegmentsAreTranscribedInABoundedWindow() throws Exception {
+        simulator.getConfig().withTranscribeLatency(Latency.none()).withJobDuration(Latency.fixed(300));
+        DocumentModel doc = session.createDocument(session.createDocumentModel("/", "long", "File"));
+        txFeature.nextTransaction();
+        List<AudioSegmenter.Segment> segments = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            segments.add(new AudioSegmenter.Segment(writeSegment(i), i * 900d, 900));
+        }
+        BlobTextFromDocument item = new BlobTextFromDocument(doc.getId(), doc.getRepositoryName(),
+                doc.getParentRef().toString(), doc.getType(), doc.getFacets());
+        item.addBlob("file:content", "audio", segments.get(0).blob());
+
+        TranscribeEnrichmentProviderExt provider = (TranscribeEnrichmentProviderExt) aiComponent.getEnrichmentProvider(
+                SEGMENTED_PROVIDER);
+        CompletableFuture<EnrichmentMetadata> result = CompletableFuture.supplyAsync(
+                () -> provider.transcribeSegments(item, transcribeService, "segmented-test", segments));
+        int maxInFlight = 0;
+        while (!result.isDone()) {
+            maxInFlight = Math.max(maxInFlight, jobService.getPendingJobCount());
+            Thread.sleep(20);
+        }
+
+        Assert.assertNotNull(result.get(1, TimeUnit.SECONDS).getRawKey());
+        // the job slot of a segment is given to the next one as soon as its job terminates
+        Assert.assertTrue("In flight: " + maxInFlight, maxInFlight > 0 && maxInFlight <= 2);
+        Assert.assertEquals(0, jobService.getPendingJobCount());
+        Assert.assertTrue(jobService.getRegistry().list().isEmpty());
+        for (AudioSegmenter.Segment segment : segments) {
+            Assert.assertFalse(exists(segment.blob()));
+        }
+    }
+
+    protected ManagedBlob writeSegment(int seed) throws IOException {
+        // distinct content gives distinct job names
+        byte[] bytes = new byte[4096];
+        new Random(seed).nextBytes(bytes);
+        Blob segment = Blobs.createBlob(bytes, "audio/flac");
+        BlobProvider blobProvider = Framework.getService(BlobManager.class)
+                                             .getBlobProvider(AudioExtractor.DEFAULT_BLOB_PROVIDER);
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = blobProvider.writeBlob(segment);
+        blobInfo.mimeType = "audio/flac";
+        blobInfo.filename = String.format("long-%03d.flac", seed);
+        return (ManagedBlob) blobProvider.readBlob(blobInfo);
+    }
+
+    protected static boolean exists(ManagedBlob blob) {
+        try (InputStream in = blob.getStream()) {
+            return in != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
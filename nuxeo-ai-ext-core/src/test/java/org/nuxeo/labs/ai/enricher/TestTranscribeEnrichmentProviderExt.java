@@ -24,6 +24,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.ai.services.AIComponent;
 import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.labs.ai.transcribe.TranscribeJobService;
+import org.nuxeo.labs.ai.transcribe.TranscriptCache;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -59,4 +64,31 @@ public class TestTranscribeEnrichmentProviderExt {
         TranscribeEnrichmentProviderExt ep = (TranscribeEnrichmentProviderExt) aiComponent.getEnrichmentProvider(PROVIDER_NAME);
         Assert.assertTrue(ep.supportsMimeType("audio/mpeg"));
     }
+
+    @Test
+    public void testJobServiceIsRegistered() {
+        TranscribeJobService jobService = Framework.getService(TranscribeJobService.class);
+        Assert.assertNotNull(jobService);
+        Assert.assertEquals(0, jobService.getPendingJobCount());
+    }
+
+    @Test
+    public void testTranscriptCache() {
+        TranscriptCache cache = new TranscriptCache(true, 60, "default");
+        Blob blob = Blobs.createBlob("some audio");
+        blob.setDigest("0123456789abcdef");
+
+        String key = cache.getKey(blob, new String[] { "fr-FR", "en-US" });
+        Assert.assertEquals(key, cache.getKey(blob, new String[] { "en-US", "fr-FR" }));
+        Assert.assertNotEquals(key, cache.getKey(blob, new String[] { "" }));
+
+        long misses = TranscriptCache.getMisses();
+        Assert.assertNull(cache.getRawKey(key));
+        Assert.assertEquals(misses + 1, TranscriptCache.getMisses());
+
+        long hits = TranscriptCache.getHits();
+        cache.put(key, "rawKey");
+        Assert.assertEquals("rawKey", cache.getRawKey(key));
+        Assert.assertEquals(hits + 1, TranscriptCache.getHits());
+    }
 }
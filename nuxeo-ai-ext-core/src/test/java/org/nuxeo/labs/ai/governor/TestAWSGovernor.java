@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.governor;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
+
+import javax.inject.Inject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy({
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.aws.aws-core"
+})
+public class TestAWSGovernor {
+
+    @Inject
+    protected AWSGovernor governor;
+
+    @Inject
+    protected KeyValueService keyValueService;
+
+    protected KeyValueStore getStore() {
+        return keyValueService.getKeyValueStore(AWSGovernorImpl.KV_STORE_NAME);
+    }
+
+    @Test
+    public void testRateLimiterSpacesCallsAfterBurst() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        DistributedRateLimiter limiter = new DistributedRateLimiter(getStore(), "test:burst", 10, 3, now::get);
+
+        // the burst goes through right away, then one call every 100ms
+        Assert.assertEquals(0, limiter.reserve());
+        Assert.assertEquals(0, limiter.reserve());
+        Assert.assertEquals(0, limiter.reserve());
+        Assert.assertEquals(100_000, limiter.reserve());
+        Assert.assertEquals(200_000, limiter.reserve());
+
+        // the waits are reservations: another limiter on the same key, i.e. another node, queues after them
+        DistributedRateLimiter other = new DistributedRateLimiter(getStore(), "test:burst", 10, 3, now::get);
+        Assert.assertEquals(300_000, other.reserve());
+
+        // after an idle period the burst is available again
+        now.addAndGet(10_000_000);
+        Assert.assertEquals(0, limiter.reserve());
+    }
+
+    @Test
+    public void testSemaphoreLimitsJobs() {
+        DistributedSemaphore semaphore = new DistributedSemaphore(getStore(), "test:jobs", 2, 60);
+        Assert.assertTrue(semaphore.tryAcquire("job1"));
+        Assert.assertTrue(semaphore.tryAcquire("job2"));
+        Assert.assertFalse(semaphore.tryAcquire("job3"));
+
+        // a job already holding a slot keeps it
+        Assert.assertTrue(semaphore.tryAcquire("job1"));
+        Assert.assertEquals(2, semaphore.getUsed());
+
+        semaphore.release("job1");
+        Assert.assertEquals(1, semaphore.getUsed());
+        Assert.assertTrue(semaphore.tryAcquire("job3"));
+        Assert.assertFalse(semaphore.tryAcquire("job1"));
+    }
+
+    @Test
+    @WithFrameworkProperty(name = "nuxeo.ai.ext.governor.waiting.rate", value = "1000")
+    @WithFrameworkProperty(name = "nuxeo.ai.ext.governor.waiting.burst", value = "10")
+    @WithFrameworkProperty(name = "nuxeo.ai.ext.governor.waiting.jobs", value = "1")
+    public void testWaitingJobDoesNotBlockTheResource() throws Exception {
+        governor.acquireJob("waiting", "job1", "doc1");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> waitingJob = executor.submit(() -> governor.acquireJob("waiting", "job2", "doc2"));
+            Thread.sleep(300);
+            Assert.assertFalse(waitingJob.isDone());
+
+            // while job2 sleeps between its attempts, the calls and the other jobs are not blocked
+            executor.submit(() -> governor.acquire("waiting")).get(2, TimeUnit.SECONDS);
+            executor.submit(() -> governor.releaseJob("waiting", "job1", "doc1")).get(2, TimeUnit.SECONDS);
+            waitingJob.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+            governor.releaseJob("waiting", "job2", "doc2");
+        }
+    }
+
+    @Test
+    @WithFrameworkProperty(name = "nuxeo.ai.ext.governor.shared.jobs", value = "2")
+    public void testDocumentsSharingAJobHoldASlotEach() {
+        DistributedSemaphore semaphore = ((AWSGovernorImpl) governor).getLimits("shared").semaphore;
+        governor.acquireJob("shared", "job", "doc1");
+        governor.acquireJob("shared", "job", "doc2");
+        Assert.assertEquals(2, semaphore.getUsed());
+
+        // the first document to complete does not free the slot of the other
+        governor.releaseJob("shared", "job", "doc1");
+        Assert.assertEquals(1, semaphore.getUsed());
+        governor.releaseJob("shared", "job", "doc2");
+        Assert.assertEquals(0, semaphore.getUsed());
+    }
+
+    @Test
+    public void testResourceWithoutLimitsIsNotGoverned() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            governor.acquire("unlimited");
+            governor.acquireJob("unlimited", "job" + i, "doc" + i);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.pipes;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TestDurationLanes {
+
+    @Test
+    public void testRoutesByDuration() {
+        DurationLanes lanes = DurationLanes.fromOptions(Map.of("lanes", "1800:ai/media-long, 60:ai/media-medium"));
+        Assert.assertNotNull(lanes);
+        // short media stay in the pipe stream
+        Assert.assertNull(lanes.route(0));
+        Assert.assertNull(lanes.route(59.9));
+        Assert.assertEquals("ai/media-medium", lanes.route(60));
+        Assert.assertEquals("ai/media-medium", lanes.route(1799));
+        Assert.assertEquals("ai/media-long", lanes.route(3 * 3600));
+    }
+
+    @Test
+    public void testDurationIsEstimatedFromSize() {
+        File file = FileUtils.getResourceFileFromContext("files/TourEiffel.mp4");
+        BlobTextFromDocument item = new BlobTextFromDocument("docId", "test", "parentId", "Video", Set.of());
+        item.addBlob("MP4", "video", new ManagedFileBlob(file, "video/mp4"));
+
+        DurationLanes lanes = new DurationLanes(Map.of(1.0, "ai/media-long"), 1000, 10);
+        Assert.assertEquals(file.length() / 1000.0, lanes.getDuration(null, item), 0.001);
+    }
+
+    @Test
+    public void testAudioDurationIsProbed() {
+        File file = FileUtils.getResourceFileFromContext("files/TourEiffel.mp4");
+        BlobTextFromDocument item = new BlobTextFromDocument("docId", "test", "parentId", "File", Set.of());
+        item.addBlob("file:content", "audio", new ManagedFileBlob(file, "audio/mpeg"));
+
+        DurationLanes probed = new DurationLanes(Map.of(1.0, "ai/media-long"), 1000, 10) {
+            @Override
+            protected double probe(Blob blob) {
+                return 10800;
+            }
+        };
+        Assert.assertEquals(10800, probed.getDuration(null, item), 0.001);
+
+        // an audio file that cannot be probed is estimated with the audio bitrate
+        DurationLanes estimated = new DurationLanes(Map.of(1.0, "ai/media-long"), 1000, 10) {
+            @Override
+            protected double probe(Blob blob) {
+                return 0;
+            }
+        };
+        Assert.assertEquals(file.length() / 10.0, estimated.getDuration(null, item), 0.001);
+    }
+
+    @Test
+    public void testParseProbedDuration() {
+        Assert.assertEquals(10801.5, DurationLanes.parseDuration(List.of("10801.500000")), 0.001);
+        Assert.assertEquals(0, DurationLanes.parseDuration(List.of("N/A")), 0.001);
+        Assert.assertEquals(0, DurationLanes.parseDuration(List.of()), 0.001);
+    }
+
+    @Test
+    public void testFromOptions() {
+        Assert.assertNull(DurationLanes.fromOptions(Map.of()));
+        Assert.assertThrows(IllegalArgumentException.class, () -> DurationLanes.fromOptions(Map.of("lanes", "60")));
+    }
+}
@@ -38,6 +38,8 @@ import org.nuxeo.ecm.platform.test.PlatformFeature;
 import org.nuxeo.ecm.platform.video.TranscodedVideo;
 import org.nuxeo.ecm.platform.video.VideoInfo;
 import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.log.Name;
+import org.nuxeo.runtime.stream.StreamService;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -68,6 +70,9 @@ public class TestMediaConversion2Stream {
     @Inject
     CoreSession session;
 
+    @Inject
+    StreamService streamService;
+
     @Test
     public void TestWithPicture() {
         DocumentModel doc = session.createDocumentModel("/", "Picture", "Picture");
@@ -109,6 +114,43 @@ public class TestMediaConversion2Stream {
 
     }
 
+    @Test
+    public void TestWithPictureSingleRecord() {
+        DocumentModel doc = session.createDocumentModel("/", "Picture", "Picture");
+        doc = session.createDocument(doc);
+
+        MultiviewPicture multiviewPicture = doc.getAdapter(MultiviewPicture.class);
+        for (String title : List.of("Small", "Medium", "Large")) {
+            PictureView pictureView = new PictureViewImpl();
+            pictureView.setTitle(title);
+            pictureView.setImageInfo(new ImageInfo());
+            pictureView.setBlob(new ManagedFileBlob(FileUtils.getResourceFileFromContext("files/frame.png"), "image/png"));
+            multiviewPicture.addView(pictureView);
+        }
+
+        Map<String, String> options = new HashMap<>();
+        options.put("blobPropertiesType", "img,img,img");
+        options.put("blobProperties", "Small,Large,Missing");
+        options.put("singleRecord", "true");
+
+        MediaConversion2Stream filter = new MediaConversion2Stream();
+        filter.init(options);
+
+        EventContextImpl evctx = new DocumentEventContext(session, session.getPrincipal(), doc);
+        Event event = evctx.newEvent("myDocEvent");
+        event.setInline(true);
+
+        Collection<Record> records = filter.apply(event);
+
+        Assert.assertEquals(1,records.size());
+
+        BlobTextFromDocument blobTextFromDoc = fromRecord(records.iterator().next(), BlobTextFromDocument.class);
+
+        Assert.assertEquals(2,blobTextFromDoc.getBlobs().size());
+        Assert.assertNotNull(blobTextFromDoc.getBlobs().get("Small"));
+        Assert.assertNotNull(blobTextFromDoc.getBlobs().get("Large"));
+    }
+
     @Test
     public void TestWithVideo() {
         DocumentModel doc = session.createDocumentModel("/", "Video", "Video");
@@ -146,4 +188,63 @@ public class TestMediaConversion2Stream {
         Assert.assertEquals(blob.getLength(),deserializedBlob.getLength());
     }
 
+    @Test
+    public void TestShortVideoStaysInPipeStream() {
+        DocumentModel doc = createVideo("ShortVideo", 10.0);
+
+        // the file size alone would route the video to the lane
+        Collection<Record> records = applyLanes(doc, "60:ai/test-short-lane", "1");
+
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(0, getRecordCount("ai/test-short-lane"));
+    }
+
+    @Test
+    public void TestLongVideoReachesItsLane() {
+        DocumentModel doc = createVideo("LongVideo", 3600.0);
+
+        // the file size alone would keep the video in the pipe stream
+        Collection<Record> records = applyLanes(doc, "1800:ai/test-long-lane, 60:ai/test-medium-lane", "1000000000");
+
+        Assert.assertTrue(records.isEmpty());
+        Assert.assertEquals(1, getRecordCount("ai/test-long-lane"));
+        Assert.assertEquals(0, getRecordCount("ai/test-medium-lane"));
+    }
+
+    protected DocumentModel createVideo(String name, double duration) {
+        DocumentModel doc = session.createDocumentModel("/", name, "Video");
+        doc = session.createDocument(doc);
+
+        List<Map<String, Serializable>> transcodedVideos = new ArrayList<>();
+        Blob blob = new ManagedFileBlob(FileUtils.getResourceFileFromContext("files/TourEiffel.mp4"), "video/mp4");
+        VideoInfo info = VideoInfo.fromMap(
+                Map.<String, Serializable> of("duration", duration, "width", 640L, "height", 360L));
+        transcodedVideos.add(TranscodedVideo.fromBlobAndInfo("MP4", blob, info).toMap());
+        doc.setPropertyValue(TRANSCODED_VIDEOS_PROPERTY, (Serializable) transcodedVideos);
+        return doc;
+    }
+
+    protected Collection<Record> applyLanes(DocumentModel doc, String lanes, String bytesPerSecond) {
+        Map<String, String> options = new HashMap<>();
+        options.put("blobPropertiesType", "video");
+        options.put("blobProperties", "MP4");
+        options.put("lanes", lanes);
+        options.put("laneBytesPerSecond", bytesPerSecond);
+
+        MediaConversion2Stream filter = new MediaConversion2Stream();
+        filter.init(options);
+
+        EventContextImpl evctx = new DocumentEventContext(session, session.getPrincipal(), doc);
+        Event event = evctx.newEvent("myDocEvent");
+        event.setInline(true);
+
+        return filter.apply(event);
+    }
+
+    protected long getRecordCount(String stream) {
+        if (!streamService.getLogManager().exists(Name.ofUrn(stream))) {
+            return 0;
+        }
+        return streamService.getLogManager().getLag(Name.ofUrn(stream), Name.ofUrn("test/lanes-group")).lag();
+    }
 }
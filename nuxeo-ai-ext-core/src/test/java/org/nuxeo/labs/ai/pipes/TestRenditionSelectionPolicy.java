@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.pipes;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.labs.ai.pipes.RenditionSelectionPolicy.Rendition;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class TestRenditionSelectionPolicy {
+
+    protected final Rendition small = picture("Small", 320, 240, 1_000);
+
+    protected final Rendition medium = picture("Medium", 1280, 720, 10_000);
+
+    protected final Rendition fullHD = picture("FullHD", 1920, 1080, 50_000);
+
+    protected final List<Rendition> renditions = List.of(fullHD, small, medium);
+
+    @Test
+    public void testSelectsSmallestMeetingResolution() {
+        RenditionSelectionPolicy policy = new RenditionSelectionPolicy(640, 480, 0, 0);
+        Assert.assertEquals("Medium", policy.select(renditions, List.of()).map(Rendition::getName).orElseThrow());
+    }
+
+    @Test
+    public void testSelectsWithinMaxSize() {
+        RenditionSelectionPolicy policy = new RenditionSelectionPolicy(1000, 0, 0, 20_000);
+        Assert.assertEquals("Medium", policy.select(renditions, List.of()).map(Rendition::getName).orElseThrow());
+    }
+
+    @Test
+    public void testFallsBackInOrder() {
+        RenditionSelectionPolicy policy = new RenditionSelectionPolicy(4000, 3000, 0, 20_000);
+        Optional<Rendition> selected = policy.select(renditions, List.of("Missing", "FullHD", "Medium", "Small"));
+        // FullHD is too large
+        Assert.assertEquals("Medium", selected.map(Rendition::getName).orElseThrow());
+
+        Assert.assertTrue(policy.select(renditions, List.of()).isEmpty());
+    }
+
+    @Test
+    public void testMinBitrate() {
+        // 480p at 500 kbit/s, 720p at 1500 kbit/s for 2s
+        Rendition low = new Rendition("MP4 480p", Blobs.createBlob(new String(new char[125_000])), 854, 480, 2);
+        Rendition high = new Rendition("MP4 720p", Blobs.createBlob(new String(new char[375_000])), 1280, 720, 2);
+        Assert.assertEquals(500, low.getBitrate(), 0.1);
+
+        RenditionSelectionPolicy policy = new RenditionSelectionPolicy(0, 0, 1000, 0);
+        Assert.assertEquals("MP4 720p", policy.select(List.of(high, low), List.of()).map(Rendition::getName).orElseThrow());
+    }
+
+    @Test
+    public void testFromOptions() {
+        Assert.assertNull(RenditionSelectionPolicy.fromOptions(Map.of()));
+        RenditionSelectionPolicy policy = RenditionSelectionPolicy.fromOptions(
+                Map.of("renditionSelection", "smallest", "minWidth", "640"));
+        Assert.assertNotNull(policy);
+        Assert.assertEquals("Medium", policy.select(renditions, List.of()).map(Rendition::getName).orElseThrow());
+    }
+
+    protected static Rendition picture(String name, long width, long height, int length) {
+        return new Rendition(name, Blobs.createBlob(new String(new char[length])), width, height, 0);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import java.util.Random;
+
+/**
+ * Distribution of simulated durations, in milliseconds.
+ */
+@FunctionalInterface
+public interface Latency {
+
+    long sample(Random random);
+
+    static Latency none() {
+        return random -> 0;
+    }
+
+    static Latency fixed(long millis) {
+        return random -> millis;
+    }
+
+    static Latency uniform(long minMillis, long maxMillis) {
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * Log-normal distribution, the usual shape of remote call latencies, given by its median and 99th percentile.
+     */
+    static Latency logNormal(long medianMillis, long p99Millis) {
+        double sigma = Math.log((double) p99Millis / medianMillis) / 2.326;
+        return random -> (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+}
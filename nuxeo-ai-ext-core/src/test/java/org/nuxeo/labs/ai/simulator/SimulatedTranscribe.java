@@ -0,0 +1,232 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import com.amazonaws.services.transcribe.AbstractAmazonTranscribe;
+import com.amazonaws.services.transcribe.model.BadRequestException;
+import com.amazonaws.services.transcribe.model.ConflictException;
+import com.amazonaws.services.transcribe.model.DeleteTranscriptionJobRequest;
+import com.amazonaws.services.transcribe.model.DeleteTranscriptionJobResult;
+import com.amazonaws.services.transcribe.model.GetTranscriptionJobRequest;
+import com.amazonaws.services.transcribe.model.GetTranscriptionJobResult;
+import com.amazonaws.services.transcribe.model.LimitExceededException;
+import com.amazonaws.services.transcribe.model.ListTranscriptionJobsRequest;
+import com.amazonaws.services.transcribe.model.ListTranscriptionJobsResult;
+import com.amazonaws.services.transcribe.model.Media;
+import com.amazonaws.services.transcribe.model.StartTranscriptionJobRequest;
+import com.amazonaws.services.transcribe.model.StartTranscriptionJobResult;
+import com.amazonaws.services.transcribe.model.TranscriptionJob;
+import com.amazonaws.services.transcribe.model.TranscriptionJobSummary;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.COMPLETED;
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.FAILED;
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.IN_PROGRESS;
+
+/**
+ * In-memory Transcribe client: jobs complete after a simulated duration and their transcripts are served by a
+ * {@link TranscriptServer}.
+ */
+public class SimulatedTranscribe extends AbstractAmazonTranscribe {
+
+    protected final SimulatorConfig config;
+
+    protected final TranscriptServer server;
+
+    protected final Random random;
+
+    protected final Throttle throttle = new Throttle();
+
+    protected final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    protected final AtomicLong calls = new AtomicLong();
+
+    protected final AtomicLong throttled = new AtomicLong();
+
+    protected final AtomicLong getJobCalls = new AtomicLong();
+
+    public SimulatedTranscribe(SimulatorConfig config, TranscriptServer server) {
+        this.config = config;
+        this.server = server;
+        random = new Random(config.getSeed());
+    }
+
+    @Override
+    public StartTranscriptionJobResult startTranscriptionJob(StartTranscriptionJobRequest request) {
+        call();
+        long now = config.currentTimeMillis();
+        Job job = new Job(request.getTranscriptionJobName(), request.getMedia(), now,
+                now + config.getJobDuration().sample(random), random.nextDouble() < config.getJobFailureRate());
+        if (jobs.putIfAbsent(job.name, job) != null) {
+            throw new ConflictException("The requested job name already exists: " + job.name);
+        }
+        return new StartTranscriptionJobResult().withTranscriptionJob(job.toTranscriptionJob());
+    }
+
+    @Override
+    public GetTranscriptionJobResult getTranscriptionJob(GetTranscriptionJobRequest request) {
+        call();
+        getJobCalls.incrementAndGet();
+        return new GetTranscriptionJobResult().withTranscriptionJob(
+                getJob(request.getTranscriptionJobName()).toTranscriptionJob());
+    }
+
+    @Override
+    public ListTranscriptionJobsResult listTranscriptionJobs(ListTranscriptionJobsRequest request) {
+        call();
+        int offset = request.getNextToken() == null ? 0 : Integer.parseInt(request.getNextToken());
+        int maxResults = request.getMaxResults() == null ? 5 : request.getMaxResults();
+        List<TranscriptionJobSummary> summaries = jobs.values()
+                                                      .stream()
+                                                      .filter(job -> request.getStatus() == null
+                                                              || request.getStatus().equals(job.getStatus()))
+                                                      .filter(job -> request.getJobNameContains() == null
+                                                              || job.name.contains(request.getJobNameContains()))
+                                                      .sorted(Comparator.comparingLong(Job::getSubmitTime).reversed())
+                                                      .skip(offset)
+                                                      .limit(maxResults + 1L)
+                                                      .map(Job::toSummary)
+                                                      .toList();
+        ListTranscriptionJobsResult result = new ListTranscriptionJobsResult().withStatus(request.getStatus());
+        if (summaries.size() > maxResults) {
+            return result.withTranscriptionJobSummaries(summaries.subList(0, maxResults))
+                         .withNextToken(String.valueOf(offset + maxResults));
+        }
+        return result.withTranscriptionJobSummaries(summaries);
+    }
+
+    @Override
+    public DeleteTranscriptionJobResult deleteTranscriptionJob(DeleteTranscriptionJobRequest request) {
+        call();
+        if (jobs.remove(request.getTranscriptionJobName()) == null) {
+            throw new BadRequestException("The requested job couldn't be found: " + request.getTranscriptionJobName());
+        }
+        return new DeleteTranscriptionJobResult();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getJobCalls() {
+        return getJobCalls.get();
+    }
+
+    public int getJobCount() {
+        return jobs.size();
+    }
+
+    protected Job getJob(String name) {
+        Job job = jobs.get(name);
+        if (job == null) {
+            throw new BadRequestException("The requested job couldn't be found: " + name);
+        }
+        return job;
+    }
+
+    protected void call() {
+        calls.incrementAndGet();
+        sleep(config.getTranscribeLatency().sample(random));
+        if (!throttle.tryAcquire(config.getTranscribeRequestsPerSecond(), config.currentTimeMillis())) {
+            throttled.incrementAndGet();
+            throw new LimitExceededException("Rate exceeded");
+        }
+    }
+
+    protected static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected class Job {
+
+        protected final String name;
+
+        protected final Media media;
+
+        protected final long submitTime;
+
+        protected final long completionTime;
+
+        protected final boolean failing;
+
+        protected Job(String name, Media media, long submitTime, long completionTime, boolean failing) {
+            this.name = name;
+            this.media = media;
+            this.submitTime = submitTime;
+            this.completionTime = completionTime;
+            this.failing = failing;
+        }
+
+        protected long getSubmitTime() {
+            return submitTime;
+        }
+
+        protected String getStatus() {
+            if (config.currentTimeMillis() < completionTime) {
+                return IN_PROGRESS.name();
+            }
+            return failing ? FAILED.name() : COMPLETED.name();
+        }
+
+        protected TranscriptionJob toTranscriptionJob() {
+            String status = getStatus();
+            TranscriptionJob job = new TranscriptionJob().withTranscriptionJobName(name)
+                                                         .withTranscriptionJobStatus(status)
+                                                         .withMedia(media)
+                                                         .withCreationTime(new Date(submitTime))
+                                                         .withStartTime(new Date(submitTime));
+            if (COMPLETED.name().equals(status)) {
+                job.withCompletionTime(new Date(completionTime))
+                   .withLanguageCode("en-US")
+                   .withTranscript(new com.amazonaws.services.transcribe.model.Transcript().withTranscriptFileUri(
+                           server.getTranscriptURI(name).toString()));
+            } else if (FAILED.name().equals(status)) {
+                job.withCompletionTime(new Date(completionTime)).withFailureReason("Simulated failure");
+            }
+            return job;
+        }
+
+        protected TranscriptionJobSummary toSummary() {
+            String status = getStatus();
+            TranscriptionJobSummary summary = new TranscriptionJobSummary().withTranscriptionJobName(name)
+                                                                           .withTranscriptionJobStatus(status)
+                                                                           .withCreationTime(new Date(submitTime));
+            return IN_PROGRESS.name().equals(status) ? summary : summary.withCompletionTime(new Date(completionTime));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import com.amazonaws.services.transcribe.AmazonTranscribe;
+import org.nuxeo.ai.transcribe.TranscribeServiceImpl;
+
+/**
+ * Transcribe service whose client is the simulated Transcribe of the running {@link SimulatorFeature}; the other
+ * methods, such as the label computation, are the real ones.
+ */
+public class SimulatedTranscribeService extends TranscribeServiceImpl {
+
+    @Override
+    public AmazonTranscribe getClient() {
+        return SimulatorFeature.get().getTranscribe();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import com.amazonaws.services.translate.model.InternalServerException;
+import com.amazonaws.services.translate.model.TooManyRequestsException;
+import com.amazonaws.services.translate.model.TranslateTextResult;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Simulated TranslateText: each line is prefixed with the destination language, so that line alignment can be
+ * checked, after a simulated latency.
+ */
+public class SimulatedTranslate {
+
+    protected final SimulatorConfig config;
+
+    protected final Random random;
+
+    protected final Throttle throttle = new Throttle();
+
+    protected final AtomicLong calls = new AtomicLong();
+
+    protected final AtomicLong throttled = new AtomicLong();
+
+    public SimulatedTranslate(SimulatorConfig config) {
+        this.config = config;
+        random = new Random(config.getSeed());
+    }
+
+    public TranslateTextResult translateText(String text, String srcLang, String destLang) {
+        calls.incrementAndGet();
+        SimulatedTranscribe.sleep(config.getTranslateLatency().sample(random));
+        if (!throttle.tryAcquire(config.getTranslateRequestsPerSecond(), config.currentTimeMillis())) {
+            throttled.incrementAndGet();
+            throw new TooManyRequestsException("Rate exceeded");
+        }
+        if (random.nextDouble() < config.getTranslateFailureRate()) {
+            throw new InternalServerException("Simulated failure");
+        }
+        String translated = Arrays.stream(text.split("\n", -1))
+                                  .map(line -> line.isEmpty() ? line : "[" + destLang + "] " + line)
+                                  .collect(Collectors.joining("\n"));
+        return new TranslateTextResult().withSourceLanguageCode(srcLang)
+                                        .withTargetLanguageCode(destLang)
+                                        .withTranslatedText(translated);
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Behavior of the simulated AWS services. The defaults give fast jobs without throttling nor failures.
+ */
+public class SimulatorConfig {
+
+    protected Latency transcribeLatency = Latency.logNormal(20, 200);
+
+    protected Latency jobDuration = Latency.uniform(200, 2000);
+
+    protected double jobFailureRate;
+
+    protected int transcribeRequestsPerSecond;
+
+    protected int transcriptMinutes = 1;
+
+    protected double downloadErrorRate;
+
+    protected Latency translateLatency = Latency.logNormal(50, 500);
+
+    protected double translateFailureRate;
+
+    protected int translateRequestsPerSecond;
+
+    protected long seed = 42;
+
+    protected LongSupplier clock = System::currentTimeMillis;
+
+    public Latency getTranscribeLatency() {
+        return transcribeLatency;
+    }
+
+    /**
+     * Latency of each Transcribe API call.
+     */
+    public SimulatorConfig withTranscribeLatency(Latency transcribeLatency) {
+        this.transcribeLatency = transcribeLatency;
+        return this;
+    }
+
+    public Latency getJobDuration() {
+        return jobDuration;
+    }
+
+    /**
+     * Time between the start of a transcription job and its completion.
+     */
+    public SimulatorConfig withJobDuration(Latency jobDuration) {
+        this.jobDuration = jobDuration;
+        return this;
+    }
+
+    public double getJobFailureRate() {
+        return jobFailureRate;
+    }
+
+    /**
+     * Ratio of the transcription jobs ending as {@code FAILED}.
+     */
+    public SimulatorConfig withJobFailureRate(double jobFailureRate) {
+        this.jobFailureRate = jobFailureRate;
+        return this;
+    }
+
+    public int getTranscribeRequestsPerSecond() {
+        return transcribeRequestsPerSecond;
+    }
+
+    /**
+     * Transcribe API calls allowed per second before a {@code LimitExceededException}, {@code 0} for no limit.
+     */
+    public SimulatorConfig withTranscribeRequestsPerSecond(int transcribeRequestsPerSecond) {
+        this.transcribeRequestsPerSecond = transcribeRequestsPerSecond;
+        return this;
+    }
+
+    public int getTranscriptMinutes() {
+        return transcriptMinutes;
+    }
+
+    /**
+     * Media duration covered by the served transcripts.
+     */
+    public SimulatorConfig withTranscriptMinutes(int transcriptMinutes) {
+        this.transcriptMinutes = transcriptMinutes;
+        return this;
+    }
+
+    public double getDownloadErrorRate() {
+        return downloadErrorRate;
+    }
+
+    /**
+     * Ratio of the transcript downloads answered with a 503.
+     */
+    public SimulatorConfig withDownloadErrorRate(double downloadErrorRate) {
+        this.downloadErrorRate = downloadErrorRate;
+        return this;
+    }
+
+    public Latency getTranslateLatency() {
+        return translateLatency;
+    }
+
+    /**
+     * Latency of each TranslateText call.
+     */
+    public SimulatorConfig withTranslateLatency(Latency translateLatency) {
+        this.translateLatency = translateLatency;
+        return this;
+    }
+
+    public double getTranslateFailureRate() {
+        return translateFailureRate;
+    }
+
+    /**
+     * Ratio of the TranslateText calls failing with an {@code InternalServerException}.
+     */
+    public SimulatorConfig withTranslateFailureRate(double translateFailureRate) {
+        this.translateFailureRate = translateFailureRate;
+        return this;
+    }
+
+    public int getTranslateRequestsPerSecond() {
+        return translateRequestsPerSecond;
+    }
+
+    /**
+     * TranslateText calls allowed per second before a {@code TooManyRequestsException}, {@code 0} for no limit.
+     */
+    public SimulatorConfig withTranslateRequestsPerSecond(int translateRequestsPerSecond) {
+        this.translateRequestsPerSecond = translateRequestsPerSecond;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public SimulatorConfig withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public long currentTimeMillis() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Clock of the job durations and of the request quotas, the system clock by default.
+     */
+    public SimulatorConfig withClock(LongSupplier clock) {
+        this.clock = clock;
+        return this;
+    }
+}
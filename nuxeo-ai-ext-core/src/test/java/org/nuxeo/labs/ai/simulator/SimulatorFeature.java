@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import com.google.inject.Binder;
+import org.nuxeo.ai.transcribe.TranscribeService;
+import org.nuxeo.ai.translate.TranslateService;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RunnerFeature;
+
+/**
+ * Replaces the AWS calls of {@link TranscribeService} and {@link TranslateService} by in-process simulations, so that
+ * the transcription and translation paths can be exercised, and loaded, without AWS.
+ * <p>
+ * The services are replaced by test contributions of {@link SimulatedTranscribeService} and
+ * {@link SimulatedTranslateService}, whose other methods, such as the label computation, are the real ones. The
+ * simulation is set up with {@link #getConfig()}, which is read on each call.
+ */
+@Features(PlatformFeature.class)
+@Deploy({
+        "org.nuxeo.ai.aws.aws-core",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core:OSGI-INF/test-simulated-transcribe-contrib.xml",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core:OSGI-INF/test-simulated-translate-contrib.xml",
+})
+public class SimulatorFeature implements RunnerFeature {
+
+    protected static volatile SimulatorFeature current;
+
+    protected final SimulatorConfig config = new SimulatorConfig();
+
+    protected TranscriptServer server;
+
+    protected SimulatedTranscribe transcribe;
+
+    protected SimulatedTranslate translate;
+
+    /**
+     * @return the simulator of the running test
+     */
+    public static SimulatorFeature get() {
+        SimulatorFeature simulator = current;
+        if (simulator == null) {
+            throw new IllegalStateException("No test is running with the " + SimulatorFeature.class.getSimpleName());
+        }
+        return simulator;
+    }
+
+    @Override
+    public void configure(FeaturesRunner runner, Binder binder) {
+        binder.bind(SimulatorFeature.class).toInstance(this);
+    }
+
+    @Override
+    public void beforeRun(FeaturesRunner runner) throws Exception {
+        server = new TranscriptServer(config).start();
+        transcribe = new SimulatedTranscribe(config, server);
+        translate = new SimulatedTranslate(config);
+        current = this;
+    }
+
+    @Override
+    public void afterRun(FeaturesRunner runner) {
+        current = null;
+        server.stop();
+    }
+
+    public SimulatorConfig getConfig() {
+        return config;
+    }
+
+    public SimulatedTranscribe getTranscribe() {
+        return transcribe;
+    }
+
+    public SimulatedTranslate getTranslate() {
+        return translate;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.simulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates AWS Transcribe JSON results of a given media duration, at a speech rate of about 150 words per minute with
+ * a punctuation mark every dozen words.
+ */
+public class SyntheticTranscripts {
+
+    protected static final String[] WORDS = { "the", "a", "video", "transcript", "nuxeo", "caption", "language",
+            "document", "content", "platform", "search", "asset", "rendition", "workflow", "user", "repository",
+            "image", "audio", "translation", "service", "metadata", "enrichment", "model", "stream", "automation",
+            "été", "naïve", "straße", "東京", "数据" };
+
+    protected static final String[] PUNCTUATION = { ".", ",", "?", "!" };
+
+    protected static final long WORD_MILLIS = 400;
+
+    private SyntheticTranscripts() {
+        // utility class
+    }
+
+    public static byte[] generate(int minutes, long seed) {
+        Random random = new Random(seed);
+        long duration = minutes * 60_000L;
+        StringBuilder items = new StringBuilder();
+        StringBuilder text = new StringBuilder();
+        long time = 0;
+        int words = 0;
+        while (time < duration) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            long start = time + random.nextInt(40);
+            long end = start + 150 + random.nextInt(200);
+            if (items.length() > 0) {
+                items.append(',');
+                text.append(' ');
+            }
+            items.append("{\"start_time\":\"")
+                 .append(seconds(start))
+                 .append("\",\"end_time\":\"")
+                 .append(seconds(end))
+                 .append("\",\"alternatives\":[{\"confidence\":\"0.99\",\"content\":\"")
+                 .append(word)
+                 .append("\"}],\"type\":\"pronunciation\"}");
+            text.append(word);
+            if (++words % 12 == 0) {
+                String mark = PUNCTUATION[random.nextInt(PUNCTUATION.length)];
+                items.append(",{\"alternatives\":[{\"confidence\":\"0.0\",\"content\":\"")
+                     .append(mark)
+                     .append("\"}],\"type\":\"punctuation\"}");
+                text.append(mark);
+            }
+            time += WORD_MILLIS;
+        }
+        String json = "{\"jobName\":\"bench\",\"accountId\":\"0\",\"results\":{\"language_code\":\"en-US\","
+                + "\"transcripts\":[{\"transcript\":\"" + text + "\"}],\"items\":[" + items + "]},"
+                + "\"status\":\"COMPLETED\"}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected static String seconds(long millis) {
+        return millis / 1000 + "." + String.format("%03d", millis % 1000);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ai.enrichment.EnrichmentMetadata;
+import org.nuxeo.ai.enrichment.EnrichmentProvider;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ai.services.AIComponent;
+import org.nuxeo.ai.services.DocMetadataService;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.test.TransactionalFeature;
+import org.nuxeo.ecm.platform.video.TranscodedVideo;
+import org.nuxeo.ecm.platform.video.VideoInfo;
+import org.nuxeo.labs.ai.pipes.ManagedFileBlob;
+import org.nuxeo.labs.ai.pipes.MediaConversion2Stream;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.nuxeo.ai.listeners.VideoAboutToChange.CAPTIONABLE_FACET;
+import static org.nuxeo.ai.metadata.Caption.CAPTIONS_PROP;
+import static org.nuxeo.ai.pipes.services.JacksonUtil.fromRecord;
+import static org.nuxeo.ecm.platform.video.VideoConstants.TRANSCODED_VIDEOS_PROPERTY;
+import static org.nuxeo.labs.ai.enricher.TranscribeEnrichmentProviderExt.PROVIDER_NAME;
+import static org.nuxeo.labs.ai.translate.ExtendedDocumentTranscribed.CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES;
+
+/**
+ * Sustained load of the transcription pipeline against the simulated AWS services: document event,
+ * {@link MediaConversion2Stream}, transcribe provider, enrichment save and caption listener.
+ * <p>
+ * Skipped unless run with {@code -Dnuxeo.ai.ext.loadtest.docs=<number of documents>}; the concurrency is set with
+ * {@code -Dnuxeo.ai.ext.loadtest.threads} (16 by default).
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ SimulatorFeature.class })
+@Deploy({
+        "org.nuxeo.ecm.platform.tag",
+        "org.nuxeo.ecm.default.config",
+        "org.nuxeo.ecm.platform.picture.core",
+        "org.nuxeo.ecm.platform.video",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.nuxeo-ai-pipes",
+        "org.nuxeo.ai.aws.aws-core",
+})
+public class TestSimulatedLoad {
+
+    private static final Logger log = LogManager.getLogger(TestSimulatedLoad.class);
+
+    public static final String DOCS_PROPERTY = "nuxeo.ai.ext.loadtest.docs";
+
+    public static final String THREADS_PROPERTY = "nuxeo.ai.ext.loadtest.threads";
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    @Inject
+    protected SimulatorFeature simulator;
+
+    @Inject
+    protected AIComponent aiComponent;
+
+    @Test
+    public void testSustainedLoad() throws Exception {
+        int docCount = Integer.getInteger(DOCS_PROPERTY, 0);
+        Assume.assumeTrue("Load test disabled, set -D" + DOCS_PROPERTY, docCount > 0);
+        int threads = Integer.getInteger(THREADS_PROPERTY, 16);
+        Framework.getProperties().setProperty(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES, "fr,de,es");
+        simulator.getConfig().withTranscriptMinutes(10);
+        try {
+            runLoad(docCount, threads);
+        } finally {
+            Framework.getProperties().remove(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES);
+        }
+    }
+
+    protected void runLoad(int docCount, int threads) throws Exception {
+        List<DocumentModel> docs = createVideos(docCount);
+        txFeature.nextTransaction();
+
+        MediaConversion2Stream filter = new MediaConversion2Stream();
+        filter.init(Map.of("blobPropertiesType", "video", "blobProperties", "MP4"));
+        EnrichmentProvider provider = aiComponent.getEnrichmentProvider(PROVIDER_NAME);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<Long>> futures = new ArrayList<>(docCount);
+        for (DocumentModel doc : docs) {
+            futures.add(executor.submit(() -> process(filter, provider, doc)));
+        }
+        long[] latencies = new long[docCount];
+        int failures = 0;
+        for (int i = 0; i < docCount; i++) {
+            try {
+                latencies[i] = futures.get(i).get();
+            } catch (Exception e) {
+                log.warn("Document {} failed", docs.get(i).getId(), e);
+                latencies[i] = Long.MAX_VALUE;
+                failures++;
+            }
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        // let the caption listener drain
+        txFeature.nextTransaction();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        double docsPerSecond = docCount * 1e9 / elapsed;
+        log.info("{} documents, {} threads, {} failures: {} docs/s, latency p50 {} ms, p99 {} ms, "
+                + "{} Transcribe calls ({} throttled), {} Translate calls", docCount, threads, failures,
+                String.format("%.2f", docsPerSecond), toMillis(percentile(latencies, 0.5)),
+                toMillis(percentile(latencies, 0.99)), simulator.getTranscribe().getCalls(),
+                simulator.getTranscribe().getThrottled(), simulator.getTranslate().getCalls());
+
+        Assert.assertEquals(0, failures);
+        for (DocumentModel doc : docs) {
+            List<?> captions = (List<?>) session.getDocument(doc.getRef()).getPropertyValue(CAPTIONS_PROP);
+            Assert.assertEquals(4, captions.size());
+        }
+    }
+
+    /**
+     * @return the latency of the document in nanoseconds, from the event to the saved enrichment
+     */
+    protected long process(MediaConversion2Stream filter, EnrichmentProvider provider, DocumentModel doc) {
+        long start = System.nanoTime();
+        Event event = new DocumentEventContext(session, session.getPrincipal(), doc).newEvent("myDocEvent");
+        Collection<Record> records = filter.apply(event);
+        for (Record record : records) {
+            BlobTextFromDocument blobTextFromDoc = fromRecord(record, BlobTextFromDocument.class);
+            for (EnrichmentMetadata metadata : provider.enrich(blobTextFromDoc)) {
+                TransactionHelper.runInTransaction(() -> CoreInstance.doPrivileged(doc.getRepositoryName(), s -> {
+                    DocumentModel enriched = Framework.getService(DocMetadataService.class)
+                                                      .saveEnrichment(s, metadata);
+                    if (enriched != null) {
+                        s.saveDocument(enriched);
+                    }
+                }));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    protected List<DocumentModel> createVideos(int count) throws IOException {
+        Random random = new Random(simulator.getConfig().getSeed());
+        List<DocumentModel> docs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // distinct content so that the transcript cache does not short-circuit the pipeline
+            byte[] bytes = new byte[4096];
+            random.nextBytes(bytes);
+            File file = Framework.createTempFile("video", ".mp4");
+            Files.write(file.toPath(), bytes);
+            Blob blob = new ManagedFileBlob(file, "video/mp4");
+
+            DocumentModel doc = session.createDocumentModel("/", "video" + i, "Video");
+            doc.addFacet(CAPTIONABLE_FACET);
+            TranscodedVideo transcodedVideo = TranscodedVideo.fromBlobAndInfo("MP4", blob, VideoInfo.EMPTY_INFO);
+            doc.setPropertyValue(TRANSCODED_VIDEOS_PROPERTY, (Serializable) List.of(transcodedVideo.toMap()));
+            docs.add(session.createDocument(doc));
+        }
+        return docs;
+    }
+
+    protected static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    protected static long toMillis(long nanos) {
+        return nanos == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
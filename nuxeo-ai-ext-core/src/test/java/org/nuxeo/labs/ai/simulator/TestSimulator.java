@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import com.amazonaws.services.transcribe.model.ConflictException;
+import com.amazonaws.services.transcribe.model.GetTranscriptionJobRequest;
+import com.amazonaws.services.transcribe.model.LimitExceededException;
+import com.amazonaws.services.transcribe.model.ListTranscriptionJobsRequest;
+import com.amazonaws.services.transcribe.model.ListTranscriptionJobsResult;
+import com.amazonaws.services.transcribe.model.StartTranscriptionJobRequest;
+import com.amazonaws.services.transcribe.model.TranscriptionJob;
+import com.amazonaws.services.translate.model.TooManyRequestsException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.labs.ai.transcribe.Transcript;
+import org.nuxeo.labs.ai.transcribe.TranscriptParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.COMPLETED;
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.FAILED;
+import static com.amazonaws.services.transcribe.model.TranscriptionJobStatus.IN_PROGRESS;
+
+public class TestSimulator {
+
+    protected SimulatorConfig config;
+
+    protected TranscriptServer server;
+
+    protected SimulatedTranscribe transcribe;
+
+    // the simulated time only moves when the test says so
+    protected final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Before
+    public void setup() throws IOException {
+        config = new SimulatorConfig().withTranscribeLatency(Latency.none())
+                                      .withTranslateLatency(Latency.none())
+                                      .withJobDuration(Latency.fixed(200))
+                                      .withClock(now::get);
+        server = new TranscriptServer(config).start();
+        transcribe = new SimulatedTranscribe(config, server);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testJobLifecycle() throws Exception {
+        TranscriptionJob job = transcribe.startTranscriptionJob(start("job1")).getTranscriptionJob();
+        Assert.assertEquals(IN_PROGRESS.name(), job.getTranscriptionJobStatus());
+        Assert.assertThrows(ConflictException.class, () -> transcribe.startTranscriptionJob(start("job1")));
+
+        now.addAndGet(300);
+        job = transcribe.getTranscriptionJob(new GetTranscriptionJobRequest().withTranscriptionJobName("job1"))
+                        .getTranscriptionJob();
+        Assert.assertEquals(COMPLETED.name(), job.getTranscriptionJobStatus());
+
+        config.withTranscriptMinutes(2);
+        try (InputStream in = new URL(job.getTranscript().getTranscriptFileUri()).openStream()) {
+            Transcript transcript = TranscriptParser.parse(in);
+            Assert.assertEquals("en-US", transcript.getLanguageCode());
+            // 150 words per minute plus punctuation
+            Assert.assertTrue(transcript.size() > 300);
+        }
+    }
+
+    @Test
+    public void testListJobs() throws Exception {
+        config.withJobDuration(Latency.none());
+        for (int i = 0; i < 12; i++) {
+            transcribe.startTranscriptionJob(start("job" + i));
+            now.incrementAndGet();
+        }
+        ListTranscriptionJobsResult page = transcribe.listTranscriptionJobs(
+                new ListTranscriptionJobsRequest().withStatus(COMPLETED).withMaxResults(10));
+        Assert.assertEquals(10, page.getTranscriptionJobSummaries().size());
+        page = transcribe.listTranscriptionJobs(new ListTranscriptionJobsRequest().withStatus(COMPLETED)
+                                                                                  .withMaxResults(10)
+                                                                                  .withNextToken(page.getNextToken()));
+        Assert.assertEquals(2, page.getTranscriptionJobSummaries().size());
+        Assert.assertNull(page.getNextToken());
+    }
+
+    @Test
+    public void testFailureInjection() throws Exception {
+        config.withJobDuration(Latency.none()).withJobFailureRate(1);
+        transcribe.startTranscriptionJob(start("failing"));
+        TranscriptionJob job = transcribe.getTranscriptionJob(
+                new GetTranscriptionJobRequest().withTranscriptionJobName("failing")).getTranscriptionJob();
+        Assert.assertEquals(FAILED.name(), job.getTranscriptionJobStatus());
+        Assert.assertNotNull(job.getFailureReason());
+    }
+
+    @Test
+    public void testThrottling() {
+        config.withTranscribeRequestsPerSecond(2).withTranslateRequestsPerSecond(2);
+        transcribe.startTranscriptionJob(start("job1"));
+        transcribe.startTranscriptionJob(start("job2"));
+        Assert.assertThrows(LimitExceededException.class, () -> transcribe.startTranscriptionJob(start("job3")));
+        Assert.assertEquals(1, transcribe.getThrottled());
+        // the quota is per second
+        now.addAndGet(1000);
+        transcribe.startTranscriptionJob(start("job3"));
+
+        SimulatedTranslate translate = new SimulatedTranslate(config);
+        translate.translateText("a", "en", "fr");
+        translate.translateText("b", "en", "fr");
+        Assert.assertThrows(TooManyRequestsException.class, () -> translate.translateText("c", "en", "fr"));
+        now.addAndGet(1000);
+        translate.translateText("c", "en", "fr");
+    }
+
+    @Test
+    public void testTranslateKeepsLines() {
+        SimulatedTranslate translate = new SimulatedTranslate(config);
+        String translated = translate.translateText("hello\n\nworld", "en", "fr").getTranslatedText();
+        Assert.assertEquals("[fr] hello\n\n[fr] world", translated);
+    }
+
+    protected StartTranscriptionJobRequest start(String jobName) {
+        return new StartTranscriptionJobRequest().withTranscriptionJobName(jobName);
+    }
+}
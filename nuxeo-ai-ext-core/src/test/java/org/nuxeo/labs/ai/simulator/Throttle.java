@@ -0,0 +1,45 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+/**
+ * Allows a given number of requests per second, like the request quotas of the AWS APIs.
+ */
+public class Throttle {
+
+    protected long window;
+
+    protected int count;
+
+    /**
+     * @param requestsPerSecond the quota, {@code 0} for no limit
+     * @param now the current time in milliseconds
+     */
+    public synchronized boolean tryAcquire(int requestsPerSecond, long now) {
+        if (requestsPerSecond <= 0) {
+            return true;
+        }
+        long second = now / 1000;
+        if (second != window) {
+            window = second;
+            count = 0;
+        }
+        return ++count <= requestsPerSecond;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP endpoint serving synthetic transcripts, standing for the pre-signed S3 URIs of the Transcribe results.
+ */
+public class TranscriptServer {
+
+    public static final String CONTEXT = "/transcripts/";
+
+    protected final SimulatorConfig config;
+
+    protected final Map<Integer, byte[]> transcripts = new ConcurrentHashMap<>();
+
+    protected final Random random;
+
+    protected HttpServer server;
+
+    protected ExecutorService executor;
+
+    public TranscriptServer(SimulatorConfig config) {
+        this.config = config;
+        random = new Random(config.getSeed());
+    }
+
+    public TranscriptServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(CONTEXT, this::handle);
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public URI getTranscriptURI(String jobName) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + CONTEXT + jobName + ".json");
+    }
+
+    protected void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (random.nextDouble() < config.getDownloadErrorRate()) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            int minutes = config.getTranscriptMinutes();
+            byte[] body = transcripts.computeIfAbsent(minutes, m -> SyntheticTranscripts.generate(m, config.getSeed()));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class TestPollingPolicy {
+
+    protected static final long MINUTE = 1000 * 60;
+
+    @Test
+    public void testFirstCheckAroundExpectedCompletion() {
+        PollingPolicy policy = new PollingPolicy(5000, 10 * MINUTE, 2, 0, 0.5, 32000);
+        // a 10 minutes media is expected to be processed in 5 minutes
+        Assert.assertEquals(5 * MINUTE, policy.nextDelay(10 * MINUTE, 0, 0));
+        Assert.assertEquals(2 * MINUTE, policy.nextDelay(10 * MINUTE, 3 * MINUTE, 0));
+    }
+
+    @Test
+    public void testBackoffAfterExpectedCompletion() {
+        PollingPolicy policy = new PollingPolicy(5000, MINUTE, 2, 0, 0.5, 32000);
+        Assert.assertEquals(5000, policy.nextDelay(MINUTE, MINUTE, 0));
+        Assert.assertEquals(10000, policy.nextDelay(MINUTE, MINUTE, 1));
+        Assert.assertEquals(40000, policy.nextDelay(MINUTE, MINUTE, 3));
+        Assert.assertEquals(MINUTE, policy.nextDelay(MINUTE, MINUTE, 10));
+    }
+
+    @Test
+    public void testJitterStaysInBounds() {
+        PollingPolicy policy = new PollingPolicy(5000, MINUTE, 2, 0.2, 0.5, 32000);
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.nextDelay(MINUTE, MINUTE, 1);
+            Assert.assertTrue(delay >= 8000 && delay <= 12000);
+        }
+    }
+
+    @Test
+    public void testFromOptions() {
+        PollingPolicy policy = PollingPolicy.fromOptions(
+                Map.of(PollingPolicy.POLL_MIN_INTERVAL_OPTION, "1000", PollingPolicy.POLL_BYTES_PER_SECOND_OPTION,
+                        "1000"));
+        Assert.assertEquals(1000, policy.getMinInterval());
+        Assert.assertEquals(PollingPolicy.DEFAULT_MAX_INTERVAL, policy.getMaxInterval());
+        Assert.assertEquals(60000, policy.estimateDuration(60000));
+    }
+}
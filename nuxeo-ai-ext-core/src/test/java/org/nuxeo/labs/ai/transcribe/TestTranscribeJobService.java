@@ -0,0 +1,280 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.transcribe;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ai.enrichment.EnrichmentMetadata;
+import org.nuxeo.ai.enrichment.EnrichmentProvider;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ai.services.AIComponent;
+import org.nuxeo.ai.transcribe.TranscribeService;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobStoreBlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.test.TransactionalFeature;
+import org.nuxeo.labs.ai.pipes.ManagedFileBlob;
+import org.nuxeo.labs.ai.simulator.Latency;
+import org.nuxeo.labs.ai.simulator.SimulatorFeature;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_FACET;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_ITEMS;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_SCHEMA_NAME;
+import static org.nuxeo.labs.ai.enricher.TranscribeEnrichmentProviderExt.PROVIDER_NAME;
+import static org.nuxeo.labs.ai.transcribe.TranscribeJobServiceImpl.COMPLETION_RETRY_DELAY_PROPERTY;
+
+/**
+ * Transcribe jobs followed by the job service against the simulated Transcribe: in asynchronous mode the enrichment
+ * is saved by the job service once the job terminates, in synchronous mode the job is handed back to the provider.
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ SimulatorFeature.class })
+@Deploy({
+        "org.nuxeo.ecm.platform.tag",
+        "org.nuxeo.ecm.default.config",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.nuxeo-ai-pipes",
+        "org.nuxeo.ai.aws.aws-core",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core:OSGI-INF/test-transcribe-contrib.xml",
+})
+public class TestTranscribeJobService {
+
+    protected static final String ASYNC_PROVIDER = "aws.transcribeExt.async";
+
+    protected static final String SYNC_PROVIDER = "aws.transcribeExt.polled";
+
+    protected static final String CACHED_PROVIDER = "aws.transcribeExt.cached";
+
+    protected static final long WAIT_TIMEOUT = 20_000;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    @Inject
+    protected SimulatorFeature simulator;
+
+    @Inject
+    protected AIComponent aiComponent;
+
+    @Inject
+    protected TranscribeJobService jobService;
+
+    @Test
+    public void testAsyncJobsAreCompleted() throws Exception {
+        simulator.getConfig().withTranscribeLatency(Latency.none()).withJobDuration(Latency.fixed(500));
+        ManagedBlob shared = createAudio(1);
+        DocumentModel doc1 = createDocument("doc1");
+        DocumentModel doc2 = createDocument("doc2");
+        DocumentModel doc3 = createDocument("doc3");
+        txFeature.nextTransaction();
+
+        EnrichmentProvider provider = aiComponent.getEnrichmentProvider(ASYNC_PROVIDER);
+        // the same job is pending for the two documents sharing the blob
+        Assert.assertTrue(provider.enrich(newItem(doc1, shared)).isEmpty());
+        Assert.assertTrue(provider.enrich(newItem(doc2, shared)).isEmpty());
+        Assert.assertTrue(provider.enrich(newItem(doc3, createAudio(2))).isEmpty());
+        Assert.assertEquals(3, jobService.getPendingJobCount());
+
+        await(() -> jobService.getPendingJobCount() == 0);
+        for (DocumentModel doc : List.of(doc1, doc2, doc3)) {
+            Assert.assertTrue(isEnriched(doc));
+        }
+        Assert.assertTrue(jobService.getRegistry().list().isEmpty());
+    }
+
+    @Test
+    public void testFailedCompletionIsRetried() throws Exception {
+        simulator.getConfig()
+                 .withTranscribeLatency(Latency.none())
+                 .withJobDuration(Latency.fixed(200))
+                 .withDownloadErrorRate(1);
+        Framework.getProperties().setProperty(COMPLETION_RETRY_DELAY_PROPERTY, "200");
+        try {
+            DocumentModel doc = createDocument("retried");
+            txFeature.nextTransaction();
+            ManagedBlob blob = createAudio(3);
+            EnrichmentProvider provider = aiComponent.getEnrichmentProvider(ASYNC_PROVIDER);
+            Assert.assertTrue(provider.enrich(newItem(doc, blob)).isEmpty());
+
+            PendingTranscription pending = ((TranscribeJobServiceImpl) jobService).pendingJobs.values()
+                                                                                              .iterator()
+                                                                                              .next();
+            await(() -> pending.getCompletionAttempts() > 0);
+            // the transcript could not be downloaded: the job is still followed and registered
+            Assert.assertTrue(jobService.isTracked(pending.getJobName(), doc.getId()));
+            Assert.assertNotNull(jobService.getRegistry().get(pending.getJobName(), doc.getId()));
+            Assert.assertFalse(isEnriched(doc));
+
+            simulator.getConfig().withDownloadErrorRate(0);
+            await(() -> jobService.getPendingJobCount() == 0);
+            Assert.assertTrue(isEnriched(doc));
+            Assert.assertNull(jobService.getRegistry().get(pending.getJobName(), doc.getId()));
+        } finally {
+            Framework.getProperties().remove(COMPLETION_RETRY_DELAY_PROPERTY);
+            simulator.getConfig().withDownloadErrorRate(0);
+        }
+    }
+
+    @Test
+    public void testSyncJobsAreCheckedInBulk() throws Exception {
+        simulator.getConfig().withTranscribeLatency(Latency.none()).withJobDuration(Latency.fixed(2000));
+        List<DocumentModel> docs = List.of(createDocument("sync1"), createDocument("sync2"), createDocument("sync3"));
+        txFeature.nextTransaction();
+
+        EnrichmentProvider provider = aiComponent.getEnrichmentProvider(SYNC_PROVIDER);
+        long getJobCalls = simulator.getTranscribe().getJobCalls();
+        ExecutorService executor = Executors.newFixedThreadPool(docs.size());
+        try {
+            List<Future<Collection<EnrichmentMetadata>>> futures = new ArrayList<>();
+            for (int i = 0; i < docs.size(); i++) {
+                BlobTextFromDocument item = newItem(docs.get(i), createAudio(10 + i));
+                futures.add(executor.submit(() -> provider.enrich(item)));
+            }
+            for (Future<Collection<EnrichmentMetadata>> future : futures) {
+                Assert.assertEquals(1, future.get(WAIT_TIMEOUT, TimeUnit.MILLISECONDS).size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // the running jobs are listed in bulk, the details of a job are only fetched once it is terminated
+        Assert.assertEquals(docs.size(), simulator.getTranscribe().getJobCalls() - getJobCalls);
+        Assert.assertEquals(0, jobService.getPendingJobCount());
+    }
+
+    @Test
+    public void testAwaitedJobOfAnotherNodeIsAdopted() throws Exception {
+        simulator.getConfig().withTranscribeLatency(Latency.none()).withJobDuration(Latency.fixed(200));
+        DocumentModel doc = createDocument("rebalanced");
+        txFeature.nextTransaction();
+        ManagedBlob audio = createAudio(30);
+        BlobTextFromDocument item = newItem(doc, audio);
+        String jobName = Framework.getService(TranscribeService.class).getJobName(audio, "automatic");
+        TranscriptionJobRegistry registry = jobService.getRegistry();
+        registry.heartbeat("otherNode", 60);
+        EnrichmentProvider provider = aiComponent.getEnrichmentProvider(SYNC_PROVIDER);
+
+        // the job service of the owner completes an asynchronous job
+        registry.register(new PendingTranscription(ASYNC_PROVIDER, jobName, item, 1000, PollingPolicy.defaults(),
+                System.currentTimeMillis()), true, "otherNode");
+        Assert.assertTrue(provider.enrich(item).isEmpty());
+
+        // nothing completes the job awaited by an enrichment that moved to this node
+        registry.register(new PendingTranscription(SYNC_PROVIDER, jobName, item, 1000, PollingPolicy.defaults(),
+                System.currentTimeMillis()), false, "otherNode");
+        Assert.assertEquals(1, provider.enrich(item).size());
+        Assert.assertNull(registry.get(jobName, doc.getId()));
+    }
+
+    @Test
+    public void testDeletedCachedTranscriptIsTranscribedAgain() throws Exception {
+        simulator.getConfig().withTranscribeLatency(Latency.none()).withJobDuration(Latency.fixed(200));
+        DocumentModel doc = createDocument("cached");
+        txFeature.nextTransaction();
+        ManagedBlob audio = createAudio(20);
+        EnrichmentProvider provider = aiComponent.getEnrichmentProvider(CACHED_PROVIDER);
+
+        String rawKey = enrichOnce(provider, newItem(doc, audio));
+        long calls = simulator.getTranscribe().getCalls();
+        Assert.assertEquals(rawKey, enrichOnce(provider, newItem(doc, audio)));
+        Assert.assertEquals("Transcript not reused", calls, simulator.getTranscribe().getCalls());
+
+        // the orphan blob GC deletes the transcript once no enrichment references it
+        BlobStoreBlobProvider blobProvider = (BlobStoreBlobProvider) Framework.getService(BlobManager.class)
+                                                                              .getBlobProvider("default");
+        blobProvider.store.deleteBlob(rawKey);
+
+        long misses = TranscriptCache.getMisses();
+        Assert.assertEquals(rawKey, enrichOnce(provider, newItem(doc, audio)));
+        Assert.assertEquals(misses + 1, TranscriptCache.getMisses());
+        Assert.assertTrue("Not transcribed again", simulator.getTranscribe().getCalls() > calls);
+    }
+
+    protected String enrichOnce(EnrichmentProvider provider, BlobTextFromDocument item) {
+        Collection<EnrichmentMetadata> enrichments = provider.enrich(item);
+        Assert.assertEquals(1, enrichments.size());
+        return enrichments.iterator().next().getRawKey();
+    }
+
+    protected DocumentModel createDocument(String name) {
+        return session.createDocument(session.createDocumentModel("/", name, "File"));
+    }
+
+    protected ManagedBlob createAudio(long seed) throws IOException {
+        // distinct content gives distinct job names
+        byte[] bytes = new byte[4096];
+        new Random(seed).nextBytes(bytes);
+        File file = Framework.createTempFile("audio", ".mp3");
+        Files.write(file.toPath(), bytes);
+        return new ManagedFileBlob(file, "audio/mpeg");
+    }
+
+    protected BlobTextFromDocument newItem(DocumentModel doc, ManagedBlob blob) {
+        BlobTextFromDocument item = new BlobTextFromDocument(doc.getId(), doc.getRepositoryName(),
+                doc.getParentRef().toString(), doc.getType(), doc.getFacets());
+        item.addBlob("file:content", "audio", blob);
+        return item;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected boolean isEnriched(DocumentModel doc) {
+        txFeature.nextTransaction();
+        DocumentModel current = session.getDocument(doc.getRef());
+        if (!current.hasFacet(ENRICHMENT_FACET)) {
+            return false;
+        }
+        List<Map<String, Serializable>> enrichments = (List<Map<String, Serializable>>) current.getProperty(
+                ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS);
+        return enrichments != null && enrichments.stream().anyMatch(en -> PROVIDER_NAME.equals(en.get("model")));
+    }
+
+    protected static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.transcribe;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestTranscriptClient {
+
+    protected HttpServer server;
+
+    protected final AtomicInteger requests = new AtomicInteger();
+
+    protected volatile int status;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                requests.incrementAndGet();
+                exchange.sendResponseHeaders(status, -1);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    protected String uri() {
+        return "http://localhost:" + server.getAddress().getPort() + "/transcript.json";
+    }
+
+    @Test
+    public void testServerErrorsAreRetried() throws IOException {
+        status = 503;
+        try (TranscriptClient client = new TranscriptClient(2, 1000, 1000, 2, 10)) {
+            Assert.assertThrows(IOException.class, () -> client.download(uri()));
+        }
+        Assert.assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testExpiredURIIsNotRetried() throws IOException {
+        status = 403;
+        try (TranscriptClient client = new TranscriptClient(2, 1000, 1000, 2, 10)) {
+            TranscriptClient.UnexpectedStatusException e = Assert.assertThrows(
+                    TranscriptClient.UnexpectedStatusException.class, () -> client.download(uri()));
+            Assert.assertEquals(403, e.getStatus());
+        }
+        Assert.assertEquals(1, requests.get());
+    }
+}
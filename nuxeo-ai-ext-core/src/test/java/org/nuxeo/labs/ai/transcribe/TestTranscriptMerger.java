@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.transcribe;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+@RunWith(FeaturesRunner.class)
+@Features({ RuntimeFeature.class })
+public class TestTranscriptMerger {
+
+    protected Blob segment(String language, String text, String... words) {
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < words.length; i++) {
+            items.append(i == 0 ? "" : ",")
+                 .append(String.format(
+                         "{\"start_time\":\"%d.5\",\"end_time\":\"%d.9\",\"alternatives\":[{\"confidence\":\"0.9\","
+                                 + "\"content\":\"%s\"}],\"type\":\"pronunciation\"}", i, i, words[i]));
+        }
+        items.append(",{\"alternatives\":[{\"confidence\":\"0.0\",\"content\":\".\"}],\"type\":\"punctuation\"}");
+        return Blobs.createJSONBlob(String.format(
+                "{\"jobName\":\"job\",\"results\":{\"language_code\":\"%s\",\"transcripts\":[{\"transcript\":\"%s\"}],"
+                        + "\"items\":[%s]},\"status\":\"COMPLETED\"}", language, text, items));
+    }
+
+    @Test
+    public void testSegmentsAreMergedWithTheirOffsets() throws IOException {
+        Blob merged = TranscriptMerger.merge("job-merged",
+                List.of(segment("en-US", "Hello world.", "Hello", "world"),
+                        segment("fr-FR", "Bonjour.", "Bonjour"),
+                        segment("en-US", "Goodbye.", "Goodbye")),
+                List.of(0d, 906d, 1806.25));
+
+        Transcript transcript;
+        try (InputStream in = merged.getStream()) {
+            transcript = TranscriptParser.parse(in);
+        }
+        Assert.assertEquals("en-US", transcript.getLanguageCode());
+        Assert.assertEquals(List.of("Hello world. Bonjour. Goodbye."), transcript.getTranscripts());
+        Assert.assertEquals(7, transcript.size());
+        Assert.assertEquals("world", transcript.getContent(1));
+        Assert.assertEquals(1500, transcript.getStart(1));
+        Assert.assertEquals("Bonjour", transcript.getContent(3));
+        Assert.assertEquals(906_500, transcript.getStart(3));
+        Assert.assertEquals("Goodbye", transcript.getContent(5));
+        Assert.assertEquals(1_806_750, transcript.getStart(5));
+        Assert.assertEquals(1_807_150, transcript.getEnd(5));
+        Assert.assertTrue(transcript.isPronunciation(5));
+        Assert.assertFalse(transcript.isPronunciation(6));
+    }
+
+    @Test
+    public void testItemFieldsAreCopied() throws IOException {
+        Blob segment = Blobs.createJSONBlob("{\"results\":{\"items\":[{\"id\":7,\"start_time\":\"1.25\","
+                + "\"end_time\":\"1.5\",\"speaker_label\":\"spk_0\",\"alternatives\":[{\"confidence\":\"0.9\","
+                + "\"content\":\"Hi\"}],\"type\":\"pronunciation\"}],\"transcripts\":[{\"transcript\":\"Hi\"}]},"
+                + "\"jobName\":\"job\"}");
+        Blob merged = TranscriptMerger.merge("job-merged", List.of(segment, segment), List.of(0d, 10d));
+
+        String json = merged.getString();
+        Assert.assertTrue(json, json.contains("{\"id\":1,\"start_time\":\"11.250\",\"end_time\":\"11.500\","
+                + "\"speaker_label\":\"spk_0\",\"alternatives\":[{\"confidence\":\"0.9\",\"content\":\"Hi\"}],"
+                + "\"type\":\"pronunciation\"}"));
+        Transcript transcript;
+        try (InputStream in = merged.getStream()) {
+            transcript = TranscriptParser.parse(in);
+        }
+        Assert.assertNull(transcript.getLanguageCode());
+        Assert.assertEquals(List.of("Hi Hi"), transcript.getTranscripts());
+        Assert.assertEquals(2, transcript.size());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.transcribe;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nuxeo.common.utils.FileUtils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TestTranscriptParser {
+
+    @Test
+    public void testParse() throws IOException {
+        Transcript transcript;
+        try (InputStream in = new FileInputStream(FileUtils.getResourceFileFromContext("files/transcript.json"))) {
+            transcript = TranscriptParser.parse(in);
+        }
+
+        Assert.assertEquals("en-US", transcript.getLanguageCode());
+        Assert.assertEquals(1, transcript.getTranscripts().size());
+        Assert.assertEquals("Hello world. Welcome to Paris.", transcript.getTranscripts().get(0));
+        Assert.assertEquals(7, transcript.size());
+
+        Assert.assertTrue(transcript.isPronunciation(0));
+        Assert.assertEquals("Hello", transcript.getContent(0));
+        Assert.assertEquals(40, transcript.getStart(0));
+        Assert.assertEquals(500, transcript.getEnd(0));
+
+        Assert.assertFalse(transcript.isPronunciation(2));
+        Assert.assertEquals(".", transcript.getContent(2));
+        Assert.assertEquals(0, transcript.getStart(2));
+        Assert.assertEquals(0, transcript.getEnd(2));
+
+        Assert.assertEquals(2305, transcript.getEnd(5));
+        // identical contents are pooled
+        Assert.assertSame(transcript.getContent(2), transcript.getContent(6));
+    }
+
+    @Test
+    public void testParseMillis() {
+        Assert.assertEquals(12345, TranscriptParser.parseMillis("12.345".toCharArray(), 0, 6));
+        Assert.assertEquals(12000, TranscriptParser.parseMillis("12".toCharArray(), 0, 2));
+        Assert.assertEquals(12300, TranscriptParser.parseMillis("12.3".toCharArray(), 0, 4));
+        Assert.assertEquals(12345, TranscriptParser.parseMillis("12.34567".toCharArray(), 0, 8));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.transcribe;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ai.pipes.types.BlobTextFromDocument;
+import org.nuxeo.ecm.core.blob.BlobMetaImpl;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy({
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.aws.aws-core"
+})
+public class TestTranscriptionJobRegistry {
+
+    @Inject
+    protected TranscribeJobService jobService;
+
+    protected PendingTranscription newPending(String jobName, String docId, long submitTime) {
+        BlobTextFromDocument blobTextFromDocument = new BlobTextFromDocument(docId, "test", "parentId", "File",
+                Set.of());
+        blobTextFromDocument.addBlob("file:content", "audio",
+                new BlobMetaImpl("test", "audio/mpeg", "blobKey", "blobDigest", null, 1024L));
+        return new PendingTranscription("aws.transcribeExt", jobName, blobTextFromDocument, 60_000,
+                PollingPolicy.defaults(), submitTime);
+    }
+
+    @Test
+    public void testJobIsRestoredFromRegistry() {
+        TranscriptionJobRegistry registry = jobService.getRegistry();
+        registry.register(newPending("job1", "doc1", 1234L), true, "node1");
+
+        TranscriptionJobRegistry.Entry entry = registry.get("job1", "doc1");
+        Assert.assertNotNull(entry);
+        Assert.assertTrue(entry.async);
+        Assert.assertEquals("node1", entry.owner);
+        Assert.assertNull(registry.get("job1", "doc2"));
+
+        // the restored job resumes with its original submission time and document
+        PendingTranscription pending = registry.toPending(entry, PollingPolicy.defaults());
+        Assert.assertEquals("job1", pending.getJobName());
+        Assert.assertEquals(1234L, pending.getSubmitTime());
+        Assert.assertEquals(60_000, pending.getMediaDuration());
+        Assert.assertEquals("doc1", pending.getDocId());
+        Assert.assertEquals("blobKey",
+                pending.getBlobTextFromDocument().getBlobs().get("file:content").getKey());
+
+        registry.remove("job1", "doc1");
+        Assert.assertNull(registry.get("job1", "doc1"));
+    }
+
+    @Test
+    public void testOrphanIsClaimedOnce() {
+        TranscriptionJobRegistry registry = jobService.getRegistry();
+        registry.register(newPending("job2", "doc1", System.currentTimeMillis()), false, "node1");
+        Assert.assertFalse(registry.isAlive("node1"));
+        registry.heartbeat("node2", 60);
+        Assert.assertTrue(registry.isAlive("node2"));
+
+        TranscriptionJobRegistry.Entry first = registry.get("job2", "doc1");
+        TranscriptionJobRegistry.Entry second = registry.get("job2", "doc1");
+        Assert.assertTrue(registry.claim(first, "node2"));
+        Assert.assertEquals("node2", first.owner);
+        // another node read the entry before the claim
+        Assert.assertFalse(registry.claim(second, "node3"));
+        Assert.assertEquals("node2", registry.get("job2", "doc1").owner);
+        Assert.assertTrue(registry.list().stream().anyMatch(entry -> "job2".equals(entry.jobName)));
+
+        registry.remove("job2", "doc1");
+    }
+
+    @Test
+    public void testJobsAreListedFromTheIndex() {
+        TranscriptionJobRegistry registry = jobService.getRegistry();
+        registry.register(newPending("job3", "doc1", 1234L), false, "node1");
+        registry.register(newPending("job3", "doc2", 1234L), false, "node1");
+        registry.register(newPending("job4", "doc1", 1234L), false, "node1");
+        Assert.assertEquals(3, countJobs(registry, "doc1", "doc2"));
+
+        registry.remove("job3", "doc2");
+        Assert.assertEquals(2, countJobs(registry, "doc1", "doc2"));
+
+        // an entry that expired is dropped from the index
+        registry.getStore().put(TranscriptionJobRegistry.key("job4", "doc1"), (String) null);
+        Assert.assertEquals(1, countJobs(registry, "doc1", "doc2"));
+        Assert.assertFalse(registry.getIndex().contains(TranscriptionJobRegistry.key("job4", "doc1")));
+
+        registry.remove("job3", "doc1");
+        Assert.assertEquals(0, countJobs(registry, "doc1", "doc2"));
+    }
+
+    @Test
+    public void testIndexIsSpreadOverBuckets() {
+        long buckets = IntStream.range(0, 1000)
+                                .mapToObj(i -> TranscriptionJobRegistry.indexKey(
+                                        TranscriptionJobRegistry.key("job" + i, "doc" + i)))
+                                .distinct()
+                                .count();
+        Assert.assertTrue("Buckets: " + buckets, buckets > TranscriptionJobRegistry.INDEX_BUCKETS / 2);
+    }
+
+    protected long countJobs(TranscriptionJobRegistry registry, String... docIds) {
+        Set<String> ids = Set.of(docIds);
+        return registry.list()
+                       .stream()
+                       .filter(entry -> ids.contains(entry.docId) && entry.jobName.matches("job[34]"))
+                       .count();
+    }
+
+    @Test
+    public void testNodeIsIdentified() {
+        Assert.assertNotNull(jobService.getNodeId());
+    }
+}
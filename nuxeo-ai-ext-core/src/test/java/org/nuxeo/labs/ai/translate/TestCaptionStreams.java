@@ -0,0 +1,198 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+package org.nuxeo.labs.ai.translate;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ai.metadata.Caption;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.test.TransactionalFeature;
+import org.nuxeo.labs.ai.simulator.SimulatorFeature;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_FACET;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_ITEMS;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_SCHEMA_NAME;
+import static org.nuxeo.ai.listeners.VideoAboutToChange.CAPTIONABLE_FACET;
+import static org.nuxeo.ai.metadata.Caption.CAPTIONS_PROP;
+import static org.nuxeo.labs.ai.enricher.TranscribeEnrichmentProviderExt.PROVIDER_NAME;
+import static org.nuxeo.labs.ai.translate.ExtendedDocumentTranscribed.CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES;
+
+@RunWith(FeaturesRunner.class)
+@Features({ SimulatorFeature.class })
+@Deploy({
+        "org.nuxeo.ecm.platform.tag",
+        "org.nuxeo.ecm.default.config",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.aws.aws-core",
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core:OSGI-INF/test-captions-stream-contrib.xml"
+})
+public class TestCaptionStreams {
+
+    protected static final long WAIT_TIMEOUT = 20_000;
+
+    protected final CaptionJobStore store = new CaptionJobStore();
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    @Test
+    public void testStreamsAreDisabledByDefault() {
+        Assert.assertFalse(CaptionStreams.isEnabled());
+    }
+
+    @Test
+    public void testMessageRecord() {
+        CaptionMessage job = new CaptionMessage("test", "docId", "aws.transcribeExt")
+                .withJob("job1", "en", List.of("fr", "es"), true);
+        Record record = CaptionStreams.toRecord("docId", job.withDestLang("es"));
+
+        CaptionMessage message = CaptionStreams.fromRecord(record);
+        Assert.assertEquals("docId", record.getKey());
+        Assert.assertEquals("job1", message.getJobId());
+        Assert.assertEquals("es", message.getDestLang());
+        Assert.assertEquals(List.of("fr", "es"), message.getLanguages());
+        Assert.assertTrue(message.isSourceUnchanged());
+    }
+
+    @Test
+    public void testJobStore() {
+        List<Caption> captions = List.of(new Caption(0, 1500, List.of("hello")),
+                new Caption(1500, 4000, List.of("world")));
+        store.putSource("job2", captions);
+        store.putTranslation("job2", "fr", List.of("bonjour", "monde"));
+
+        List<Caption> source = store.getSource("job2");
+        Assert.assertEquals(2, source.size());
+        Assert.assertEquals(1500, source.get(1).getStart());
+        Assert.assertEquals(List.of("world"), source.get(1).getLines());
+        Assert.assertEquals(List.of("bonjour", "monde"), store.getTranslation("job2", "fr"));
+        Assert.assertNull(store.getTranslation("job2", "es"));
+
+        Assert.assertFalse(store.isDone("job2"));
+        Assert.assertTrue(store.markDone("job2"));
+        Assert.assertTrue(store.isDone("job2"));
+        // a job is done once in the cluster
+        Assert.assertFalse(store.markDone("job2"));
+    }
+
+    @Test
+    public void testOpenJobs() {
+        long deadline = System.currentTimeMillis() + 3_600_000;
+        store.putJob(new CaptionMessage("test", "doc3", PROVIDER_NAME).withJob("job3", "en", List.of("fr"), false),
+                deadline);
+        store.putJob(new CaptionMessage("test", "doc4", PROVIDER_NAME).withJob("job4", "en", List.of("fr"), false),
+                deadline);
+        Assert.assertEquals(Long.valueOf(deadline), store.getOpenJobs().get("job3"));
+        Assert.assertFalse(store.isOverdue("job3", deadline - 1));
+        Assert.assertTrue(store.isOverdue("job3", deadline));
+
+        store.removeOpenJob("job3");
+        Assert.assertFalse(store.getOpenJobs().containsKey("job3"));
+        Assert.assertFalse(store.isOverdue("job3", deadline));
+
+        // a job whose deadline expired is dropped from the index
+        store.getStore().put("job4:deadline", (String) null);
+        Assert.assertFalse(store.getOpenJobs().containsKey("job4"));
+        Assert.assertFalse(store.readJobIds(store.getStore().get(CaptionJobStore.openKey("job4"))).contains("job4"));
+    }
+
+    @Test
+    public void testCaptionsAreTranslatedByTheTopology() throws Exception {
+        DocumentModel doc = createTranscribedDocument("streamed");
+        Framework.getProperties().setProperty(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES, "fr,de");
+        try {
+            CaptionStreams.submit(new CaptionMessage(session.getRepositoryName(), doc.getId(), PROVIDER_NAME));
+            await(() -> getLanguages(doc).size() == 3);
+            Assert.assertEquals(List.of("en", "fr", "de"), getLanguages(doc));
+        } finally {
+            Framework.getProperties().remove(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES);
+        }
+    }
+
+    @Test
+    public void testOverdueJobIsCompletedAfterRestart() throws Exception {
+        DocumentModel doc = createTranscribedDocument("overdue");
+        String jobId = UUID.randomUUID().toString();
+        CaptionMessage job = new CaptionMessage(session.getRepositoryName(), doc.getId(), PROVIDER_NAME).withJob(
+                jobId, "en", List.of("fr", "de"), false);
+        store.putSource(jobId, List.of(new Caption(0, 1500, List.of("hello"))));
+        // the German record was dropped, and the node aggregating the job restarted
+        store.putTranslation(jobId, "fr", List.of("bonjour"));
+        store.putJob(job, System.currentTimeMillis() - 1);
+
+        // a new computation has no state of the job but its deadline in the store; the sweep of the running
+        // topology may complete the job first, the job being done once
+        new CaptionAggregateComputation(60_000).sweep(System.currentTimeMillis());
+
+        Assert.assertTrue(store.isDone(jobId));
+        await(() -> getLanguages(doc).size() == 2);
+        Assert.assertEquals(List.of("en", "fr"), getLanguages(doc));
+        await(() -> !store.getOpenJobs().containsKey(jobId));
+    }
+
+    protected DocumentModel createTranscribedDocument(String name) throws IOException {
+        DocumentModel doc = session.createDocumentModel("/", name, "File");
+        doc.addFacet(CAPTIONABLE_FACET);
+        doc.addFacet(ENRICHMENT_FACET);
+        doc.setProperty(ENRICHMENT_SCHEMA_NAME, ENRICHMENT_ITEMS, List.of(Map.of("model", PROVIDER_NAME, "raw",
+                Blobs.createBlob(FileUtils.getResourceFileFromContext("files/transcript.json"),
+                        "application/json"))));
+        doc = session.createDocument(doc);
+        txFeature.nextTransaction();
+        return doc;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<String> getLanguages(DocumentModel doc) {
+        txFeature.nextTransaction();
+        List<Map<String, Serializable>> captions = (List<Map<String, Serializable>>) session.getDocument(
+                doc.getRef()).getPropertyValue(CAPTIONS_PROP);
+        return captions == null ? List.of()
+                : TestExtendedDocumentTranscribed.RecordingListener.getLanguages(captions);
+    }
+
+    protected static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+}
@@ -21,22 +21,50 @@ package org.nuxeo.labs.ai.translate;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.event.impl.EventContextImpl;
 import org.nuxeo.ecm.core.event.impl.EventListenerDescriptor;
-import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.labs.ai.captions.CaptionWriter.Format;
+import org.nuxeo.labs.ai.simulator.SimulatorFeature;
+import org.nuxeo.labs.ai.transcribe.Transcript;
+import org.nuxeo.labs.ai.transcribe.TranscriptParser;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
 
 import javax.inject.Inject;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ai.AIConstants.ENRICHMENT_FACET;
+import static org.nuxeo.ai.listeners.VideoAboutToChange.CAPTIONABLE_FACET;
+import static org.nuxeo.ai.metadata.Caption.CAPTIONS_PROP;
+import static org.nuxeo.ai.metadata.Caption.VTT_KEY_PROP;
+import static org.nuxeo.ecm.core.event.impl.DocumentEventContext.COMMENT_PROPERTY_KEY;
+import static org.nuxeo.labs.ai.enricher.TranscribeEnrichmentProviderExt.PROVIDER_NAME;
+import static org.nuxeo.labs.ai.translate.ExtendedDocumentTranscribed.CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES;
 
 @RunWith(FeaturesRunner.class)
-@Features({ PlatformFeature.class })
+@Features({ SimulatorFeature.class })
 @Deploy({
+        "org.nuxeo.ecm.platform.tag",
+        "org.nuxeo.ecm.default.config",
         "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
         "org.nuxeo.ai.ai-core",
         "org.nuxeo.ai.aws.aws-core"
@@ -48,10 +76,118 @@ public class TestExtendedDocumentTranscribed {
     @Inject
     protected EventService s;
 
+    @Inject
+    protected CoreSession session;
+
     @Test
     public void listenerRegistration() {
         EventListenerDescriptor listener = s.getEventListener("documentTranscribeDone");
         assertNotNull(listener);
         assertTrue(events.stream().allMatch(listener::acceptEvent));
     }
+
+    @Test
+    public void testOnlyTranscriptionEventsAreAccepted() {
+        ExtendedDocumentTranscribed listener = new ExtendedDocumentTranscribed();
+        assertTrue(listener.acceptEvent(enrichmentEvent("aws.transcribeExt")));
+        assertFalse(listener.acceptEvent(enrichmentEvent("unknown.provider")));
+        assertFalse(listener.acceptEvent(enrichmentEvent(null)));
+        assertFalse(listener.acceptEvent(new EventContextImpl().newEvent("ENRICHMENT_MODIFIED")));
+    }
+
+    @Test
+    public void testExistingCaptionsAreKept() throws IOException {
+        DocumentModel doc = session.createDocumentModel("/", "captioned", "File");
+        doc.addFacet(CAPTIONABLE_FACET);
+        doc.addFacet(ENRICHMENT_FACET);
+        doc = session.createDocument(doc);
+        RecordingListener listener = new RecordingListener();
+
+        Framework.getProperties().setProperty(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES, "fr,de");
+        try {
+            listener.handleEvent(transcribedEvent(doc));
+            assertEquals(List.of(List.of("fr", "de")), listener.targets);
+            assertEquals(1, listener.saves);
+            Map<String, Serializable> french = getCaptions(doc).get(1);
+            assertEquals(List.of("en", "fr", "de"), getLanguages(doc));
+
+            // same transcript and languages: nothing is translated nor saved
+            listener.handleEvent(transcribedEvent(doc));
+            assertEquals(List.of(), listener.targets.get(1));
+            assertEquals(1, listener.saves);
+
+            // a new language: only this one is translated, the other captions are kept as they are
+            Framework.getProperties().setProperty(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES, "fr,de,es");
+            listener.handleEvent(transcribedEvent(doc));
+            assertEquals(List.of("es"), listener.targets.get(2));
+            assertEquals(2, listener.saves);
+            assertEquals(List.of("en", "fr", "de", "es"), getLanguages(doc));
+            Blob frenchVtt = (Blob) getCaptions(doc).get(1).get(VTT_KEY_PROP);
+            assertEquals(((Blob) french.get(VTT_KEY_PROP)).getDigest(), frenchVtt.getDigest());
+        } finally {
+            Framework.getProperties().remove(CLOSED_CAPTION_AI_TRANSLATION_LANGUAGES);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<Map<String, Serializable>> getCaptions(DocumentModel doc) {
+        return (List<Map<String, Serializable>>) session.getDocument(doc.getRef()).getPropertyValue(CAPTIONS_PROP);
+    }
+
+    protected List<String> getLanguages(DocumentModel doc) {
+        return RecordingListener.getLanguages(getCaptions(doc));
+    }
+
+    protected Event transcribedEvent(DocumentModel doc) {
+        DocumentEventContext ctx = new DocumentEventContext(session, session.getPrincipal(),
+                session.getDocument(doc.getRef()));
+        ctx.setProperty(COMMENT_PROPERTY_KEY, PROVIDER_NAME);
+        return ctx.newEvent("ENRICHMENT_MODIFIED");
+    }
+
+    /**
+     * Reads the transcript from the test resources, and records the languages to translate and the saves.
+     */
+    protected static class RecordingListener extends ExtendedDocumentTranscribed {
+
+        protected final List<List<String>> targets = new ArrayList<>();
+
+        protected int saves;
+
+        @Override
+        protected Transcript readTranscript(DocumentModel doc, String providerName) {
+            try (InputStream in = new FileInputStream(FileUtils.getResourceFileFromContext("files/transcript.json"))) {
+                return TranscriptParser.parse(in);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        protected List<String> getTargetLanguages(String srcLang, Map<String, Map<String, Serializable>> existing,
+                boolean sourceUnchanged) {
+            List<String> languages = super.getTargetLanguages(srcLang, existing, sourceUnchanged);
+            targets.add(languages);
+            return languages;
+        }
+
+        @Override
+        protected void saveCaptions(DocumentModel doc, List<Map<String, Serializable>> allCaptions,
+                Map<String, Map<Format, Blob>> captionFiles) {
+            saves++;
+            super.saveCaptions(doc, allCaptions, captionFiles);
+        }
+
+        protected static List<String> getLanguages(List<Map<String, Serializable>> captions) {
+            return captions.stream().map(caption -> (String) caption.get(LANGUAGE_KEY)).toList();
+        }
+    }
+
+    protected Event enrichmentEvent(String providerName) {
+        DocumentEventContext ctx = new DocumentEventContext(null, null, null);
+        if (providerName != null) {
+            ctx.setProperty(COMMENT_PROPERTY_KEY, providerName);
+        }
+        return ctx.newEvent("ENRICHMENT_MODIFIED");
+    }
 }
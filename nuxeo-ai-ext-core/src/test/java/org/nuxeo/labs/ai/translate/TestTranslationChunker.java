@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.translate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TestTranslationChunker {
+
+    @Test
+    public void testChunksStayUnderTheLimit() {
+        // 4 bytes per line, 1 byte per separator
+        List<String> lines = List.of("aaaa", "bbbb", "cccc", "dddd", "eeee");
+        List<int[]> chunks = TranslationChunker.chunk(lines, 9);
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertArrayEquals(new int[] { 0, 1 }, chunks.get(0));
+        Assert.assertArrayEquals(new int[] { 2, 3 }, chunks.get(1));
+        Assert.assertArrayEquals(new int[] { 4 }, chunks.get(2));
+    }
+
+    @Test
+    public void testLargeLineHasItsOwnChunk() {
+        List<String> lines = List.of("a", "bbbbbbbbbbbb", "c");
+        List<int[]> chunks = TranslationChunker.chunk(lines, 5);
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertArrayEquals(new int[] { 1 }, chunks.get(1));
+    }
+
+    @Test
+    public void testUtf8Length() {
+        Assert.assertEquals(5, TranslationChunker.utf8Length("hello"));
+        Assert.assertEquals(2, TranslationChunker.utf8Length("é"));
+        Assert.assertEquals(3, TranslationChunker.utf8Length("日"));
+        Assert.assertEquals(4, TranslationChunker.utf8Length("😀"));
+    }
+
+    @Test
+    public void testLargeLineIsSplitAtSentences() {
+        String line = "First sentence here. Second sentence is there. Third one.";
+        List<String> pieces = TranslationChunker.split(line, 30);
+        Assert.assertEquals(List.of("First sentence here.", "Second sentence is there.", "Third one."), pieces);
+        Assert.assertEquals(line, String.join(" ", pieces));
+    }
+
+    @Test
+    public void testLargeLineIsSplitAtSpaces() {
+        List<String> pieces = TranslationChunker.split("one two three four five six", 10);
+        Assert.assertEquals(List.of("one two", "three four", "five six"), pieces);
+    }
+
+    @Test
+    public void testLargeLineWithoutSpacesIsSplitUnderTheLimit() {
+        String line = "日本語の文章です。句読点があります。" + "😀".repeat(10);
+        List<String> pieces = TranslationChunker.split(line, 16);
+        for (String piece : pieces) {
+            Assert.assertTrue(piece, TranslationChunker.utf8Length(piece) <= 16);
+            // no surrogate pair is cut
+            Assert.assertFalse(Character.isHighSurrogate(piece.charAt(piece.length() - 1)));
+        }
+        Assert.assertEquals(line, String.join("", pieces));
+    }
+}
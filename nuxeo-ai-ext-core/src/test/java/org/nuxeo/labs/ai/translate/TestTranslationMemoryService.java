@@ -0,0 +1,232 @@
+/*
+ * (C) Copyright 2024 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Michael Vachette
+ */
+
+package org.nuxeo.labs.ai.translate;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.labs.ai.metrics.AIExtMetrics;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy({
+        "org.nuxeo.labs.ai.nuxeo-ai-ext-core",
+        "org.nuxeo.ai.ai-core",
+        "org.nuxeo.ai.aws.aws-core"
+})
+public class TestTranslationMemoryService {
+
+    @Inject
+    protected TranslationMemoryService translationMemory;
+
+    protected List<String> calls;
+
+    protected TranslationMemoryServiceImpl memory;
+
+    @Before
+    public void before() {
+        calls = new ArrayList<>();
+        memory = new TranslationMemoryServiceImpl() {
+            @Override
+            protected String callService(String text, String srcLang, String destLang) {
+                calls.add(text);
+                return text.toUpperCase();
+            }
+        };
+        memory.start(null);
+    }
+
+    @Test
+    public void testServiceIsRegistered() {
+        Assert.assertNotNull(translationMemory);
+    }
+
+    @Test
+    public void testTranslationIsReused() {
+        Assert.assertEquals("HELLO", memory.translate("hello", "en", "fr"));
+        Assert.assertEquals("HELLO", memory.translate("hello", "en", "fr"));
+        Assert.assertEquals(1, calls.size());
+
+        // another language pair is another entry
+        memory.translate("hello", "en", "es");
+        Assert.assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void testServiceCallsAreMeasuredPerLanguage() {
+        long count = AIExtMetrics.translateLatency("pt").getCount();
+        long characters = AIExtMetrics.translatedCharacters("pt").getCount();
+
+        memory.translate("good morning", "en", "pt");
+        memory.translate("good morning", "en", "pt");
+
+        Assert.assertEquals(count + 1, AIExtMetrics.translateLatency("pt").getCount());
+        Assert.assertEquals(characters + "good morning".length(),
+                AIExtMetrics.translatedCharacters("pt").getCount());
+    }
+
+    @Test
+    public void testOnlyMissingSegmentsAreTranslated() {
+        memory.translate("first line", "en", "ja");
+        calls.clear();
+
+        Assert.assertEquals("FIRST LINE\nSECOND LINE", memory.translate("first line\nsecond line", "en", "ja"));
+        Assert.assertEquals(List.of("second line"), calls);
+    }
+
+    @Test
+    public void testLinesStayAlignedWhenServiceMergesLines() {
+        TranslationMemoryServiceImpl merging = new TranslationMemoryServiceImpl() {
+            @Override
+            protected String callService(String text, String srcLang, String destLang) {
+                return text.replace("\n", " ").toUpperCase();
+            }
+        };
+        merging.start(null);
+
+        List<String> lines = List.of("one", "two", "three");
+        Assert.assertEquals(List.of("ONE", "TWO", "THREE"), merging.translateLines(lines, "en", "de"));
+    }
+
+    @Test
+    public void testTranslateLinesKeepsOrder() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            lines.add("caption number " + i);
+        }
+        List<String> translations = memory.translateLines(lines, "en", "it");
+        Assert.assertEquals(lines.size(), translations.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Assert.assertEquals(lines.get(i).toUpperCase(), translations.get(i));
+        }
+    }
+
+    @Test
+    public void testLargeLineIsTranslatedInPieces() {
+        memory.chunkMaxBytes = 20;
+        String line = "This is a first sentence. And this is the second one.";
+        List<String> translations = memory.translateLines(List.of("short", line), "en", "ko");
+        Assert.assertEquals(List.of("SHORT", line.toUpperCase()), translations);
+        Assert.assertTrue(calls.stream().allMatch(call -> TranslationChunker.utf8Length(call) <= 20));
+    }
+
+    @Test
+    public void testTranslateAllKeepsTextsAndLines() {
+        List<String> texts = Arrays.asList("title", null, "first line\n\nsecond line", "");
+        Assert.assertEquals(Arrays.asList("TITLE", null, "FIRST LINE\n\nSECOND LINE", ""),
+                memory.translateAll(texts, "en", "nl"));
+        // the blank lines and texts are not sent
+        Assert.assertTrue(calls.stream().noneMatch(String::isBlank));
+    }
+
+    @Test
+    public void testTranslateToEachLanguage() {
+        Map<String, String> translations = memory.translateTo("hello", "en", List.of("fr", " es", "en", "fr"));
+        Assert.assertEquals(List.of("fr", "es", "en"), List.copyOf(translations.keySet()));
+        Assert.assertEquals("HELLO", translations.get("fr"));
+        Assert.assertEquals("hello", translations.get("en"));
+        Assert.assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void testTimedOutTranslationIsInterrupted() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        TranslationMemoryServiceImpl slow = new TranslationMemoryServiceImpl() {
+            @Override
+            protected String callService(String text, String srcLang, String destLang) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    Thread.currentThread().interrupt();
+                    throw new NuxeoException(e);
+                }
+                return text;
+            }
+        };
+        slow.start(null);
+
+        CompletableFuture<List<String>> future = slow.translateLinesAsync(List.of("slow"), "en", "fr", 200);
+        ExecutionException e = Assert.assertThrows(ExecutionException.class,
+                () -> future.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEachLanguageHasItsOwnTimeout() throws Exception {
+        Framework.getProperties().setProperty(TranslationMemoryServiceImpl.CONCURRENCY_PROPERTY, "1");
+        TranslationMemoryServiceImpl serial = new TranslationMemoryServiceImpl() {
+            @Override
+            protected String callService(String text, String srcLang, String destLang) {
+                try {
+                    Thread.sleep(600);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new NuxeoException(e);
+                }
+                return text.toUpperCase();
+            }
+        };
+        try {
+            serial.start(null);
+        } finally {
+            Framework.getProperties().remove(TranslationMemoryServiceImpl.CONCURRENCY_PROPERTY);
+        }
+
+        // the second language waits for the first one, which does not use its budget
+        CompletableFuture<List<String>> first = serial.translateLinesAsync(List.of("one"), "en", "fr", 1000);
+        CompletableFuture<List<String>> second = serial.translateLinesAsync(List.of("two"), "en", "de", 1000);
+        Assert.assertEquals(List.of("ONE"), first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(List.of("TWO"), second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeoutIsCancelledWhenTranslationCompletes() throws Exception {
+        ScheduledThreadPoolExecutor timer = (ScheduledThreadPoolExecutor) memory.timer;
+        CompletableFuture<List<String>> future = memory.translateLinesAsync(List.of("hello"), "en", "fr", 60_000);
+        Assert.assertEquals(List.of("HELLO"), future.get(5, TimeUnit.SECONDS));
+        // the completed translation does not leave its timeout pending until it fires
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!timer.getQueue().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(timer.getQueue().isEmpty());
+    }
+}